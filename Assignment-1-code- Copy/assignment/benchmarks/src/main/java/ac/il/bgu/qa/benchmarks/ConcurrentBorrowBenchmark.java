@@ -0,0 +1,86 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multi-threaded borrow/return round trips against one shared library.
+ * In the contended benchmark every thread works on the same book; in the uncontended
+ * benchmark each thread has a book of its own. Use -t to change the thread count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class ConcurrentBorrowBenchmark {
+
+    // Upper bound on the number of benchmark threads that get a book of their own.
+    private static final int MAX_THREADS = 256;
+
+    // Latency added to every call of the stand-in services, in nanoseconds.
+    @Param({"0", "20000"})
+    public long latencyNanos;
+
+    private Library library;
+    private String sharedISBN;
+    private final AtomicInteger nextThread = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        library = new Library(new StandInServices.Database(latencyNanos), new StandInServices.Reviews(latencyNanos));
+        for (int i = 0; i <= MAX_THREADS; i++) {
+            library.addBook(new Book(StandInServices.isbn(978_000_000_000L + i), "Title " + i, "Lewis Carroll"));
+            library.registerUser(new User("someName", String.format("%012d", i),
+                    new StandInServices.Notifications(latencyNanos)));
+        }
+        sharedISBN = StandInServices.isbn(978_000_000_000L + MAX_THREADS);
+    }
+
+    /**
+     * The book and user owned by a single benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+        String ownISBN;
+        String userId;
+
+        @Setup(Level.Trial)
+        public void setUp(ConcurrentBorrowBenchmark benchmark) {
+            int thread = benchmark.nextThread.getAndIncrement() % MAX_THREADS;
+            ownISBN = StandInServices.isbn(978_000_000_000L + thread);
+            userId = String.format("%012d", thread);
+        }
+    }
+
+    @Benchmark
+    public void uncontended(ThreadState thread) {
+        library.borrowBook(thread.ownISBN, thread.userId);
+        library.returnBook(thread.ownISBN);
+    }
+
+    @Benchmark
+    public boolean contended(ThreadState thread) {
+        // Losing the race is an expected outcome here, not an error.
+        try {
+            library.borrowBook(sharedISBN, thread.userId);
+        } catch (BookAlreadyBorrowedException e) {
+            return false;
+        }
+        try {
+            library.returnBook(sharedISBN);
+        } catch (BookNotBorrowedException e) {
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,80 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded benchmarks of the library's public operations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LibraryBenchmark {
+
+    // Number of distinct books addBook cycles through before starting over with a fresh database.
+    private static final int ADD_POOL_SIZE = 1 << 18;
+
+    // Latency added to every call of the stand-in services, in nanoseconds.
+    @Param({"0", "20000"})
+    public long latencyNanos;
+
+    private Library library;
+    private String ISBN;
+    private String userId;
+
+    private Book[] toAdd;
+    private Library addLibrary;
+    private int nextToAdd;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        library = newLibrary();
+        ISBN = StandInServices.isbn(978_054_501_022L);
+        userId = "123456789123";
+        library.addBook(new Book(ISBN, "Alice In Wonderland", "Lewis Carroll"));
+        library.registerUser(new User("someName", userId, new StandInServices.Notifications(latencyNanos)));
+
+        toAdd = new Book[ADD_POOL_SIZE];
+        for (int i = 0; i < ADD_POOL_SIZE; i++) {
+            toAdd[i] = new Book(StandInServices.isbn(979_000_000_000L + i), "Title " + i, "Lewis Carroll");
+        }
+        addLibrary = newLibrary();
+    }
+
+    private Library newLibrary() {
+        return new Library(new StandInServices.Database(latencyNanos), new StandInServices.Reviews(latencyNanos));
+    }
+
+    @Benchmark
+    public void addBook() {
+        if (nextToAdd == ADD_POOL_SIZE) {
+            // Every book of the pool was added; start over so addBook keeps taking its success path.
+            addLibrary = newLibrary();
+            nextToAdd = 0;
+        }
+        addLibrary.addBook(toAdd[nextToAdd++]);
+    }
+
+    @Benchmark
+    public void borrowAndReturnBook() {
+        library.borrowBook(ISBN, userId);
+        library.returnBook(ISBN);
+    }
+
+    @Benchmark
+    public Book getBookByISBN() {
+        return library.getBookByISBN(ISBN, userId);
+    }
+
+    @Benchmark
+    public void notifyUserWithBookReviews() {
+        library.notifyUserWithBookReviews(ISBN, userId);
+    }
+}
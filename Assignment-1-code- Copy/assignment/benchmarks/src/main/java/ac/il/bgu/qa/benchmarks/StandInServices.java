@@ -0,0 +1,139 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-memory stand-ins for the library's services, each adding a configurable latency per call
+ * to emulate a remote backend.
+ */
+public final class StandInServices {
+
+    private StandInServices() {
+    }
+
+    /**
+     * Busy-waits for the given duration. Parking is too coarse for microsecond latencies.
+     *
+     * @param nanos The time to wait, in nanoseconds.
+     */
+    static void delay(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + nanos;
+        while (System.nanoTime() < deadline) {
+            // Spin until the deadline.
+        }
+    }
+
+    /**
+     * Computes a valid ISBN-13 by appending the check digit to a 12-digit prefix.
+     *
+     * @param prefix The first 12 digits of the ISBN.
+     * @return The full ISBN-13.
+     */
+    static String isbn(long prefix) {
+        String digits = Long.toString(prefix);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    /**
+     * A database that keeps its data in memory and delays every call.
+     */
+    static final class Database implements DatabaseService {
+        private final DatabaseService delegate = new InMemoryDatabaseService();
+        private final long latencyNanos;
+
+        Database(long latencyNanos) {
+            this.latencyNanos = latencyNanos;
+        }
+
+        @Override
+        public void addBook(String ISBN, Book book) {
+            delay(latencyNanos);
+            delegate.addBook(ISBN, book);
+        }
+
+        @Override
+        public void registerUser(String id, User user) {
+            delay(latencyNanos);
+            delegate.registerUser(id, user);
+        }
+
+        @Override
+        public Book getBookByISBN(String ISBN) {
+            delay(latencyNanos);
+            return delegate.getBookByISBN(ISBN);
+        }
+
+        @Override
+        public User getUserById(String userId) {
+            delay(latencyNanos);
+            return delegate.getUserById(userId);
+        }
+
+        @Override
+        public void borrowBook(String ISBN, String userId) {
+            delay(latencyNanos);
+            delegate.borrowBook(ISBN, userId);
+        }
+
+        @Override
+        public void returnBook(String ISBN) {
+            delay(latencyNanos);
+            delegate.returnBook(ISBN);
+        }
+    }
+
+    /**
+     * A review service returning the same reviews for every book after a delay.
+     */
+    static final class Reviews implements ReviewService {
+        private static final List<String> REVIEWS = Arrays.asList("A classic.", "Could not put it down.");
+        private final long latencyNanos;
+
+        Reviews(long latencyNanos) {
+            this.latencyNanos = latencyNanos;
+        }
+
+        @Override
+        public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+            delay(latencyNanos);
+            return REVIEWS;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * A notification service that accepts every message after a delay.
+     */
+    static final class Notifications implements NotificationService {
+        private final long latencyNanos;
+
+        Notifications(long latencyNanos) {
+            this.latencyNanos = latencyNanos;
+        }
+
+        @Override
+        public void notifyUser(String userId, String message) throws NotificationException {
+            delay(latencyNanos);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.util.Identifiers;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the validators the library runs on every request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    public String hyphenatedISBN = "978-0-545-01022-1";
+    public String plainISBN = "9780545010221";
+    public String userId = "123456789123";
+    public String author = "J. R. R. Tolkien";
+
+    // The author validator is private to Library, so it is reached through a method handle.
+    private MethodHandle isAuthorValid;
+    private Library library;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        Method method = Library.class.getDeclaredMethod("isAuthorValid", String.class);
+        method.setAccessible(true);
+        isAuthorValid = MethodHandles.lookup().unreflect(method);
+        library = new Library(new StandInServices.Database(0), new StandInServices.Reviews(0));
+    }
+
+    @Benchmark
+    public long parseHyphenatedISBN() {
+        return Identifiers.parseISBN(hyphenatedISBN);
+    }
+
+    @Benchmark
+    public long parsePlainISBN() {
+        return Identifiers.parseISBN(plainISBN);
+    }
+
+    @Benchmark
+    public long parseUserId() {
+        return Identifiers.parseUserId(userId);
+    }
+
+    @Benchmark
+    public boolean isAuthorValid() throws Throwable {
+        return (boolean) isAuthorValid.invokeExact(library, author);
+    }
+}
@@ -1,5 +1,7 @@
 package ac.il.bgu.qa;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 /**
  * Represents a book with its essential details and borrowing status.
  */
@@ -10,8 +12,13 @@ public class Book {
     private final String title;
     // The name of the author of the book.
     private final String author;
-    // Status to check if the book is currently borrowed or not.
-    private boolean isBorrowed;
+    // Status to check if the book is currently borrowed or not (1 when borrowed, 0 otherwise).
+    // Only changed through compare-and-set, so concurrent borrowers can never both succeed.
+    private volatile int isBorrowed;
+
+    // Atomic access to the borrowing status without allocating an AtomicBoolean per book.
+    private static final AtomicIntegerFieldUpdater<Book> BORROWED =
+            AtomicIntegerFieldUpdater.newUpdater(Book.class, "isBorrowed");
 
     /**
      * Constructs a new Book object.
@@ -24,7 +31,7 @@ public class Book {
         this.ISBN = ISBN;
         this.title = title;
         this.author = author;
-        this.isBorrowed = false;
+        this.isBorrowed = 0;
     }
 
     // Getter methods
@@ -62,7 +69,25 @@ public class Book {
      * @return true if the book is borrowed, otherwise false.
      */
     public boolean isBorrowed() {
-        return isBorrowed;
+        return isBorrowed != 0;
+    }
+
+    /**
+     * Atomically marks the book as borrowed if it is currently available.
+     *
+     * @return true if this call borrowed the book, false if it was already borrowed.
+     */
+    public boolean tryBorrow() {
+        return BORROWED.compareAndSet(this, 0, 1);
+    }
+
+    /**
+     * Atomically marks the book as returned if it is currently borrowed.
+     *
+     * @return true if this call returned the book, false if it wasn't borrowed.
+     */
+    public boolean tryReturn() {
+        return BORROWED.compareAndSet(this, 1, 0);
     }
 
     /**
@@ -70,9 +95,7 @@ public class Book {
      * Throws an exception if the book is already borrowed.
      */
     public void borrow() {
-        if (!isBorrowed) {
-            isBorrowed = true;
-        } else {
+        if (!tryBorrow()) {
             throw new IllegalStateException("Book is already borrowed!");
         }
     }
@@ -82,9 +105,7 @@ public class Book {
      * Throws an exception if the book was not previously borrowed.
      */
     public void returnBook() {
-        if (isBorrowed) {
-            isBorrowed = false;
-        } else {
+        if (!tryReturn()) {
             throw new IllegalStateException("ac.il.bgu.qa.Book wasn't borrowed!");
         }
     }
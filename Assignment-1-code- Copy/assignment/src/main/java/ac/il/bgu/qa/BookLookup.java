@@ -0,0 +1,68 @@
+package ac.il.bgu.qa;
+
+/**
+ * Represents the result of looking up a book through the non-throwing library API.
+ * Failed lookups are shared constants, one per result code, so they cost no allocation.
+ */
+public final class BookLookup {
+
+    // One preallocated failed lookup per result code, indexed by ordinal.
+    private static final BookLookup[] FAILURES = new BookLookup[ResultCode.values().length];
+
+    static {
+        for (ResultCode code : ResultCode.values()) {
+            FAILURES[code.ordinal()] = new BookLookup(code, null);
+        }
+    }
+
+    // How the lookup ended.
+    private final ResultCode code;
+    // The book that was found, or null if the lookup failed.
+    private final Book book;
+
+    private BookLookup(ResultCode code, Book book) {
+        this.code = code;
+        this.book = book;
+    }
+
+    /**
+     * Creates a successful lookup.
+     *
+     * @param book The book that was found.
+     * @return The lookup.
+     */
+    static BookLookup found(Book book) {
+        return new BookLookup(ResultCode.SUCCESS, book);
+    }
+
+    /**
+     * Retrieves the shared lookup for a failure.
+     *
+     * @param code The reason of the failure.
+     * @return The lookup.
+     */
+    static BookLookup failed(ResultCode code) {
+        if (code == ResultCode.SUCCESS) {
+            throw new IllegalArgumentException("Invalid result code.");
+        }
+        return FAILURES[code.ordinal()];
+    }
+
+    /**
+     * Retrieves how the lookup ended.
+     *
+     * @return The result code.
+     */
+    public ResultCode getCode() {
+        return code;
+    }
+
+    /**
+     * Retrieves the book that was found.
+     *
+     * @return The book, or null if the lookup failed.
+     */
+    public Book getBook() {
+        return book;
+    }
+}
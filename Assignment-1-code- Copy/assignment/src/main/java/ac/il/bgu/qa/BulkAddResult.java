@@ -0,0 +1,97 @@
+package ac.il.bgu.qa;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents the outcome of adding a batch of books to the library.
+ */
+public class BulkAddResult {
+
+    // The number of books that were added to the library.
+    private final int added;
+    // The records that were rejected, in the order they appeared in the batch.
+    private final List<Rejection> rejections;
+
+    /**
+     * Constructs a new BulkAddResult object.
+     *
+     * @param added      The number of books that were added.
+     * @param rejections The records that were rejected.
+     */
+    public BulkAddResult(int added, List<Rejection> rejections) {
+        this.added = added;
+        this.rejections = Collections.unmodifiableList(rejections);
+    }
+
+    /**
+     * Retrieves the number of books that were added.
+     *
+     * @return The number of added books.
+     */
+    public int getAdded() {
+        return added;
+    }
+
+    /**
+     * Retrieves the records that were rejected.
+     *
+     * @return The rejected records, in batch order.
+     */
+    public List<Rejection> getRejections() {
+        return rejections;
+    }
+
+    /**
+     * Represents a single record of the batch that was not added.
+     */
+    public static class Rejection {
+
+        // The position of the record in the batch.
+        private final int index;
+        // The rejected book.
+        private final Book book;
+        // The reason for the rejection, matching the message addBook would have thrown.
+        private final String reason;
+
+        /**
+         * Constructs a new Rejection object.
+         *
+         * @param index  The position of the record in the batch.
+         * @param book   The rejected book.
+         * @param reason The reason for the rejection.
+         */
+        public Rejection(int index, Book book, String reason) {
+            this.index = index;
+            this.book = book;
+            this.reason = reason;
+        }
+
+        /**
+         * Retrieves the position of the record in the batch.
+         *
+         * @return The zero-based index of the record.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Retrieves the rejected book.
+         *
+         * @return The rejected book.
+         */
+        public Book getBook() {
+            return book;
+        }
+
+        /**
+         * Retrieves the reason for the rejection.
+         *
+         * @return The rejection reason.
+         */
+        public String getReason() {
+            return reason;
+        }
+    }
+}
@@ -1,26 +1,165 @@
 package ac.il.bgu.qa;
 
 import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.index.AuthorIndex;
+import ac.il.bgu.qa.index.TitleIndex;
+import ac.il.bgu.qa.metrics.LibraryMetrics;
+import ac.il.bgu.qa.metrics.LibraryMetrics.Operation;
+import ac.il.bgu.qa.services.AsyncDatabaseService;
+import ac.il.bgu.qa.services.AsyncDatabaseServiceAdapter;
 import ac.il.bgu.qa.services.DatabaseService;
 import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.services.ReviewSessionPool;
+import ac.il.bgu.qa.util.BoundedExecutor;
+import ac.il.bgu.qa.util.Identifiers;
+import ac.il.bgu.qa.util.LockStripes;
+import ac.il.bgu.qa.util.LongKeyedMap;
+import ac.il.bgu.qa.util.VirtualThreads;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Represents a library which manages a collection of books and users.
  */
 public class Library {
 
+    // Number of records of a bulk insertion that are validated, looked up and written together.
+    private static final int BULK_CHUNK_SIZE = 10_000;
+
+    // Chunks smaller than this are validated sequentially, as forking would cost more than it saves.
+    private static final int PARALLEL_VALIDATION_THRESHOLD = 1_000;
+
+    // Number of locks serializing borrows and returns of the same book, unless configured otherwise.
+    private static final int DEFAULT_LOCK_STRIPES = 256;
+
     // Service to interact with the database
     private final DatabaseService databaseService;
 
-    // Service to fetch reviews for a book
-    private final ReviewService reviewService;
+    // Sessions of the service to fetch reviews for a book
+    private final ReviewSessionPool reviewSessions;
+
+    // Executor running the asynchronous review notifications
+    private final Executor executor;
+
+    // Non-blocking access to the database, for the asynchronous operations
+    private final AsyncDatabaseService asyncDatabaseService;
+
+    // Locks serializing the borrows and returns of each book
+    private final LockStripes lockStripes;
+
+    // Books of the database, by author
+    private final AuthorIndex authorIndex = new AuthorIndex();
+
+    // Titles of the books of the database, for prefix and substring search
+    private final TitleIndex titleIndex = new TitleIndex();
+
+    // The ISBN each indexed book was written or listed with, by its numeric key, so that the indexes
+    // read it back under the same string even from a database keyed by the string as given
+    private final LongKeyedMap<String> indexedISBNs = new LongKeyedMap<>();
+
+    // Latencies and outcomes of the library's operations
+    private final LibraryMetrics metrics = new LibraryMetrics();
 
     // Constructor for Library, initializes both services
+    // Asynchronous notifications run on the default executor, see defaultExecutor().
     public Library(DatabaseService databaseService, ReviewService reviewService) {
+        this(databaseService, reviewService, defaultExecutor());
+    }
+
+    // Constructor for Library, initializes both services and the executor for asynchronous notifications
+    // The review service is closed after every fetch; use a ReviewSessionPool to reuse its sessions instead.
+    public Library(DatabaseService databaseService, ReviewService reviewService, Executor executor) {
+        this(databaseService, ReviewSessionPool.closingAfterUse(reviewService), executor);
+    }
+
+    // Constructor for Library, initializes the database service and the pool of review sessions
+    // Asynchronous notifications run on the default executor, see defaultExecutor().
+    public Library(DatabaseService databaseService, ReviewSessionPool reviewSessions) {
+        this(databaseService, reviewSessions, defaultExecutor());
+    }
+
+    // Constructor for Library, initializes the database service, the pool of review sessions
+    // and the executor for asynchronous notifications
+    public Library(DatabaseService databaseService, ReviewSessionPool reviewSessions, Executor executor) {
+        this(databaseService, reviewSessions, executor, DEFAULT_LOCK_STRIPES);
+    }
+
+    // Constructor for Library, initializes the database service, the pool of review sessions,
+    // the executor for asynchronous notifications and the number of per-book lock stripes
+    // Asynchronous operations read the database by running its calls on the executor.
+    public Library(DatabaseService databaseService, ReviewSessionPool reviewSessions, Executor executor, int lockStripes) {
+        this(databaseService, new AsyncDatabaseServiceAdapter(databaseService, executor), reviewSessions, executor, lockStripes);
+    }
+
+    // Constructor for Library, initializes the database service with its asynchronous counterpart, the pool of
+    // review sessions, the executor for asynchronous notifications and the number of per-book lock stripes
+    // The books already in the database, such as a catalog restored from disk, are indexed right away.
+    public Library(DatabaseService databaseService, AsyncDatabaseService asyncDatabaseService,
+                   ReviewSessionPool reviewSessions, Executor executor, int lockStripes) {
+        if (databaseService == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        } else if (asyncDatabaseService == null) {
+            throw new IllegalArgumentException("Invalid asynchronous database service.");
+        } else if (reviewSessions == null) {
+            throw new IllegalArgumentException("Invalid review session pool.");
+        } else if (executor == null) {
+            throw new IllegalArgumentException("Invalid executor.");
+        }
         this.databaseService = databaseService;
-        this.reviewService = reviewService;
+        this.asyncDatabaseService = asyncDatabaseService;
+        this.reviewSessions = reviewSessions;
+        this.executor = executor;
+        this.lockStripes = new LockStripes(lockStripes);
+        databaseService.forEachBook(this::index);
+    }
+
+    /**
+     * Chooses the executor for asynchronous review fetches and notifications when none is given.
+     * Both are blocking calls to remote services. When the "library.virtualThreads" system property
+     * is true and the JVM supports it (Java 21 or later, see the java21 build profile), every call
+     * runs on its own virtual thread and a semaphore bounds how many run at once, to the value of
+     * "library.maxConcurrentCalls" (256 by default). Otherwise the common fork-join pool is used.
+     *
+     * @return The executor for asynchronous notifications.
+     */
+    public static Executor defaultExecutor() {
+        if (Boolean.getBoolean("library.virtualThreads") && VirtualThreads.isSupported()) {
+            return new BoundedExecutor(VirtualThreads.newExecutor(), Integer.getInteger("library.maxConcurrentCalls", 256));
+        }
+        return ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Retrieves the locks serializing borrows and returns, with their contention counters.
+     *
+     * @return The lock stripes of the library.
+     */
+    public LockStripes getLockStripes() {
+        return lockStripes;
+    }
+
+    /**
+     * Retrieves the latencies and outcomes of the library's operations.
+     * Call {@link LibraryMetrics#snapshot()} on the result to read them.
+     *
+     * @return The metrics of the library.
+     */
+    public LibraryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Shuts the library down, closing the pooled review sessions.
+     */
+    public void shutdown() {
+        reviewSessions.close();
     }
 
     /**
@@ -29,68 +168,350 @@ public class Library {
      * @param book The book to be added.
      */
     public void addBook(Book book) {
-        // Multiple checks to validate the book object's properties
-        if (book == null) {
-            throw new IllegalArgumentException("Invalid book.");
-        } else if (!isISBNValid(book.getISBN())){
-            throw new IllegalArgumentException("Invalid ISBN.");
-        } else if (book.getTitle() == null || book.getTitle().equals("")) {
-            throw new IllegalArgumentException("Invalid title.");
-        } else if (!isAuthorValid(book.getAuthor())) {
-            throw new IllegalArgumentException("Invalid author.");
-        } else if (book.isBorrowed()) {
-            throw new IllegalArgumentException("Book with invalid borrowed state.");
+        long start = System.nanoTime();
+        try {
+            // Multiple checks to validate the book object's properties
+            String rejection = validateBook(book);
+            if (rejection != null) {
+                throw new IllegalArgumentException(rejection);
+            }
+
+            // If all checks pass, add the book to the database in one round trip.
+            // If book already exists in the database, throw exception
+            if (!databaseService.addBookIfAbsent(book.getISBN(), book))
+                throw new IllegalArgumentException("Book already exists.");
+
+            // Index the stored book so it can be found by its author and title.
+            index(book.getISBN(), book);
+            metrics.succeeded(Operation.ADD_BOOK, start);
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.ADD_BOOK, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Adds a batch of books to the library's collection.
+     * Records are validated in parallel and checked for existence with one batched lookup per chunk,
+     * and the accepted books are written with one batched write per chunk. An invalid record does not
+     * abort the batch; it is reported in the result instead.
+     *
+     * @param books The books to be added.
+     * @return The number of added books and the rejected records with their reasons.
+     */
+    public BulkAddResult addBooks(Iterable<? extends Book> books) {
+        if (books == null) {
+            throw new IllegalArgumentException("Invalid books.");
+        }
+
+        // Process the batch in chunks so arbitrarily large catalogs never have to fit in memory at once.
+        List<BulkAddResult.Rejection> rejections = new ArrayList<>();
+        List<Book> chunk = new ArrayList<>(BULK_CHUNK_SIZE);
+        int added = 0;
+        int index = 0;
+        for (Book book : books) {
+            chunk.add(book);
+            if (chunk.size() == BULK_CHUNK_SIZE) {
+                added += addChunk(chunk, index, rejections);
+                index += chunk.size();
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            added += addChunk(chunk, index, rejections);
         }
 
-        // If book already exists in the database, throw exception
-        if (databaseService.getBookByISBN(book.getISBN()) != null)
-            throw new IllegalArgumentException("Book already exists.");
+        return new BulkAddResult(added, rejections);
+    }
 
-        // If all checks pass, add the book to the database
-        databaseService.addBook(book.getISBN(), book);
+    /**
+     * Adds a stream of books to the library's collection.
+     *
+     * @param books The books to be added.
+     * @return The number of added books and the rejected records with their reasons.
+     * @see #addBooks(Iterable)
+     */
+    public BulkAddResult addBooks(Stream<? extends Book> books) {
+        if (books == null) {
+            throw new IllegalArgumentException("Invalid books.");
+        }
+        Stream<Book> widened = books.map(book -> book);
+        return addBooks((Iterable<Book>) widened::iterator);
     }
 
     /**
-     *  Validates if input is of type ISBN-13.
+     * Validates, deduplicates and writes one chunk of a bulk insertion.
      *
-     *  @param isbn The International Standard Book Number to be validated.
-     *  @return true if valid, false otherwise.
-    */
-    private boolean isISBNValid(String isbn) {
-        // Check if the ISBN is null, return false if it is
-        if (isbn == null) {
-            return false;
+     * @param chunk      The books of the chunk.
+     * @param offset     The batch index of the first book of the chunk.
+     * @param rejections Collects the records that were not added.
+     * @return The number of books added from this chunk.
+     */
+    private int addChunk(List<Book> chunk, int offset, List<BulkAddResult.Rejection> rejections) {
+        // Validation is CPU-bound and independent per record, so run it in parallel for large chunks.
+        String[] reasons = new String[chunk.size()];
+        IntStream indexes = IntStream.range(0, chunk.size());
+        if (chunk.size() >= PARALLEL_VALIDATION_THRESHOLD) {
+            indexes = indexes.parallel();
         }
+        indexes.forEach(i -> reasons[i] = validateBook(chunk.get(i)));
 
-        // Remove any hyphen characters from the ISBN for standardization
-        isbn = isbn.replaceAll("-", "");
+        // Keep the first occurrence of each ISBN; later duplicates within the batch are rejected.
+        // Duplicates are detected on the canonical key, so hyphenated and plain forms collide.
+        LongKeyedMap<Integer> seen = new LongKeyedMap<>(chunk.size());
+        Map<String, Integer> candidates = new LinkedHashMap<>();
+        for (int i = 0; i < reasons.length; i++) {
+            if (reasons[i] == null) {
+                if (seen.putIfAbsent(Identifiers.parseISBN(chunk.get(i).getISBN()), i) != null) {
+                    reasons[i] = "Duplicate book in batch.";
+                } else {
+                    candidates.put(chunk.get(i).getISBN(), i);
+                }
+            }
+        }
 
-        // Check if the sanitized ISBN is of length 13 and if contains only digits
-        if (isbn.length() != 13 || !isbn.matches("\\d+")) {
-            return false;
+        // One batched conditional write for every candidate of the chunk. The database decides which
+        // ISBNs are still free, so a book added concurrently by another caller is neither overwritten
+        // nor indexed twice.
+        Map<String, Book> submitted = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> candidate : candidates.entrySet()) {
+            submitted.put(candidate.getKey(), chunk.get(candidate.getValue()));
         }
+        Set<String> added = submitted.isEmpty()
+                ? Collections.<String>emptySet()
+                : databaseService.addBooksIfAbsent(submitted);
 
-        // Calculate the sum based on the ISBN-13 rules:
-        // Odd position numbers are multiplied by 1
-        // Even position numbers are multiplied by 3
-        int sum = 0;
-        for (int i = 0; i < 12; i++) {
-            int digit = Integer.parseInt(String.valueOf(isbn.charAt(i)));
-            if (i % 2 == 0) {
-                sum += digit;
+        for (Map.Entry<String, Integer> candidate : candidates.entrySet()) {
+            if (added.contains(candidate.getKey())) {
+                index(candidate.getKey(), chunk.get(candidate.getValue()));
             } else {
-                sum += digit * 3;
+                reasons[candidate.getValue()] = "Book already exists.";
             }
         }
 
-        // Calculate the check digit
-        int checkDigit = 10 - (sum % 10);
-        if (checkDigit == 10) {
-            checkDigit = 0;
+        for (int i = 0; i < reasons.length; i++) {
+            if (reasons[i] != null) {
+                rejections.add(new BulkAddResult.Rejection(offset + i, chunk.get(i), reasons[i]));
+            }
         }
+        return added.size();
+    }
 
-        // Check if the calculated check digit matches the last digit of the ISBN
-        return checkDigit == Integer.parseInt(String.valueOf(isbn.charAt(12)));
+    /**
+     * Indexes a book stored in the database under an ISBN.
+     *
+     * @param ISBN The International Standard Book Number the book was stored under.
+     * @param book The book.
+     */
+    private void index(String ISBN, Book book) {
+        long key = Identifiers.parseISBN(ISBN);
+        if (key == Identifiers.INVALID) {
+            return;
+        }
+        indexedISBNs.put(key, ISBN);
+        String author = book.getAuthor();
+        if (author != null) {
+            authorIndex.add(author, key);
+        }
+        String title = book.getTitle();
+        if (title != null) {
+            titleIndex.add(title, key);
+        }
+    }
+
+    /**
+     * Finds the books of an author, in the order they were added to the library.
+     * Books that were already in the database when the library was created come first, in the order the database lists them.
+     * Author names are compared ignoring case and repeated spaces.
+     *
+     * @param author        The name of the author.
+     * @param offset        The number of matching books to skip.
+     * @param limit         The maximum number of books to return.
+     * @param availableOnly Whether to leave out the books that are currently borrowed.
+     * @return A page of the author's books.
+     */
+    public List<Book> findBooksByAuthor(String author, int offset, int limit, boolean availableOnly) {
+        if (!isAuthorValid(author)) {
+            throw new IllegalArgumentException("Invalid author.");
+        } else if (offset < 0) {
+            throw new IllegalArgumentException("Invalid offset.");
+        } else if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit.");
+        }
+
+        // Without the filter the page can be cut out of the index directly. With it, borrowed books
+        // don't count towards the offset, so the index is read from the start in batches.
+        List<Book> page = new ArrayList<>(Math.min(limit, BULK_CHUNK_SIZE));
+        int position = availableOnly ? 0 : offset;
+        int toSkip = availableOnly ? offset : 0;
+        while (page.size() < limit) {
+            long[] keys = authorIndex.find(author, position, Math.min(limit - page.size() + toSkip, BULK_CHUNK_SIZE));
+            if (keys.length == 0) {
+                break;
+            }
+            position += keys.length;
+
+            // One batched lookup per batch, so borrowed states are current.
+            for (Book book : lookUpBooks(keys)) {
+                if (availableOnly && book.isBorrowed()) {
+                    continue;
+                }
+                if (toSkip > 0) {
+                    toSkip--;
+                } else if (page.size() < limit) {
+                    page.add(book);
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Suggests books whose title starts with a prefix, ignoring case and repeated spaces.
+     * Titles are suggested in alphabetical order of their first characters.
+     *
+     * @param prefix The start of the title.
+     * @param limit  The maximum number of books to return.
+     * @return The matching books.
+     */
+    public List<Book> autocompleteTitles(String prefix, int limit) {
+        if (prefix == null || prefix.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid title.");
+        } else if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit.");
+        }
+
+        // Prefixes longer than the trie depth return candidates that still need checking, so the
+        // index is paged through until enough of them are confirmed against the real titles.
+        String folded = TitleIndex.normalize(prefix);
+        List<Book> found = new ArrayList<>(Math.min(limit, BULK_CHUNK_SIZE));
+        int position = 0;
+        while (found.size() < limit) {
+            long[] keys = titleIndex.withPrefix(folded, position, Math.min(limit - found.size(), BULK_CHUNK_SIZE));
+            if (keys.length == 0) {
+                break;
+            }
+            position += keys.length;
+            for (Book book : lookUpBooks(keys)) {
+                if (TitleIndex.normalize(book.getTitle()).startsWith(folded)) {
+                    found.add(book);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Searches for books whose title contains a text, ignoring case and repeated spaces.
+     * Books are returned in the order they were added to the library.
+     *
+     * @param text  The text the title contains.
+     * @param limit The maximum number of books to return.
+     * @return The matching books.
+     */
+    public List<Book> searchBooksByTitle(String text, int limit) {
+        if (text == null || text.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid title.");
+        } else if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit.");
+        }
+
+        // The index returns candidates whose every trigram matches; confirm them against the real title.
+        String folded = TitleIndex.normalize(text);
+        List<Book> found = new ArrayList<>(Math.min(limit, BULK_CHUNK_SIZE));
+        int position = 0;
+        while (found.size() < limit) {
+            long[] keys = titleIndex.containing(folded, position, Math.min(limit - found.size(), BULK_CHUNK_SIZE));
+            if (keys.length == 0) {
+                break;
+            }
+            position += keys.length;
+            for (Book book : lookUpBooks(keys)) {
+                if (TitleIndex.normalize(book.getTitle()).contains(folded)) {
+                    found.add(book);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Looks up indexed books with one batched read.
+     *
+     * @param keys The numeric keys of the books' ISBNs.
+     * @return The books that are still in the database, in the order of the keys.
+     */
+    private List<Book> lookUpBooks(long[] keys) {
+        List<String> ISBNs = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            String ISBN = indexedISBNs.get(key);
+            ISBNs.add(ISBN != null ? ISBN : Identifiers.formatISBN(key));
+        }
+        return lookUpBooks(ISBNs);
+    }
+
+    /**
+     * Looks up books with one batched read.
+     *
+     * @param ISBNs The International Standard Book Numbers of the books.
+     * @return The books that are still in the database, in the order of the ISBNs.
+     */
+    private List<Book> lookUpBooks(List<String> ISBNs) {
+        if (ISBNs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Book> books = databaseService.getBooksByISBN(ISBNs);
+        List<Book> found = new ArrayList<>(books.size());
+        for (String ISBN : ISBNs) {
+            Book book = books.get(ISBN);
+            if (book != null) {
+                found.add(book);
+            }
+        }
+        return found;
+    }
+
+    /**
+     *  Validates the properties of a book that is about to be added.
+     *
+     *  @param book The book to be validated.
+     *  @return The reason the book is invalid, or null if it is valid.
+     */
+    private String validateBook(Book book) {
+        if (book == null) {
+            return "Invalid book.";
+        } else if (!isISBNValid(book.getISBN())){
+            return "Invalid ISBN.";
+        } else if (book.getTitle() == null || book.getTitle().equals("")) {
+            return "Invalid title.";
+        } else if (!isAuthorValid(book.getAuthor())) {
+            return "Invalid author.";
+        } else if (book.isBorrowed()) {
+            return "Book with invalid borrowed state.";
+        }
+        return null;
+    }
+
+    /**
+     *  Validates if input is of type ISBN-13.
+     *  Parsing is a single allocation-free pass; see {@link Identifiers#parseISBN(String)}.
+     *
+     *  @param isbn The International Standard Book Number to be validated.
+     *  @return true if valid, false otherwise.
+    */
+    private boolean isISBNValid(String isbn) {
+        return Identifiers.parseISBN(isbn) != Identifiers.INVALID;
+    }
+
+    /**
+     *  Validates if input is a user Id, which should be a 12-digit number.
+     *  Unlike a regular expression match, this neither compiles a pattern nor allocates.
+     *
+     *  @param userId The user Id to be validated.
+     *  @return true if valid, false otherwise.
+    */
+    private boolean isUserIdValid(String userId) {
+        return Identifiers.parseUserId(userId) != Identifiers.INVALID;
     }
 
     /**
@@ -145,24 +566,40 @@ public class Library {
      * @param user The user to be registered.
      */
     public void registerUser(User user) {
-        // Multiple checks to validate the user object's properties.
-        if (user == null) {
-            throw new IllegalArgumentException("Invalid user.");
-        } else if (user.getId() == null || !user.getId().matches("\\d{12}")) {
-            throw new IllegalArgumentException("Invalid user Id.");
-        } else if (user.getName() == null || user.getName().equals("")) {
-            throw new IllegalArgumentException("Invalid user name.");
-        } else if (user.getNotificationService() == null) {
-            throw new IllegalArgumentException("Invalid notification service.");
-        }
+        long start = System.nanoTime();
+        try {
+            // Multiple checks to validate the user object's properties.
+            if (user == null) {
+                throw new IllegalArgumentException("Invalid user.");
+            } else if (user.getId() == null || !isUserIdValid(user.getId())) {
+                throw new IllegalArgumentException("Invalid user Id.");
+            } else if (user.getName() == null || user.getName().equals("")) {
+                throw new IllegalArgumentException("Invalid user name.");
+            } else if (user.getNotificationService() == null) {
+                throw new IllegalArgumentException("Invalid notification service.");
+            }
 
-        // Before registering, check if a user with the given Id already exists.
-        // If such a user is found, throw an exception.
-        if (databaseService.getUserById(user.getId()) != null)
-            throw new IllegalArgumentException("User already exists.");
+            // If all checks have passed, call the database service to register the user, in one round
+            // trip that also checks whether a user with the given Id already exists.
+            // If such a user is found, throw an exception.
+            if (!databaseService.registerUserIfAbsent(user.getId(), user))
+                throw new UserAlreadyExistsException("User already exists.");
+            metrics.succeeded(Operation.REGISTER_USER, start);
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.REGISTER_USER, start, e);
+            throw e;
+        }
+    }
 
-        // If all checks have passed, call the database service to register the user.
-        databaseService.registerUser(user.getId(), user);
+    /**
+     * Removes a user registered with {@link #registerUser(User)}, while the library still holds that same user.
+     * Lets a {@link ShardedLibrary} roll back a registration it could not replicate to every partition.
+     *
+     * @param user The user to be removed.
+     * @return true if the user was removed, otherwise false.
+     */
+    boolean unregisterUser(User user) {
+        return databaseService.unregisterUser(user.getId(), user);
     }
 
 
@@ -173,75 +610,205 @@ public class Library {
      * @param userId The Id of the user borrowing the book.
      */
     public void borrowBook(String ISBN, String userId) {
+        long start = System.nanoTime();
+        try {
+            ResultCode result = borrow(ISBN, userId);
+            if (!result.isSuccess()) {
+                throw failure(result);
+            }
+            metrics.succeeded(Operation.BORROW_BOOK, start);
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.BORROW_BOOK, start, e);
+            throw e;
+        }
+    }
 
-        // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
-            throw new IllegalArgumentException("Invalid ISBN.");
+    /**
+     * Borrows a book for a user, reporting routine failures as a result code instead of an exception.
+     * The checks are the same and run in the same order as in {@link #borrowBook(String, String)},
+     * so an already borrowed book or an unknown user costs no allocation. Failures of the database
+     * service are still thrown.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the book.
+     * @return {@link ResultCode#SUCCESS} if the book was borrowed, otherwise the reason it was not.
+     */
+    public ResultCode tryBorrowBook(String ISBN, String userId) {
+        long start = System.nanoTime();
+        try {
+            ResultCode result = borrow(ISBN, userId);
+            record(Operation.BORROW_BOOK, start, result);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.BORROW_BOOK, start, e);
+            throw e;
         }
+    }
 
-        // Retrieve the book associated with the ISBN from the database.
-        Book book = databaseService.getBookByISBN(ISBN);
+    /**
+     * Borrows a book for a user.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the book.
+     * @return {@link ResultCode#SUCCESS} if the book was borrowed, otherwise the reason it was not.
+     */
+    private ResultCode borrow(String ISBN, String userId) {
 
-        // If no book is found for the given ISBN, throw an exception.
-        if (book == null) {
-            throw new BookNotFoundException("Book not found!");
+        // Validate the ISBN. If it's invalid, fail.
+        if (!isISBNValid(ISBN)) {
+            return ResultCode.INVALID_ISBN;
         }
 
-        // Validate the user Id's format (should be a 12-digit number).
-        // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
-            throw new IllegalArgumentException("Invalid user Id.");
-        }
+        // Operations on the same book are serialized on its stripe, so the checks below
+        // and the database write act on a state no other call can change in between.
+        long key = Identifiers.parseISBN(ISBN);
+        ReentrantLock stripe = lockStripes.lock(key);
+        try {
+            // Validate the user Id's format (should be a 12-digit number).
+            // If it's invalid, fail. A missing book is still reported first, which costs a lookup,
+            // but only on this path.
+            if (!isUserIdValid(userId)) {
+                return databaseService.getBookByISBN(ISBN) == null ? ResultCode.BOOK_NOT_FOUND : ResultCode.INVALID_USER_ID;
+            }
 
-        // Check if the user Id's corresponds to a registered user in the database.
-        // If not, throw an exception indicating the user is not registered.
-        if (databaseService.getUserById(userId) == null) {
-            throw new UserNotRegisteredException("User not found!");
+            // In one round trip, check that the book exists, that the user is registered and that the
+            // book isn't borrowed yet, then mark it as borrowed by the user. The first failed check decides the result.
+            return databaseService.tryBorrow(ISBN, userId);
+        } finally {
+            stripe.unlock();
         }
+    }
 
-        // If the book is already borrowed, throw an exception.
-        if (book.isBorrowed()) {
-            throw new BookAlreadyBorrowedException("Book is already borrowed!");
+    /**
+     * Returns a previously borrowed book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     */
+    public void returnBook(String ISBN) {
+        long start = System.nanoTime();
+        try {
+            ResultCode result = giveBack(ISBN);
+            if (!result.isSuccess()) {
+                throw failure(result);
+            }
+            metrics.succeeded(Operation.RETURN_BOOK, start);
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.RETURN_BOOK, start, e);
+            throw e;
         }
+    }
 
-        // Mark the book as borrowed.
-        book.borrow();
-
-        // Record the borrowing transaction in the database by associating the book's ISBN with the user's Id.
-        databaseService.borrowBook(ISBN, userId);
+    /**
+     * Returns a previously borrowed book, reporting routine failures as a result code instead of an exception.
+     * The checks are the same and run in the same order as in {@link #returnBook(String)}.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return {@link ResultCode#SUCCESS} if the book was returned, otherwise the reason it was not.
+     */
+    public ResultCode tryReturnBook(String ISBN) {
+        long start = System.nanoTime();
+        try {
+            ResultCode result = giveBack(ISBN);
+            record(Operation.RETURN_BOOK, start, result);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.RETURN_BOOK, start, e);
+            throw e;
+        }
     }
 
     /**
      * Returns a previously borrowed book.
      *
      * @param ISBN The International Standard Book Number of the book.
+     * @return {@link ResultCode#SUCCESS} if the book was returned, otherwise the reason it was not.
      */
-    public void returnBook(String ISBN) {
-        
-        // Validate the ISBN. If it's not valid, throw an exception.
+    private ResultCode giveBack(String ISBN) {
+
+        // Validate the ISBN. If it's not valid, fail.
         if (!isISBNValid(ISBN)) {
-            throw new IllegalArgumentException("Invalid ISBN.");
+            return ResultCode.INVALID_ISBN;
         }
 
-        // Retrieve the book associated with the ISBN from the database.
-        Book book = databaseService.getBookByISBN(ISBN);
+        // Operations on the same book are serialized on its stripe, so the checks below
+        // and the database write act on a state no other call can change in between.
+        long key = Identifiers.parseISBN(ISBN);
+        ReentrantLock stripe = lockStripes.lock(key);
+        try {
+            // In one round trip, check that the book exists and is currently borrowed, then mark it as returned.
+            // A book that isn't borrowed was never borrowed or has already been returned.
+            return databaseService.tryReturn(ISBN);
+        } finally {
+            stripe.unlock();
+        }
+    }
 
-        // If no book is found for the given ISBN, throw a book not found exception.
-        if (book == null) {
-            throw new BookNotFoundException("Book not found!");
+    /**
+     * Creates the exception the throwing API reports a failed result code with.
+     * Routine failures are expected on the hot path, so their exceptions are built without a stack trace.
+     *
+     * @param result The failed result code.
+     * @return The exception to throw.
+     */
+    private static RuntimeException failure(ResultCode result) {
+        switch (result) {
+            case INVALID_ISBN:
+                return new IllegalArgumentException("Invalid ISBN.");
+            case INVALID_USER_ID:
+                return new IllegalArgumentException("Invalid user Id.");
+            case BOOK_NOT_FOUND:
+                return new BookNotFoundException("Book not found!", false);
+            case USER_NOT_REGISTERED:
+                return new UserNotRegisteredException("User not found!", false);
+            case BOOK_ALREADY_BORROWED:
+                return new BookAlreadyBorrowedException("Book is already borrowed!", false);
+            case BOOK_NOT_BORROWED:
+                return new BookNotBorrowedException("Book wasn't borrowed!", false);
+            default:
+                throw new IllegalArgumentException("Invalid result code.");
         }
+    }
 
-        // Check if the book is currently borrowed. If not, it means it was never borrowed
-        // or it has already been returned, therefore throw an exception.
-        if (!book.isBorrowed()) {
-            throw new BookNotBorrowedException("Book wasn't borrowed!");
+    /**
+     * Records a call of the non-throwing API, counting a failed result code like the exception it stands for.
+     *
+     * @param operation The operation that was called.
+     * @param start     The value of {@link System#nanoTime()} when the call started.
+     * @param result    The result of the call.
+     */
+    private void record(Operation operation, long start, ResultCode result) {
+        if (result.isSuccess()) {
+            metrics.succeeded(operation, start);
+        } else {
+            metrics.failed(operation, start, result.getExceptionType());
         }
+    }
 
-        // Change the status of the book to not borrowed.
-        book.returnBook();
+    /**
+     * Retrieves the books a user currently borrows, in the order they were borrowed.
+     * Loans are read from the database, so they survive a restart and agree between libraries sharing it.
+     *
+     * @param userId The Id of the user.
+     * @return The borrowed books.
+     */
+    public List<Book> getBorrowedBooks(String userId) {
+        if (Identifiers.parseUserId(userId) == Identifiers.INVALID) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        return lookUpBooks(databaseService.getBorrowedISBNs(userId));
+    }
 
-        // Update the database to reflect the returned status of the book.
-        databaseService.returnBook(ISBN);
+    /**
+     * Retrieves the Id of the user currently borrowing a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Id of the borrower, or null if the book is not borrowed.
+     */
+    public String getBorrower(String ISBN) {
+        if (Identifiers.parseISBN(ISBN) == Identifiers.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return databaseService.getBorrowerId(ISBN);
     }
 
     /**
@@ -251,6 +818,82 @@ public class Library {
      * @param userId The Id of the user to whom the reviews are to be sent.
      */
     public void notifyUserWithBookReviews(String ISBN, String userId) {
+        long start = System.nanoTime();
+        try {
+            sendBookReviews(ISBN, userId);
+            metrics.succeeded(Operation.NOTIFY_USER_WITH_BOOK_REVIEWS, start);
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.NOTIFY_USER_WITH_BOOK_REVIEWS, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Notifies a user with the reviews of a specified book without blocking the caller.
+     * The book and the user are independent, so both are read at the same time through the
+     * asynchronous database service. Fetching the reviews and delivering the notification run
+     * on the library's executor once both reads completed.
+     * Every failure, including invalid arguments, completes the returned future exceptionally
+     * with the same exception {@link #notifyUserWithBookReviews(String, String)} would throw.
+     *
+     * @param ISBN The ISBN of the book whose reviews are to be sent.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @return A future completed with the outcome once the notification was delivered.
+     */
+    public CompletableFuture<NotificationOutcome> notifyUserWithBookReviewsAsync(String ISBN, String userId) {
+        // The latency includes the time spent waiting for the database and the executor.
+        long start = System.nanoTime();
+        CompletableFuture<NotificationOutcome> outcome;
+
+        // Validate the ISBN and the user Id format before anything is sent to the database.
+        if (!isISBNValid(ISBN)) {
+            outcome = failedFuture(new IllegalArgumentException("Invalid ISBN."));
+        } else if (!isUserIdValid(userId)) {
+            outcome = failedFuture(new IllegalArgumentException("Invalid user Id."));
+        } else {
+            CompletableFuture<Book> book = asyncDatabaseService.getBookByISBN(ISBN);
+            CompletableFuture<User> user = asyncDatabaseService.getUserById(userId);
+            outcome = book.thenCombineAsync(user, (foundBook, foundUser) -> {
+                // A missing book is reported before a missing user, like in the synchronous variant.
+                if (foundBook == null) {
+                    throw new BookNotFoundException("Book not found!");
+                } else if (foundUser == null) {
+                    throw new UserNotRegisteredException("User not found!");
+                }
+                return new NotificationOutcome(ISBN, userId, sendBookReviews(foundBook, foundUser, ISBN));
+            }, executor);
+        }
+
+        // The returned stage completes only after the outcome is recorded.
+        return outcome.whenComplete((delivered, e) -> {
+            if (e == null) {
+                metrics.succeeded(Operation.NOTIFY_USER_WITH_BOOK_REVIEWS, start);
+            } else {
+                metrics.failed(Operation.NOTIFY_USER_WITH_BOOK_REVIEWS, start, e);
+            }
+        });
+    }
+
+    /**
+     * Creates a future that already failed.
+     *
+     * @param failure The exception the future completes with.
+     * @return The failed future.
+     */
+    private static <T> CompletableFuture<T> failedFuture(Throwable failure) {
+        CompletableFuture<T> failed = new CompletableFuture<>();
+        failed.completeExceptionally(failure);
+        return failed;
+    }
+
+    /**
+     * Fetches the reviews of a book and sends them to a user, retrying failed deliveries.
+     *
+     * @param ISBN The ISBN of the book whose reviews are to be sent.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @return The number of delivery attempts it took, between 1 and 5.
+     */
+    private int sendBookReviews(String ISBN, String userId) {
 
         // Validate the ISBN. If it's invalid, throw an exception.
         if (!isISBNValid(ISBN)) {
@@ -259,7 +902,7 @@ public class Library {
 
         // Validate the user Id format (should be a 12-digit number).
         // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
+        if (!isUserIdValid(userId)) {
             throw new IllegalArgumentException("Invalid user Id.");
         }
 
@@ -271,6 +914,20 @@ public class Library {
             throw new BookNotFoundException("Book not found!");
         }
 
+        return sendBookReviews(book, ISBN, userId);
+    }
+
+    /**
+     * Sends the reviews of an already retrieved book to a user, retrying failed deliveries.
+     * The ISBN and user Id are expected to be validated by the caller.
+     *
+     * @param book The book whose reviews are to be sent.
+     * @param ISBN The ISBN the book was retrieved with.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @return The number of delivery attempts it took, between 1 and 5.
+     */
+    private int sendBookReviews(Book book, String ISBN, String userId) {
+
         // Retrieve the user associated with the user Id from the database.
         User user = databaseService.getUserById(userId);
 
@@ -279,39 +936,68 @@ public class Library {
             throw new UserNotRegisteredException("User not found!");
         }
 
-        // Fetch the list of reviews for the specified book using the review service.
+        return sendBookReviews(book, user, ISBN);
+    }
+
+    /**
+     * Sends the reviews of an already retrieved book to an already retrieved user, retrying failed deliveries.
+     *
+     * @param book The book whose reviews are to be sent.
+     * @param user The user to whom the reviews are to be sent.
+     * @param ISBN The ISBN the book was retrieved with.
+     * @return The number of delivery attempts it took, between 1 and 5.
+     */
+    private int sendBookReviews(Book book, User user, String ISBN) {
+
+        // Fetch the list of reviews for the specified book using a leased review session.
         List<String> reviews;
+        ReviewService session = null;
+        boolean healthy = false;
         try {
-            reviews = reviewService.getReviewsForBook(ISBN);
+            session = reviewSessions.lease();
+            reviews = session.getReviewsForBook(ISBN);
+            healthy = true;
 
             // If no reviews are found or the review list is empty, throw an exception.
             if (reviews == null || reviews.isEmpty()) {
                 throw new NoReviewsFoundException("No reviews found!");
             }
         } catch (ReviewException e) {
+            // A call rejected by an open circuit never reached the backend, so the session is still usable.
+            healthy = e instanceof CircuitOpenException;
+
             // If there's an issue fetching the reviews, throw a service unavailable exception.
             throw new ReviewServiceUnavailableException("Review service unavailable!");
         } finally {
-            // Always close the review service connection after attempting to fetch the reviews.
-            reviewService.close();
+            // Hand the session back for reuse, or close it if it failed.
+            if (session != null) {
+                if (healthy) {
+                    reviewSessions.release(session);
+                } else {
+                    reviewSessions.invalidate(session);
+                }
+            }
         }
 
         // Construct the notification message containing the book's title and its reviews.
         String notificationMessage = "Reviews for '" + book.getTitle() + "':\n" + String.join("\n", reviews);
 
-        // Attempt to send the notification to the user. If it fails, retry up to 5 times.
+        // Attempt to send the notification to the user. If it fails, retry up to the metrics' attempt limit,
+        // so every outcome falls in one of the attempt buckets the metrics keep.
         int retryCount = 0;
-        while (retryCount < 5) {
+        while (retryCount < LibraryMetrics.MAX_NOTIFICATION_ATTEMPTS) {
             try {
                 user.sendNotification(notificationMessage);
-                return;
+                metrics.notified(retryCount + 1, true);
+                return retryCount + 1;
             } catch (NotificationException e) {
                 retryCount++;
-                System.err.println("Notification failed! Retrying attempt " + retryCount + "/5");
+                System.err.println("Notification failed! Retrying attempt " + retryCount + "/" + LibraryMetrics.MAX_NOTIFICATION_ATTEMPTS);
             }
         }
 
         // If all retry attempts fail, throw a notification exception.
+        metrics.notified(retryCount, false);
         throw new NotificationException("Notification failed!");
     }
 
@@ -320,43 +1006,95 @@ public class Library {
      *
      * @param ISBN   The International Standard Book Number of the book to be fetched.
      * @param userId The Id of the user to be notified with the book's reviews.
-     * @return       The book with the given ISBN if found, and notifies the user with its reviews.
+     * @return       The book with the given ISBN if found. The user is notified with its reviews asynchronously.
      */
     public Book getBookByISBN(String ISBN, String userId) {
-        // Validate the ISBN. If it's invalid, throw an exception.
+        long start = System.nanoTime();
+        try {
+            BookLookup lookup = lookUpBook(ISBN, userId);
+            if (lookup.getCode() == ResultCode.BOOK_ALREADY_BORROWED) {
+                throw new BookAlreadyBorrowedException("Book was already borrowed!", false);
+            } else if (!lookup.getCode().isSuccess()) {
+                throw failure(lookup.getCode());
+            }
+            metrics.succeeded(Operation.GET_BOOK_BY_ISBN, start);
+
+            // Return the retrieved book.
+            return lookup.getBook();
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.GET_BOOK_BY_ISBN, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Fetches a book by its ISBN and notifies the user with its reviews, reporting routine failures
+     * as a result code instead of an exception. The checks are the same and run in the same order as
+     * in {@link #getBookByISBN(String, String)}; failed lookups are shared and cost no allocation.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be fetched.
+     * @param userId The Id of the user to be notified with the book's reviews.
+     * @return The book if it was found and available, otherwise the reason it was not returned.
+     */
+    public BookLookup tryGetBookByISBN(String ISBN, String userId) {
+        long start = System.nanoTime();
+        try {
+            BookLookup lookup = lookUpBook(ISBN, userId);
+            record(Operation.GET_BOOK_BY_ISBN, start, lookup.getCode());
+            return lookup;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.GET_BOOK_BY_ISBN, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Fetches an available book by its ISBN and starts notifying the user with its reviews.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be fetched.
+     * @param userId The Id of the user to be notified with the book's reviews.
+     * @return The book if it was found and available, otherwise the reason it was not returned.
+     */
+    private BookLookup lookUpBook(String ISBN, String userId) {
+        // Validate the ISBN. If it's invalid, fail.
         if (!isISBNValid(ISBN)) {
-            throw new IllegalArgumentException("Invalid ISBN.");
+            return BookLookup.failed(ResultCode.INVALID_ISBN);
         }
 
-        // Validate the user Id format (should be a 12-digit number). 
-        // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
-            throw new IllegalArgumentException("Invalid user Id.");
+        // Validate the user Id format (should be a 12-digit number).
+        // If it's invalid, fail.
+        if (!isUserIdValid(userId)) {
+            return BookLookup.failed(ResultCode.INVALID_USER_ID);
         }
 
         // Retrieve the book associated with the ISBN from the database.
         Book book = databaseService.getBookByISBN(ISBN);
 
-        // If no book is found for the given ISBN, throw a book not found exception.
+        // If no book is found for the given ISBN, fail.
         if (book == null) {
-            throw new BookNotFoundException("Book not found!");
+            return BookLookup.failed(ResultCode.BOOK_NOT_FOUND);
         }
 
-        // If the book is already borrowed, throw an exception.
+        // If the book is already borrowed, fail.
         if (book.isBorrowed()) {
-            throw new BookAlreadyBorrowedException("Book was already borrowed!");
+            return BookLookup.failed(ResultCode.BOOK_ALREADY_BORROWED);
         }
 
-        // Attempt to notify the user with the book's reviews.
-        // This step is optional, so even if it fails, the book should still be returned.
+        // Attempt to notify the user with the book's reviews in the background.
+        // This step is optional, so even if it fails, the book should still be returned, and the
+        // lookup doesn't wait for it. The ids were validated and the book was read above, so the
+        // notification starts directly with the user lookup.
         try {
-            notifyUserWithBookReviews(ISBN, userId);
-        } catch (Exception e) {
+            CompletableFuture.runAsync(() -> sendBookReviews(book, ISBN, userId), executor)
+                    .whenComplete((ignored, e) -> {
+                        if (e != null) {
+                            System.out.println("Notification failed!");
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
             System.out.println("Notification failed!");
         }
 
-        // Return the retrieved book.
-        return book;
+        return BookLookup.found(book);
     }
 }
-
@@ -0,0 +1,54 @@
+package ac.il.bgu.qa;
+
+/**
+ * Represents a review notification that was delivered to a user.
+ */
+public class NotificationOutcome {
+
+    // The ISBN of the book whose reviews were sent.
+    private final String ISBN;
+    // The Id of the user who was notified.
+    private final String userId;
+    // The number of delivery attempts it took, including the successful one.
+    private final int attempts;
+
+    /**
+     * Constructs a new NotificationOutcome object.
+     *
+     * @param ISBN     The ISBN of the book whose reviews were sent.
+     * @param userId   The Id of the user who was notified.
+     * @param attempts The number of delivery attempts it took.
+     */
+    public NotificationOutcome(String ISBN, String userId, int attempts) {
+        this.ISBN = ISBN;
+        this.userId = userId;
+        this.attempts = attempts;
+    }
+
+    /**
+     * Retrieves the ISBN of the book whose reviews were sent.
+     *
+     * @return The book's ISBN.
+     */
+    public String getISBN() {
+        return ISBN;
+    }
+
+    /**
+     * Retrieves the Id of the user who was notified.
+     *
+     * @return The user's Id.
+     */
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * Retrieves the number of delivery attempts it took, including the successful one.
+     *
+     * @return The number of attempts, between 1 and 5.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,47 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.errors.UserNotRegisteredException;
+
+/**
+ * Represents how a call of the non-throwing library API ended.
+ * Every code other than {@link #SUCCESS} stands for the exception the throwing variant of the
+ * call would have thrown, so callers can branch on routine failures without any allocation.
+ */
+public enum ResultCode {
+
+    SUCCESS(null),
+    INVALID_ISBN(IllegalArgumentException.class),
+    INVALID_USER_ID(IllegalArgumentException.class),
+    BOOK_NOT_FOUND(BookNotFoundException.class),
+    USER_NOT_REGISTERED(UserNotRegisteredException.class),
+    BOOK_ALREADY_BORROWED(BookAlreadyBorrowedException.class),
+    BOOK_NOT_BORROWED(BookNotBorrowedException.class);
+
+    // The exception the throwing variant reports this outcome with, or null for a success.
+    private final Class<? extends RuntimeException> exceptionType;
+
+    ResultCode(Class<? extends RuntimeException> exceptionType) {
+        this.exceptionType = exceptionType;
+    }
+
+    /**
+     * Checks whether the call succeeded.
+     *
+     * @return true for {@link #SUCCESS}, otherwise false.
+     */
+    public boolean isSuccess() {
+        return this == SUCCESS;
+    }
+
+    /**
+     * Retrieves the type of the exception the throwing variant of the call would have thrown.
+     *
+     * @return The exception type, or null for {@link #SUCCESS}.
+     */
+    public Class<? extends RuntimeException> getExceptionType() {
+        return exceptionType;
+    }
+}
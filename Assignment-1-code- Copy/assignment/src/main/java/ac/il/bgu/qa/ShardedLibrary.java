@@ -0,0 +1,251 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.errors.UserAlreadyExistsException;
+import ac.il.bgu.qa.util.ConsistentHashRing;
+import ac.il.bgu.qa.util.Identifiers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Represents a library split over several partitions, each a {@link Library} with its own database.
+ * Every book lives in exactly one partition, chosen by consistent hashing of its ISBN, and every
+ * operation on a book is routed to that partition. Users are replicated to every partition, so
+ * a borrow or a notification never has to look anywhere but the book's partition.
+ * The ring keeps the number of books that change partition small when the set of partitions is
+ * changed between runs; moving those books to their new partition is out of scope.
+ */
+public class ShardedLibrary {
+
+    // Number of points each partition is placed at on the hash ring, unless configured otherwise.
+    private static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    // The partitions, indexed by their node number on the ring.
+    private final List<Library> partitions;
+
+    // Maps the numeric key of an ISBN to the number of its partition.
+    private final ConsistentHashRing ring;
+
+    // Constructor for ShardedLibrary, initializes the partitions
+    public ShardedLibrary(List<Library> partitions) {
+        this(partitions, DEFAULT_VIRTUAL_NODES);
+    }
+
+    // Constructor for ShardedLibrary, initializes the partitions and the number of points
+    // each one is placed at on the hash ring
+    public ShardedLibrary(List<Library> partitions, int virtualNodes) {
+        if (partitions == null || partitions.isEmpty() || partitions.contains(null)) {
+            throw new IllegalArgumentException("Invalid partitions.");
+        }
+        this.partitions = Collections.unmodifiableList(new ArrayList<>(partitions));
+        this.ring = new ConsistentHashRing(virtualNodes);
+        for (int i = 0; i < partitions.size(); i++) {
+            ring.add(i);
+        }
+    }
+
+    /**
+     * Retrieves the partitions of the library.
+     *
+     * @return The partitions, in the order they were given.
+     */
+    public List<Library> getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Finds the partition a book belongs to.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The partition the book is stored in.
+     * @throws IllegalArgumentException If the ISBN is invalid.
+     */
+    public Library partitionOf(String ISBN) {
+        long key = Identifiers.parseISBN(ISBN);
+        if (key == Identifiers.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return partitionOf(key);
+    }
+
+    // Finds the partition of the numeric key of a valid ISBN.
+    private Library partitionOf(long key) {
+        return partitions.get(ring.nodeFor(key));
+    }
+
+    /**
+     * Shuts every partition down.
+     */
+    public void shutdown() {
+        for (Library partition : partitions) {
+            partition.shutdown();
+        }
+    }
+
+    /**
+     * Adds a book to the partition of its ISBN.
+     *
+     * @param book The book to be added.
+     */
+    public void addBook(Book book) {
+        if (book == null) {
+            throw new IllegalArgumentException("Invalid book.");
+        }
+        partitionOf(book.getISBN()).addBook(book);
+    }
+
+    /**
+     * Registers a user with every partition.
+     * The first partition validates the user and decides whether it already exists; the others
+     * then receive a replica, and a replica registered with a partition directly is kept.
+     * If a replica can't be written, the ones this call wrote are removed again before the
+     * failure is thrown, so the registration can simply be retried.
+     *
+     * @param user The user to be registered.
+     */
+    public void registerUser(User user) {
+        partitions.get(0).registerUser(user);
+        List<Library> written = new ArrayList<>();
+        written.add(partitions.get(0));
+        try {
+            for (int i = 1; i < partitions.size(); i++) {
+                try {
+                    partitions.get(i).registerUser(user);
+                    written.add(partitions.get(i));
+                } catch (UserAlreadyExistsException e) {
+                    // The partition already holds a replica, which is not ours to roll back.
+                }
+            }
+        } catch (RuntimeException e) {
+            // Roll back in reverse order, so the first partition, which decides whether the user exists, goes last.
+            for (int i = written.size() - 1; i >= 0; i--) {
+                try {
+                    written.get(i).unregisterUser(user);
+                } catch (RuntimeException rollback) {
+                    e.addSuppressed(rollback);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Borrows a book for a user, in the partition of the book.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the book.
+     * @see Library#borrowBook(String, String)
+     */
+    public void borrowBook(String ISBN, String userId) {
+        partitionOf(ISBN).borrowBook(ISBN, userId);
+    }
+
+    /**
+     * Borrows a book for a user, in the partition of the book, reporting routine failures as a result code.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the book.
+     * @return {@link ResultCode#SUCCESS} if the book was borrowed, otherwise the reason it was not.
+     * @see Library#tryBorrowBook(String, String)
+     */
+    public ResultCode tryBorrowBook(String ISBN, String userId) {
+        long key = Identifiers.parseISBN(ISBN);
+        if (key == Identifiers.INVALID) {
+            return ResultCode.INVALID_ISBN;
+        }
+        return partitionOf(key).tryBorrowBook(ISBN, userId);
+    }
+
+    /**
+     * Returns a previously borrowed book, in the partition of the book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @see Library#returnBook(String)
+     */
+    public void returnBook(String ISBN) {
+        partitionOf(ISBN).returnBook(ISBN);
+    }
+
+    /**
+     * Returns a previously borrowed book, in the partition of the book, reporting routine failures as a result code.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return {@link ResultCode#SUCCESS} if the book was returned, otherwise the reason it was not.
+     * @see Library#tryReturnBook(String)
+     */
+    public ResultCode tryReturnBook(String ISBN) {
+        long key = Identifiers.parseISBN(ISBN);
+        if (key == Identifiers.INVALID) {
+            return ResultCode.INVALID_ISBN;
+        }
+        return partitionOf(key).tryReturnBook(ISBN);
+    }
+
+    /**
+     * Fetches a book by its ISBN from its partition and notifies the user with its reviews.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be fetched.
+     * @param userId The Id of the user to be notified with the book's reviews.
+     * @return The book with the given ISBN if found.
+     * @see Library#getBookByISBN(String, String)
+     */
+    public Book getBookByISBN(String ISBN, String userId) {
+        return partitionOf(ISBN).getBookByISBN(ISBN, userId);
+    }
+
+    /**
+     * Notifies a user with the reviews of a specified book, through the partition of the book.
+     *
+     * @param ISBN   The ISBN of the book whose reviews are to be sent.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @see Library#notifyUserWithBookReviews(String, String)
+     */
+    public void notifyUserWithBookReviews(String ISBN, String userId) {
+        partitionOf(ISBN).notifyUserWithBookReviews(ISBN, userId);
+    }
+
+    /**
+     * Notifies a user with the reviews of a specified book without blocking the caller, through the partition of the book.
+     *
+     * @param ISBN   The ISBN of the book whose reviews are to be sent.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @return A future completed with the outcome once the notification was delivered.
+     * @see Library#notifyUserWithBookReviewsAsync(String, String)
+     */
+    public CompletableFuture<NotificationOutcome> notifyUserWithBookReviewsAsync(String ISBN, String userId) {
+        long key = Identifiers.parseISBN(ISBN);
+        if (key == Identifiers.INVALID) {
+            // Invalid arguments are reported through the future, like a single library does.
+            CompletableFuture<NotificationOutcome> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalArgumentException("Invalid ISBN."));
+            return failed;
+        }
+        return partitionOf(key).notifyUserWithBookReviewsAsync(ISBN, userId);
+    }
+
+    /**
+     * Retrieves the Id of the user currently borrowing a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Id of the borrower, or null if the book is not borrowed.
+     */
+    public String getBorrower(String ISBN) {
+        return partitionOf(ISBN).getBorrower(ISBN);
+    }
+
+    /**
+     * Retrieves the books a user currently borrows, from every partition.
+     *
+     * @param userId The Id of the user.
+     * @return The borrowed books, grouped by partition and in the order they were borrowed within each.
+     */
+    public List<Book> getBorrowedBooks(String userId) {
+        List<Book> borrowed = new ArrayList<>();
+        for (Library partition : partitions) {
+            borrowed.addAll(partition.getBorrowedBooks(userId));
+        }
+        return borrowed;
+    }
+}
@@ -14,4 +14,15 @@ public class BookAlreadyBorrowedException extends RuntimeException {
     public BookAlreadyBorrowedException(String message) {
         super(message);
     }
+
+    /**
+     * Constructs a new BookAlreadyBorrowedException with the specified detail message,
+     * optionally without capturing a stack trace.
+     *
+     * @param message            the detail message.
+     * @param writableStackTrace whether the stack trace should be captured.
+     */
+    public BookAlreadyBorrowedException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
 }
@@ -0,0 +1,17 @@
+package ac.il.bgu.qa.errors;
+
+/**
+ * Represents a custom exception that is thrown when a call to the review service
+ * is rejected because its circuit breaker is open.
+ */
+public class CircuitOpenException extends ReviewException {
+
+    /**
+     * Constructs a new CircuitOpenException with the specified detail message.
+     *
+     * @param message the detail message.
+     */
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,19 @@
+package ac.il.bgu.qa.errors;
+
+/**
+ * Represents a custom exception that is thrown when a user is registered
+ * with an Id that is already taken within the library's system.
+ * It is an invalid argument like any other rejected registration, so callers
+ * that catch {@link IllegalArgumentException} keep working.
+ */
+public class UserAlreadyExistsException extends IllegalArgumentException {
+
+    /**
+     * Constructs a new UserAlreadyExistsException with the specified detail message.
+     *
+     * @param message the detail message.
+     */
+    public UserAlreadyExistsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,60 @@
+package ac.il.bgu.qa.index;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index from author names to the books they wrote.
+ * Names are normalized before they are used as keys, so "J. K. Rowling", "j. k. rowling" and
+ * "J.  K. Rowling" are the same author. The books of an author are kept in the order they were
+ * added, so a page of them is read in time proportional to the page size.
+ */
+public class AuthorIndex {
+
+    // The keys of the books of each author, by normalized name.
+    private final ConcurrentHashMap<String, PostingList> books = new ConcurrentHashMap<>();
+
+    /**
+     * Normalizes an author name. A valid name only holds letters, hyphens, spaces, dots and
+     * apostrophes, so it is enough to ignore case and to collapse runs of spaces.
+     *
+     * @param author The name of the author.
+     * @return The normalized name.
+     */
+    public static String normalize(String author) {
+        return TextFolding.fold(author);
+    }
+
+    /**
+     * Records a book of an author.
+     *
+     * @param author  The name of the author.
+     * @param isbnKey The numeric key of the book's ISBN.
+     */
+    public void add(String author, long isbnKey) {
+        books.computeIfAbsent(normalize(author), name -> new PostingList()).add(isbnKey);
+    }
+
+    /**
+     * Retrieves a page of the books of an author, in the order they were added.
+     *
+     * @param author The name of the author.
+     * @param offset The number of books to skip.
+     * @param limit  The maximum number of books to return.
+     * @return The numeric keys of the books' ISBNs.
+     */
+    public long[] find(String author, int offset, int limit) {
+        PostingList list = books.get(normalize(author));
+        return list == null ? new long[0] : list.range(offset, limit);
+    }
+
+    /**
+     * Counts the books of an author.
+     *
+     * @param author The name of the author.
+     * @return The number of books.
+     */
+    public int count(String author) {
+        PostingList list = books.get(normalize(author));
+        return list == null ? 0 : list.size();
+    }
+}
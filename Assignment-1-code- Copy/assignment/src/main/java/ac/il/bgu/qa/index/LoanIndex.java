@@ -0,0 +1,119 @@
+package ac.il.bgu.qa.index;
+
+import ac.il.bgu.qa.util.Identifiers;
+import ac.il.bgu.qa.util.LongKeyedMap;
+
+import java.util.Arrays;
+
+/**
+ * An index of the current loans, in both directions: from a book to its borrower and from a
+ * user to the books they borrowed. Both lookups take time proportional to the size of the answer.
+ * Databases keep one next to their loan records and update it under the same per-book lock, so the
+ * two directions never disagree for a book.
+ */
+public class LoanIndex {
+
+    // Id of the current borrower, by ISBN key.
+    private final LongKeyedMap<String> borrowers = new LongKeyedMap<>();
+
+    // ISBN keys of the books each user currently borrows, by user Id key.
+    private final LongKeyedMap<Loans> loans = new LongKeyedMap<>();
+
+    /**
+     * Records that a user borrowed a book.
+     *
+     * @param isbnKey The numeric key of the book's ISBN.
+     * @param userKey The numeric key of the user's Id.
+     * @param userId  The Id of the user.
+     */
+    public void borrowed(long isbnKey, long userKey, String userId) {
+        String previous = borrowers.put(isbnKey, userId);
+        if (previous != null) {
+            removeLoan(isbnKey, previous);
+        }
+        if (userKey < 0) {
+            // Not a user Id, so there is no user to list the loan under.
+            return;
+        }
+        Loans userLoans = loans.get(userKey);
+        if (userLoans == null) {
+            Loans created = new Loans();
+            userLoans = loans.putIfAbsent(userKey, created);
+            if (userLoans == null) {
+                userLoans = created;
+            }
+        }
+        userLoans.add(isbnKey);
+    }
+
+    /**
+     * Records that a book was returned.
+     *
+     * @param isbnKey The numeric key of the book's ISBN.
+     */
+    public void returned(long isbnKey) {
+        String userId = borrowers.remove(isbnKey);
+        if (userId != null) {
+            removeLoan(isbnKey, userId);
+        }
+    }
+
+    /**
+     * Retrieves the borrower of a book.
+     *
+     * @param isbnKey The numeric key of the book's ISBN.
+     * @return The Id of the borrower, or null if the book is not borrowed.
+     */
+    public String borrowerOf(long isbnKey) {
+        return borrowers.get(isbnKey);
+    }
+
+    /**
+     * Retrieves the books a user currently borrows.
+     *
+     * @param userKey The numeric key of the user's Id.
+     * @return The ISBN keys of the books, in the order they were borrowed.
+     */
+    public long[] loansOf(long userKey) {
+        Loans userLoans = loans.get(userKey);
+        return userLoans == null ? new long[0] : userLoans.toArray();
+    }
+
+    private void removeLoan(long isbnKey, String userId) {
+        long userKey = Identifiers.parseUserId(userId);
+        Loans userLoans = userKey < 0 ? null : loans.get(userKey);
+        if (userLoans != null) {
+            userLoans.remove(isbnKey);
+        }
+    }
+
+    /**
+     * The books borrowed by one user. Users only hold a handful of loans, so a small array
+     * scanned on removal beats a hash set.
+     */
+    private static final class Loans {
+        private long[] keys = new long[2];
+        private int size;
+
+        synchronized void add(long key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size << 1);
+            }
+            keys[size++] = key;
+        }
+
+        synchronized void remove(long key) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        synchronized long[] toArray() {
+            return Arrays.copyOf(keys, size);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ac.il.bgu.qa.index;
+
+import java.util.Arrays;
+
+/**
+ * A thread-safe, growable list of book keys in insertion order.
+ * Keys are kept in a primitive long array, so an entry costs eight bytes instead of a boxed
+ * Long and a list node. The list is append-only, which lets readers scan a snapshot of it
+ * without copying.
+ */
+public final class PostingList {
+
+    // The keys; only the first size slots are used.
+    private long[] keys = new long[4];
+    private int size;
+
+    /**
+     * Appends a key to the list.
+     *
+     * @param key The key to append.
+     */
+    public synchronized void add(long key) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size + (size >> 1));
+        }
+        keys[size++] = key;
+    }
+
+    /**
+     * Counts the keys in the list.
+     *
+     * @return The number of keys.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Copies a range of the list.
+     *
+     * @param offset The position of the first key to copy.
+     * @param limit  The maximum number of keys to copy.
+     * @return The keys in the range, empty if the offset is past the end.
+     */
+    public synchronized long[] range(int offset, int limit) {
+        if (offset >= size) {
+            return new long[0];
+        }
+        return Arrays.copyOfRange(keys, offset, offset + Math.min(limit, size - offset));
+    }
+
+    /**
+     * Copies the whole list.
+     *
+     * @return Every key, in insertion order.
+     */
+    public synchronized long[] toArray() {
+        return Arrays.copyOf(keys, size);
+    }
+
+    /**
+     * Takes a snapshot of the list without copying it. Keys are only ever appended, and a grown
+     * array replaces the old one instead of overwriting it, so the snapshot never changes.
+     *
+     * @return The current array and the number of keys in use.
+     */
+    synchronized Snapshot snapshot() {
+        return new Snapshot(keys, size);
+    }
+
+    /**
+     * The keys of a list at one point in time; only the first size slots are part of it.
+     */
+    static final class Snapshot {
+        final long[] keys;
+        final int size;
+
+        Snapshot(long[] keys, int size) {
+            this.keys = keys;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ac.il.bgu.qa.index;
+
+import java.util.Locale;
+
+/**
+ * Folds names and titles into the form they are indexed under.
+ */
+final class TextFolding {
+
+    private TextFolding() {
+    }
+
+    /**
+     * Ignores case, drops leading and trailing whitespace and collapses runs of whitespace into one space.
+     *
+     * @param text The text to fold.
+     * @return The folded text.
+     */
+    static String fold(String text) {
+        StringBuilder folded = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = folded.length() > 0;
+            } else {
+                if (space) {
+                    folded.append(' ');
+                    space = false;
+                }
+                folded.append(c);
+            }
+        }
+        return folded.toString().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,365 @@
+package ac.il.bgu.qa.index;
+
+import ac.il.bgu.qa.util.LongKeyedMap;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A search index over book titles, for autocompletion and substring search.
+ * Titles are folded (case and repeated spaces ignored) and indexed twice:
+ * <ul>
+ *     <li>in a prefix trie, whose depth is capped so the trie stays small for large catalogs;</li>
+ *     <li>in an inverted index from every three-character sequence (trigram) of a title to the
+ *     titles containing it;</li>
+ *     <li>in an inverted index from every single character and pair of characters of a title, so
+ *     texts too short to have a trigram are still matched anywhere in the title.</li>
+ * </ul>
+ * Every indexed title gets a document number in the order it was added. Posting lists hold
+ * document numbers, so they are sorted and a substring query intersects them in one merge pass;
+ * the document table maps the numbers back to ISBN keys.
+ * <p>
+ * Both lookups return candidates: a prefix longer than the trie depth, or a substring whose
+ * trigrams all occur in a title but not next to each other, may match titles that don't
+ * actually qualify. Callers check the candidates against the real titles.
+ */
+public class TitleIndex {
+
+    /**
+     * Titles are branched on up to this many characters; longer titles share the node they reach.
+     */
+    public static final int MAX_PREFIX_DEPTH = 10;
+
+    // Number of characters in an indexed sequence.
+    private static final int GRAM = 3;
+
+    // Writers take the write lock; queries share the read lock.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // The root of the prefix trie.
+    private final Node root = new Node();
+
+    // Posting lists of document numbers, keyed by the three chars of a trigram packed into a long.
+    private final LongKeyedMap<PostingList> trigrams = new LongKeyedMap<>(1 << 16);
+
+    // Posting lists of document numbers, keyed by a character or a pair of characters and their count.
+    private final LongKeyedMap<PostingList> shortGrams = new LongKeyedMap<>(1 << 12);
+
+    // ISBN key of every document, by document number.
+    private long[] documents = new long[1024];
+    private int documentCount;
+
+    /**
+     * Folds a title into the form it is indexed under.
+     *
+     * @param title The title.
+     * @return The folded title.
+     */
+    public static String normalize(String title) {
+        return TextFolding.fold(title);
+    }
+
+    /**
+     * Indexes the title of a book.
+     *
+     * @param title   The title of the book.
+     * @param isbnKey The numeric key of the book's ISBN.
+     */
+    public void add(String title, long isbnKey) {
+        String folded = normalize(title);
+        long[] grams = distinctTrigrams(folded);
+        long[] shorts = distinctShortGrams(folded);
+
+        lock.writeLock().lock();
+        try {
+            long document = documentCount;
+            if (documentCount == documents.length) {
+                documents = Arrays.copyOf(documents, documentCount << 1);
+            }
+            documents[documentCount++] = isbnKey;
+
+            Node node = root;
+            for (int depth = 0; depth < folded.length() && depth < MAX_PREFIX_DEPTH; depth++) {
+                node = node.childFor(folded.charAt(depth));
+            }
+            if (node.titles == null) {
+                node.titles = new PostingList();
+            }
+            node.titles.add(isbnKey);
+
+            post(trigrams, grams, document);
+            post(shortGrams, shorts, document);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds titles starting with a prefix, in alphabetical order of their first characters.
+     * Prefixes longer than {@link #MAX_PREFIX_DEPTH} return the titles sharing the first characters,
+     * in the order they were indexed.
+     *
+     * @param prefix The start of the title.
+     * @param offset The number of candidates to skip.
+     * @param limit  The maximum number of candidates to return.
+     * @return The ISBN keys of the candidates.
+     */
+    public long[] withPrefix(String prefix, int offset, int limit) {
+        String folded = normalize(prefix);
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int depth = 0; depth < folded.length() && depth < MAX_PREFIX_DEPTH; depth++) {
+                node = node.child(folded.charAt(depth));
+                if (node == null) {
+                    return new long[0];
+                }
+            }
+            if (folded.length() > MAX_PREFIX_DEPTH) {
+                return node.titles == null ? new long[0] : node.titles.range(offset, limit);
+            }
+
+            // The trie is walked in order, so the skipped candidates are collected and dropped.
+            int end = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+            KeyBuffer found = new KeyBuffer(Math.min(end, 64));
+            collect(node, found, end);
+            return Arrays.copyOfRange(found.keys, Math.min(offset, found.size), found.size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds titles containing a text, in the order they were indexed.
+     * Texts shorter than three characters have no trigrams and are looked up by their characters instead.
+     *
+     * @param text   The text the title contains.
+     * @param offset The number of candidates to skip.
+     * @param limit  The maximum number of candidates to return.
+     * @return The ISBN keys of the candidates.
+     */
+    public long[] containing(String text, int offset, int limit) {
+        String folded = normalize(text);
+        if (folded.isEmpty()) {
+            return everyTitle(offset, limit);
+        }
+        boolean isShort = folded.length() < GRAM;
+        long[] grams = isShort ? new long[] {shortGram(folded, 0, folded.length())} : distinctTrigrams(folded);
+
+        lock.readLock().lock();
+        try {
+            // Intersect from the shortest list, so the merge costs no more than the rarest trigram.
+            LongKeyedMap<PostingList> postings = isShort ? shortGrams : trigrams;
+            PostingList.Snapshot[] lists = new PostingList.Snapshot[grams.length];
+            for (int i = 0; i < grams.length; i++) {
+                PostingList list = postings.get(grams[i]);
+                if (list == null) {
+                    return new long[0];
+                }
+                lists[i] = list.snapshot();
+            }
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+            KeyBuffer found = new KeyBuffer(Math.min(limit, 64));
+            int[] cursors = new int[lists.length];
+            int skipped = 0;
+            candidates:
+            for (int i = 0; i < lists[0].size && found.size < limit; i++) {
+                long document = lists[0].keys[i];
+                for (int j = 1; j < lists.length; j++) {
+                    cursors[j] = seek(lists[j], cursors[j], document);
+                    if (cursors[j] == lists[j].size) {
+                        break candidates;
+                    }
+                    if (lists[j].keys[cursors[j]] != document) {
+                        continue candidates;
+                    }
+                }
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    found.add(documents[(int) document]);
+                }
+            }
+            return found.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the indexed titles.
+     *
+     * @return The number of titles.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Every title contains the empty text, so it pages through all of them.
+    private long[] everyTitle(int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            int from = Math.min(offset, documentCount);
+            return Arrays.copyOfRange(documents, from, from + Math.min(limit, documentCount - from));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Collects titles depth-first, children in character order, until the limit is reached.
+    private static void collect(Node node, KeyBuffer found, int limit) {
+        if (node.titles != null) {
+            PostingList.Snapshot titles = node.titles.snapshot();
+            for (int i = 0; i < titles.size && found.size < limit; i++) {
+                found.add(titles.keys[i]);
+            }
+        }
+        for (int i = 0; i < node.childCount && found.size < limit; i++) {
+            collect(node.children[i], found, limit);
+        }
+    }
+
+    // Galloping search for the first position at or after from holding a document >= target.
+    private static int seek(PostingList.Snapshot list, int from, long target) {
+        int step = 1;
+        int low = from;
+        int high = from;
+        while (high < list.size && list.keys[high] < target) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, list.size);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (list.keys[middle] < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Adds a document to the posting list of each of its grams. Called with the write lock held.
+    private static void post(LongKeyedMap<PostingList> postings, long[] grams, long document) {
+        for (long gram : grams) {
+            PostingList list = postings.get(gram);
+            if (list == null) {
+                list = new PostingList();
+                postings.put(gram, list);
+            }
+            list.add(document);
+        }
+    }
+
+    private static long[] distinctShortGrams(String folded) {
+        long[] grams = new long[Math.max(0, 2 * folded.length() - 1)];
+        int count = 0;
+        for (int i = 0; i < folded.length(); i++) {
+            grams[count++] = shortGram(folded, i, 1);
+            if (i + 1 < folded.length()) {
+                grams[count++] = shortGram(folded, i, 2);
+            }
+        }
+        return distinct(grams);
+    }
+
+    // Packs one or two characters and their count into a key, so a pair never collides with a single character.
+    private static long shortGram(String folded, int from, int length) {
+        long gram = (long) length << 32 | folded.charAt(from);
+        return length == 1 ? gram : gram << 16 | folded.charAt(from + 1);
+    }
+
+    private static long[] distinctTrigrams(String folded) {
+        if (folded.length() < GRAM) {
+            return new long[0];
+        }
+        long[] grams = new long[folded.length() - GRAM + 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) folded.charAt(i) << 32) | ((long) folded.charAt(i + 1) << 16) | folded.charAt(i + 2);
+        }
+        return distinct(grams);
+    }
+
+    private static long[] distinct(long[] grams) {
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    /**
+     * A trie node. Children are kept sorted by character, so they are found by binary search
+     * and visited in alphabetical order.
+     */
+    private static final class Node {
+        private static final char[] NO_LABELS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        char[] labels = NO_LABELS;
+        Node[] children = NO_CHILDREN;
+        int childCount;
+
+        // ISBN keys of the titles ending here, or continuing past the maximum depth.
+        PostingList titles;
+
+        Node child(char label) {
+            int i = Arrays.binarySearch(labels, 0, childCount, label);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node childFor(char label) {
+            int i = Arrays.binarySearch(labels, 0, childCount, label);
+            if (i >= 0) {
+                return children[i];
+            }
+            int at = -i - 1;
+            if (childCount == labels.length) {
+                int grown = Math.max(2, childCount << 1);
+                labels = Arrays.copyOf(labels, grown);
+                children = Arrays.copyOf(children, grown);
+            }
+            System.arraycopy(labels, at, labels, at + 1, childCount - at);
+            System.arraycopy(children, at, children, at + 1, childCount - at);
+            Node child = new Node();
+            labels[at] = label;
+            children[at] = child;
+            childCount++;
+            return child;
+        }
+    }
+
+    /**
+     * A growable buffer of keys.
+     */
+    private static final class KeyBuffer {
+        long[] keys;
+        int size;
+
+        KeyBuffer(int capacity) {
+            keys = new long[Math.max(capacity, 1)];
+        }
+
+        void add(long key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size << 1);
+            }
+            keys[size++] = key;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(keys, size);
+        }
+    }
+}
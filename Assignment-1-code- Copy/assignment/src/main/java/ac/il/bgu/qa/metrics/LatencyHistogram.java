@@ -0,0 +1,164 @@
+package ac.il.bgu.qa.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations in nanoseconds, with log-linear buckets in the style of
+ * HdrHistogram. Every power of two is split into 8 equal buckets, so any recorded value is known
+ * to within 12.5%, over the whole range of a long, in a fixed table of 488 counters.
+ * Recording is one bucket computation and two atomic increments; it never locks or allocates.
+ */
+public final class LatencyHistogram {
+
+    // Each power of two is split into 2^SUB_BUCKET_BITS buckets.
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Enough buckets for every non-negative long.
+    static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    // Number of recorded values, per bucket.
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    // Sum of the recorded values, for the mean.
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos The duration in nanoseconds; negative values are recorded as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketOf(value));
+        sum.add(value);
+    }
+
+    /**
+     * Copies the current counts. Values recorded while copying may or may not be included.
+     *
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, sum.sum());
+    }
+
+    /**
+     * Finds the bucket of a value.
+     *
+     * @param value The non-negative value.
+     * @return The index of its bucket.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // Keep the highest SUB_BUCKET_BITS + 1 bits: the leading one selects the power of two,
+        // the bits after it the bucket within it.
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Finds the smallest value of a bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return The lowest value that falls in it.
+     */
+    static long lowestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        return (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+    }
+
+    /**
+     * Finds the largest value of a bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return The highest value that falls in it.
+     */
+    static long highestValueOf(int bucket) {
+        return bucket + 1 < BUCKETS ? lowestValueOf(bucket + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    /**
+     * An immutable copy of a histogram's counts.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+
+        Snapshot(long[] counts, long sum) {
+            long total = 0;
+            for (long bucket : counts) {
+                total += bucket;
+            }
+            this.counts = counts;
+            this.count = total;
+            this.sum = sum;
+        }
+
+        /**
+         * Counts the recorded values.
+         *
+         * @return The number of values.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Computes the mean of the recorded values.
+         *
+         * @return The mean in nanoseconds, or 0 if nothing was recorded.
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Finds the largest recorded value, to within the precision of its bucket.
+         *
+         * @return The upper bound of the highest non-empty bucket, or 0 if nothing was recorded.
+         */
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0) {
+                    return highestValueOf(i);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Finds the value below which a percentage of the recorded values fall, such as 99 for p99.
+         *
+         * @param percentile The percentage, between 0 and 100.
+         * @return The upper bound of the bucket holding that value, or 0 if nothing was recorded.
+         */
+        public long getPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Invalid percentile.");
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValueOf(i);
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package ac.il.bgu.qa.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latencies and outcomes of a library's operations, and the number of attempts its
+ * notifications took. Recording is lock-free: it reads the clock, increments a histogram bucket
+ * and increments a counter. Reading is done through {@link #snapshot()}.
+ */
+public final class LibraryMetrics {
+
+    // Outcome recorded for calls that returned normally.
+    public static final String SUCCESS = "success";
+
+    // Number of times a notification is attempted before it is given up.
+    public static final int MAX_NOTIFICATION_ATTEMPTS = 5;
+
+    /**
+     * The measured operations of a library.
+     */
+    public enum Operation {
+        ADD_BOOK,
+        REGISTER_USER,
+        BORROW_BOOK,
+        RETURN_BOOK,
+        GET_BOOK_BY_ISBN,
+        NOTIFY_USER_WITH_BOOK_REVIEWS
+    }
+
+    private final Map<Operation, OperationMetrics> operations = new EnumMap<>(Operation.class);
+
+    // Number of delivered notifications, by the attempt that delivered them, starting from 0 for the first.
+    private final AtomicLongArray deliveredOnAttempt = new AtomicLongArray(MAX_NOTIFICATION_ATTEMPTS);
+
+    // Number of notifications given up after every attempt failed.
+    private final LongAdder undelivered = new LongAdder();
+
+    /**
+     * Constructs a new LibraryMetrics object with every count at zero.
+     */
+    public LibraryMetrics() {
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new OperationMetrics());
+        }
+    }
+
+    /**
+     * Records a call that returned normally.
+     *
+     * @param operation  The operation that was called.
+     * @param startNanos The value of {@link System#nanoTime()} when the call started.
+     */
+    public void succeeded(Operation operation, long startNanos) {
+        OperationMetrics metrics = operations.get(operation);
+        metrics.latency.record(System.nanoTime() - startNanos);
+        metrics.successes.increment();
+    }
+
+    /**
+     * Records a call that threw an exception, counted by the exception's type.
+     * Exceptions wrapped by a future are counted by the type of their cause.
+     *
+     * @param operation  The operation that was called.
+     * @param startNanos The value of {@link System#nanoTime()} when the call started.
+     * @param failure    The exception the call threw.
+     */
+    public void failed(Operation operation, long startNanos, Throwable failure) {
+        while ((failure instanceof CompletionException || failure instanceof ExecutionException)
+                && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        failed(operation, startNanos, failure.getClass());
+    }
+
+    /**
+     * Records a call that failed without throwing, counted like the exception that stands for its outcome.
+     *
+     * @param operation     The operation that was called.
+     * @param startNanos    The value of {@link System#nanoTime()} when the call started.
+     * @param exceptionType The type of the exception the throwing variant of the call throws.
+     */
+    public void failed(Operation operation, long startNanos, Class<? extends Throwable> exceptionType) {
+        OperationMetrics metrics = operations.get(operation);
+        metrics.latency.record(System.nanoTime() - startNanos);
+        LongAdder counter = metrics.failures.get(exceptionType);
+        if (counter == null) {
+            counter = metrics.failures.computeIfAbsent(exceptionType, ignored -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * Records the end of the delivery of a notification.
+     *
+     * @param attempts  The number of attempts made, between 1 and {@link #MAX_NOTIFICATION_ATTEMPTS}.
+     * @param delivered Whether the last attempt delivered the notification.
+     */
+    public void notified(int attempts, boolean delivered) {
+        if (delivered) {
+            deliveredOnAttempt.incrementAndGet(Math.min(Math.max(attempts, 1), MAX_NOTIFICATION_ATTEMPTS) - 1);
+        } else {
+            undelivered.increment();
+        }
+    }
+
+    /**
+     * Copies the current counts. Calls recorded while copying may or may not be included.
+     *
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+        Map<Operation, LatencyHistogram.Snapshot> latencies = new EnumMap<>(Operation.class);
+        Map<Operation, Map<String, Long>> outcomes = new EnumMap<>(Operation.class);
+        for (Map.Entry<Operation, OperationMetrics> entry : operations.entrySet()) {
+            OperationMetrics metrics = entry.getValue();
+            latencies.put(entry.getKey(), metrics.latency.snapshot());
+            Map<String, Long> counts = new TreeMap<>();
+            counts.put(SUCCESS, metrics.successes.sum());
+            for (Map.Entry<Class<? extends Throwable>, LongAdder> failure : metrics.failures.entrySet()) {
+                counts.merge(failure.getKey().getSimpleName(), failure.getValue().sum(), Long::sum);
+            }
+            outcomes.put(entry.getKey(), Collections.unmodifiableMap(counts));
+        }
+        long[] attempts = new long[MAX_NOTIFICATION_ATTEMPTS];
+        for (int i = 0; i < attempts.length; i++) {
+            attempts[i] = deliveredOnAttempt.get(i);
+        }
+        return new Snapshot(latencies, outcomes, attempts, undelivered.sum());
+    }
+
+    /**
+     * The counters of one operation.
+     */
+    private static final class OperationMetrics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder successes = new LongAdder();
+        // Only a handful of exception types are ever thrown, so lookups almost always hit.
+        final ConcurrentHashMap<Class<? extends Throwable>, LongAdder> failures = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * An immutable copy of a library's metrics.
+     */
+    public static final class Snapshot {
+
+        private final Map<Operation, LatencyHistogram.Snapshot> latencies;
+        private final Map<Operation, Map<String, Long>> outcomes;
+        private final long[] deliveredOnAttempt;
+        private final long undelivered;
+
+        Snapshot(Map<Operation, LatencyHistogram.Snapshot> latencies, Map<Operation, Map<String, Long>> outcomes,
+                 long[] deliveredOnAttempt, long undelivered) {
+            this.latencies = latencies;
+            this.outcomes = outcomes;
+            this.deliveredOnAttempt = deliveredOnAttempt;
+            this.undelivered = undelivered;
+        }
+
+        /**
+         * Retrieves the latencies of an operation, successful or not.
+         *
+         * @param operation The operation.
+         * @return The latency histogram, in nanoseconds.
+         */
+        public LatencyHistogram.Snapshot getLatency(Operation operation) {
+            return latencies.get(operation);
+        }
+
+        /**
+         * Retrieves how the calls of an operation ended.
+         *
+         * @param operation The operation.
+         * @return The number of calls by outcome: {@link #SUCCESS}, or the simple name of the exception thrown.
+         */
+        public Map<String, Long> getOutcomes(Operation operation) {
+            return outcomes.get(operation);
+        }
+
+        /**
+         * Counts the calls of an operation that ended with an outcome.
+         *
+         * @param operation The operation.
+         * @param outcome   {@link #SUCCESS}, or the simple name of an exception.
+         * @return The number of calls.
+         */
+        public long getOutcomeCount(Operation operation, String outcome) {
+            Long count = outcomes.get(operation).get(outcome);
+            return count == null ? 0 : count;
+        }
+
+        /**
+         * Counts the notifications delivered on a given attempt.
+         *
+         * @param attempt The attempt, between 1 and {@link #MAX_NOTIFICATION_ATTEMPTS}.
+         * @return The number of notifications that attempt delivered.
+         */
+        public long getDeliveredOnAttempt(int attempt) {
+            if (attempt < 1 || attempt > MAX_NOTIFICATION_ATTEMPTS) {
+                throw new IllegalArgumentException("Invalid attempt.");
+            }
+            return deliveredOnAttempt[attempt - 1];
+        }
+
+        /**
+         * Counts the notifications given up after every attempt failed.
+         *
+         * @return The number of undelivered notifications.
+         */
+        public long getUndelivered() {
+            return undelivered;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ResultCode;
+import ac.il.bgu.qa.User;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Provides a non-blocking interface for services responsible for managing the database of books and users.
+ * Every call returns at once with a future of its result, so independent calls can be in flight
+ * together and the flow that depends on them can be composed without waiting on a thread.
+ * Failures complete the future exceptionally instead of being thrown.
+ *
+ * @see DatabaseService
+ */
+public interface AsyncDatabaseService {
+
+    /**
+     * Fetches a book from the database using its ISBN.
+     *
+     * @param ISBN The International Standard Book Number.
+     * @return A future of the book with the given ISBN, or of null if the book does not exist in the database.
+     */
+    CompletableFuture<Book> getBookByISBN(String ISBN);
+
+    /**
+     * Fetches a user from the database using their ID.
+     *
+     * @param userId The unique identifier for the user.
+     * @return A future of the user with the given ID, or of null if the user is not registered in the database.
+     */
+    CompletableFuture<User> getUserById(String userId);
+
+    /**
+     * Borrows a book for a user if the book exists, the user is registered and the book is not borrowed yet.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be borrowed.
+     * @param userId The unique identifier for the user borrowing the book.
+     * @return A future of the result, as described by {@link DatabaseService#tryBorrow(String, String)}.
+     */
+    CompletableFuture<ResultCode> tryBorrow(String ISBN, String userId);
+
+    /**
+     * Returns a book if it exists and is currently borrowed.
+     *
+     * @param ISBN The International Standard Book Number of the book to be returned.
+     * @return A future of the result, as described by {@link DatabaseService#tryReturn(String)}.
+     */
+    CompletableFuture<ResultCode> tryReturn(String ISBN);
+}
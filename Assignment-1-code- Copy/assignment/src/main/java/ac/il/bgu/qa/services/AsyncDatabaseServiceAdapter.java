@@ -0,0 +1,72 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ResultCode;
+import ac.il.bgu.qa.User;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Exposes a synchronous database service through the asynchronous interface.
+ * Every call runs on the given executor, so two calls issued one after the other are in flight together.
+ * The calls still block a thread of the executor while they run; a database with a native
+ * asynchronous client should implement {@link AsyncDatabaseService} directly instead.
+ */
+public class AsyncDatabaseServiceAdapter implements AsyncDatabaseService {
+
+    // The database service the calls are made to.
+    private final DatabaseService delegate;
+
+    // Executor the blocking calls run on.
+    private final Executor executor;
+
+    /**
+     * Constructs a new AsyncDatabaseServiceAdapter object.
+     *
+     * @param delegate The database service the calls are made to.
+     * @param executor The executor the blocking calls run on.
+     */
+    public AsyncDatabaseServiceAdapter(DatabaseService delegate, Executor executor) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        } else if (executor == null) {
+            throw new IllegalArgumentException("Invalid executor.");
+        }
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Book> getBookByISBN(String ISBN) {
+        return call(() -> delegate.getBookByISBN(ISBN));
+    }
+
+    @Override
+    public CompletableFuture<User> getUserById(String userId) {
+        return call(() -> delegate.getUserById(userId));
+    }
+
+    @Override
+    public CompletableFuture<ResultCode> tryBorrow(String ISBN, String userId) {
+        return call(() -> delegate.tryBorrow(ISBN, userId));
+    }
+
+    @Override
+    public CompletableFuture<ResultCode> tryReturn(String ISBN) {
+        return call(() -> delegate.tryReturn(ISBN));
+    }
+
+    private <T> CompletableFuture<T> call(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, executor);
+        } catch (RejectedExecutionException e) {
+            // A saturated or shut down executor is reported through the future, like any other failure.
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ResultCode;
+import ac.il.bgu.qa.User;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A database service that coalesces concurrent single-key reads into batched reads of another
+ * database service. The first book or user lookup to arrive opens a batch and waits up to the
+ * batching window for more lookups to join it, or until the batch holds the maximum number of keys.
+ * It then reads every distinct key of the batch with one {@link DatabaseService#getBooksByISBN(Collection)}
+ * or {@link DatabaseService#getUsersByIds(Collection)} call and hands each waiting caller its result.
+ * Lookups arriving meanwhile open the next batch. Writes and batched reads are passed through as is.
+ */
+public class BatchingDatabaseService implements DatabaseService {
+
+    // The database service the data is read from and written to.
+    private final DatabaseService delegate;
+
+    private final Loader<Book> books;
+
+    private final Loader<User> users;
+
+    /**
+     * Constructs a new BatchingDatabaseService object.
+     *
+     * @param delegate     The database service the data is read from and written to.
+     * @param window       How long the first lookup of a batch waits for others to join it.
+     * @param unit         The unit of the window.
+     * @param maxBatchSize The number of keys that closes a batch before the window ends.
+     */
+    public BatchingDatabaseService(DatabaseService delegate, long window, TimeUnit unit, int maxBatchSize) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        } else if (window < 0 || unit == null) {
+            throw new IllegalArgumentException("Invalid batching window.");
+        } else if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximum batch size.");
+        }
+        this.delegate = delegate;
+        this.books = new Loader<>(delegate::getBooksByISBN, unit.toNanos(window), maxBatchSize);
+        this.users = new Loader<>(delegate::getUsersByIds, unit.toNanos(window), maxBatchSize);
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        delegate.addBook(ISBN, book);
+    }
+
+    @Override
+    public void addBooks(Map<String, Book> toAdd) {
+        delegate.addBooks(toAdd);
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        delegate.registerUser(id, user);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return books.load(ISBN);
+    }
+
+    @Override
+    public void forEachBook(BiConsumer<String, Book> action) {
+        delegate.forEachBook(action);
+    }
+
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        return delegate.getBooksByISBN(ISBNs);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return users.load(userId);
+    }
+
+    @Override
+    public Map<String, User> getUsersByIds(Collection<String> userIds) {
+        return delegate.getUsersByIds(userIds);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        delegate.borrowBook(ISBN, userId);
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        delegate.returnBook(ISBN);
+    }
+
+    @Override
+    public boolean addBookIfAbsent(String ISBN, Book book) {
+        return delegate.addBookIfAbsent(ISBN, book);
+    }
+
+    @Override
+    public Set<String> addBooksIfAbsent(Map<String, Book> toAdd) {
+        return delegate.addBooksIfAbsent(toAdd);
+    }
+
+    @Override
+    public boolean registerUserIfAbsent(String id, User user) {
+        return delegate.registerUserIfAbsent(id, user);
+    }
+
+    @Override
+    public boolean unregisterUser(String id, User user) {
+        return delegate.unregisterUser(id, user);
+    }
+
+    @Override
+    public ResultCode tryBorrow(String ISBN, String userId) {
+        return delegate.tryBorrow(ISBN, userId);
+    }
+
+    @Override
+    public ResultCode tryReturn(String ISBN) {
+        return delegate.tryReturn(ISBN);
+    }
+
+    @Override
+    public String getBorrowerId(String ISBN) {
+        return delegate.getBorrowerId(ISBN);
+    }
+
+    @Override
+    public List<String> getBorrowedISBNs(String userId) {
+        return delegate.getBorrowedISBNs(userId);
+    }
+
+    /**
+     * Counts the single book lookups made through this service.
+     *
+     * @return The number of book lookups.
+     */
+    public long getBookLoadCount() {
+        return books.loads.sum();
+    }
+
+    /**
+     * Counts the batched book reads sent to the underlying service.
+     *
+     * @return The number of book batches.
+     */
+    public long getBookBatchCount() {
+        return books.batches.sum();
+    }
+
+    /**
+     * Counts the single user lookups made through this service.
+     *
+     * @return The number of user lookups.
+     */
+    public long getUserLoadCount() {
+        return users.loads.sum();
+    }
+
+    /**
+     * Counts the batched user reads sent to the underlying service.
+     *
+     * @return The number of user batches.
+     */
+    public long getUserBatchCount() {
+        return users.batches.sum();
+    }
+
+    /**
+     * Coalesces the lookups of one kind of record.
+     */
+    private static final class Loader<V> {
+
+        private final Function<Collection<String>, Map<String, V>> multiGet;
+        private final long windowNanos;
+        private final int maxBatchSize;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        // Signalled when the open batch reaches the maximum size.
+        private final Condition full = lock.newCondition();
+        // The batch new lookups join, or null if the next lookup opens one.
+        private Batch<V> open;
+
+        final LongAdder loads = new LongAdder();
+        final LongAdder batches = new LongAdder();
+
+        Loader(Function<Collection<String>, Map<String, V>> multiGet, long windowNanos, int maxBatchSize) {
+            this.multiGet = multiGet;
+            this.windowNanos = windowNanos;
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        V load(String key) {
+            loads.increment();
+            Batch<V> batch;
+            boolean leader = false;
+            lock.lock();
+            try {
+                if (open == null) {
+                    open = new Batch<>();
+                    leader = true;
+                }
+                batch = open;
+                batch.keys.add(key);
+                if (batch.keys.size() >= maxBatchSize) {
+                    open = null;
+                    full.signal();
+                }
+
+                // The lookup that opened the batch waits for others to join, then closes it.
+                if (leader) {
+                    long remaining = windowNanos;
+                    while (open == batch && remaining > 0) {
+                        try {
+                            remaining = full.awaitNanos(remaining);
+                        } catch (InterruptedException e) {
+                            // Stop waiting and read what was gathered so far; the caller sees the interrupt later.
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                    if (open == batch) {
+                        open = null;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            // The read runs outside the lock, so the next batch fills up while this one is in flight.
+            if (leader) {
+                batches.increment();
+                try {
+                    batch.result.complete(multiGet.apply(batch.keys));
+                } catch (Throwable e) {
+                    // Fail the whole batch, so no caller waits for a result that never comes.
+                    batch.result.completeExceptionally(e);
+                }
+            }
+            try {
+                return batch.result.join().get(key);
+            } catch (CompletionException e) {
+                // Every caller of the batch sees the delegate's own exception.
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * The distinct keys of one batch and, once read, their records.
+     */
+    private static final class Batch<V> {
+        // Only changed under the loader's lock, and only read by the leader after the batch closed.
+        final Set<String> keys = new LinkedHashSet<>();
+        final CompletableFuture<Map<String, V>> result = new CompletableFuture<>();
+    }
+}
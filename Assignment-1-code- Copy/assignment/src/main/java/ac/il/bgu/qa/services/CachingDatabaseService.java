@@ -0,0 +1,357 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ResultCode;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.util.Identifiers;
+import ac.il.bgu.qa.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * A database service that caches the books and users read from another database service.
+ * Both caches are bounded and, when full, evict the least recently used entry of the segment
+ * the new entry falls into, so lookups of different books don't contend on one lock. Every write that
+ * goes through this service updates or invalidates the affected entry, so the borrowing state of
+ * a cached book is never older than the last borrow or return made through it.
+ */
+public class CachingDatabaseService implements DatabaseService {
+
+    // Number of lock stripes guarding the cache entries against racing reads and writes.
+    private static final int STRIPES = 256;
+
+    // The database service the data is read from and written to.
+    private final DatabaseService delegate;
+
+    // Cached books keyed by the numeric value of their ISBN.
+    private final LruCache<Book> books;
+
+    // Cached users keyed by the numeric value of their Id.
+    private final LruCache<User> users;
+
+    // A read only populates the cache if no write to the same stripe happened while it was
+    // in flight; otherwise it could put back an entry a concurrent write just invalidated.
+    private final Object[] stripeLocks = new Object[STRIPES];
+    private final long[] stripeVersions = new long[STRIPES];
+
+    private final LongAdder bookHits = new LongAdder();
+    private final LongAdder bookMisses = new LongAdder();
+    private final LongAdder userHits = new LongAdder();
+    private final LongAdder userMisses = new LongAdder();
+
+    /**
+     * Constructs a new CachingDatabaseService object.
+     *
+     * @param delegate The database service the data is read from and written to.
+     * @param maxBooks The maximum number of cached books.
+     * @param maxUsers The maximum number of cached users.
+     */
+    public CachingDatabaseService(DatabaseService delegate, int maxBooks, int maxUsers) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        }
+        this.delegate = delegate;
+        this.books = new LruCache<>(maxBooks);
+        this.users = new LruCache<>(maxUsers);
+        for (int i = 0; i < STRIPES; i++) {
+            stripeLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        delegate.addBook(ISBN, book);
+        long key = Identifiers.isbnKey(ISBN);
+        if (key != Identifiers.INVALID) {
+            update(books, bookStripe(key), key, book);
+        }
+    }
+
+    @Override
+    public void addBooks(Map<String, Book> toAdd) {
+        delegate.addBooks(toAdd);
+        for (Map.Entry<String, Book> entry : toAdd.entrySet()) {
+            long key = Identifiers.isbnKey(entry.getKey());
+            if (key != Identifiers.INVALID) {
+                update(books, bookStripe(key), key, entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        delegate.registerUser(id, user);
+        long key = Identifiers.parseUserId(id);
+        if (key != Identifiers.INVALID) {
+            update(users, userStripe(key), key, user);
+        }
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = Identifiers.isbnKey(ISBN);
+        if (key == Identifiers.INVALID) {
+            return delegate.getBookByISBN(ISBN);
+        }
+
+        Book cached = books.get(key);
+        if (cached != null) {
+            bookHits.increment();
+            return cached;
+        }
+        bookMisses.increment();
+
+        int stripe = bookStripe(key);
+        long version = version(stripe);
+        Book book = delegate.getBookByISBN(ISBN);
+        if (book != null) {
+            populate(books, stripe, version, key, book);
+        }
+        return book;
+    }
+
+    @Override
+    public void forEachBook(BiConsumer<String, Book> action) {
+        delegate.forEachBook(action);
+    }
+
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        Map<String, Book> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String ISBN : ISBNs) {
+            long key = Identifiers.isbnKey(ISBN);
+            Book cached = key == Identifiers.INVALID ? null : books.get(key);
+            if (cached != null) {
+                bookHits.increment();
+                found.put(ISBN, cached);
+            } else {
+                bookMisses.increment();
+                missing.add(ISBN);
+            }
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        // Remember the stripe versions before the batched read, so racing writes are detected.
+        long[] versions = new long[missing.size()];
+        for (int i = 0; i < versions.length; i++) {
+            long key = Identifiers.isbnKey(missing.get(i));
+            versions[i] = key == Identifiers.INVALID ? 0 : version(bookStripe(key));
+        }
+        Map<String, Book> loaded = delegate.getBooksByISBN(missing);
+        for (int i = 0; i < versions.length; i++) {
+            String ISBN = missing.get(i);
+            Book book = loaded.get(ISBN);
+            long key = Identifiers.isbnKey(ISBN);
+            if (book != null && key != Identifiers.INVALID) {
+                populate(books, bookStripe(key), versions[i], key, book);
+            }
+        }
+        found.putAll(loaded);
+        return found;
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = Identifiers.parseUserId(userId);
+        if (key == Identifiers.INVALID) {
+            return delegate.getUserById(userId);
+        }
+
+        User cached = users.get(key);
+        if (cached != null) {
+            userHits.increment();
+            return cached;
+        }
+        userMisses.increment();
+
+        int stripe = userStripe(key);
+        long version = version(stripe);
+        User user = delegate.getUserById(userId);
+        if (user != null) {
+            populate(users, stripe, version, key, user);
+        }
+        return user;
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        try {
+            delegate.borrowBook(ISBN, userId);
+        } finally {
+            invalidateBook(ISBN);
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        try {
+            delegate.returnBook(ISBN);
+        } finally {
+            invalidateBook(ISBN);
+        }
+    }
+
+    @Override
+    public boolean addBookIfAbsent(String ISBN, Book book) {
+        boolean added = delegate.addBookIfAbsent(ISBN, book);
+        long key = Identifiers.isbnKey(ISBN);
+        if (added && key != Identifiers.INVALID) {
+            update(books, bookStripe(key), key, book);
+        }
+        return added;
+    }
+
+    @Override
+    public Set<String> addBooksIfAbsent(Map<String, Book> toAdd) {
+        Set<String> added = delegate.addBooksIfAbsent(toAdd);
+        for (String ISBN : added) {
+            long key = Identifiers.isbnKey(ISBN);
+            if (key != Identifiers.INVALID) {
+                update(books, bookStripe(key), key, toAdd.get(ISBN));
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public boolean registerUserIfAbsent(String id, User user) {
+        boolean registered = delegate.registerUserIfAbsent(id, user);
+        long key = Identifiers.parseUserId(id);
+        if (registered && key != Identifiers.INVALID) {
+            update(users, userStripe(key), key, user);
+        }
+        return registered;
+    }
+
+    @Override
+    public boolean unregisterUser(String id, User user) {
+        boolean removed = delegate.unregisterUser(id, user);
+        long key = Identifiers.parseUserId(id);
+        if (removed && key != Identifiers.INVALID) {
+            int stripe = userStripe(key);
+            synchronized (stripeLocks[stripe]) {
+                stripeVersions[stripe]++;
+                users.remove(key);
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public ResultCode tryBorrow(String ISBN, String userId) {
+        // Forwarded as is, so the delegate keeps it a single round trip.
+        try {
+            return delegate.tryBorrow(ISBN, userId);
+        } finally {
+            invalidateBook(ISBN);
+        }
+    }
+
+    @Override
+    public ResultCode tryReturn(String ISBN) {
+        try {
+            return delegate.tryReturn(ISBN);
+        } finally {
+            invalidateBook(ISBN);
+        }
+    }
+
+    @Override
+    public String getBorrowerId(String ISBN) {
+        // Not cached: a loan changes far more often than a book or a user.
+        return delegate.getBorrowerId(ISBN);
+    }
+
+    @Override
+    public List<String> getBorrowedISBNs(String userId) {
+        return delegate.getBorrowedISBNs(userId);
+    }
+
+    /**
+     * Counts the book reads answered from the cache.
+     *
+     * @return The number of book cache hits.
+     */
+    public long getBookHitCount() {
+        return bookHits.sum();
+    }
+
+    /**
+     * Counts the book reads that had to go to the underlying database.
+     *
+     * @return The number of book cache misses.
+     */
+    public long getBookMissCount() {
+        return bookMisses.sum();
+    }
+
+    /**
+     * Counts the user reads answered from the cache.
+     *
+     * @return The number of user cache hits.
+     */
+    public long getUserHitCount() {
+        return userHits.sum();
+    }
+
+    /**
+     * Counts the user reads that had to go to the underlying database.
+     *
+     * @return The number of user cache misses.
+     */
+    public long getUserMissCount() {
+        return userMisses.sum();
+    }
+
+    private void invalidateBook(String ISBN) {
+        long key = Identifiers.isbnKey(ISBN);
+        if (key == Identifiers.INVALID) {
+            return;
+        }
+        int stripe = bookStripe(key);
+        synchronized (stripeLocks[stripe]) {
+            stripeVersions[stripe]++;
+            books.remove(key);
+        }
+    }
+
+    private <V> void update(LruCache<V> cache, int stripe, long key, V value) {
+        synchronized (stripeLocks[stripe]) {
+            stripeVersions[stripe]++;
+            cache.put(key, value);
+        }
+    }
+
+    private <V> void populate(LruCache<V> cache, int stripe, long version, long key, V value) {
+        synchronized (stripeLocks[stripe]) {
+            if (stripeVersions[stripe] == version) {
+                cache.put(key, value);
+            }
+        }
+    }
+
+    private long version(int stripe) {
+        synchronized (stripeLocks[stripe]) {
+            return stripeVersions[stripe];
+        }
+    }
+
+    // Books and users use separate halves of the stripes, since their keys may collide.
+    private static int bookStripe(long key) {
+        return (int) (key % (STRIPES / 2));
+    }
+
+    private static int userStripe(long key) {
+        return STRIPES / 2 + (int) (key % (STRIPES / 2));
+    }
+}
@@ -0,0 +1,218 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.util.Identifiers;
+import ac.il.bgu.qa.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A review service that caches the reviews fetched from another review service.
+ * Entries are fresh for a fixed time to live and the cache holds a bounded number of books,
+ * evicting the least recently used one when full. Concurrent misses for the same book share
+ * a single upstream fetch, and when the upstream fails, an expired entry is served instead.
+ */
+public class CachingReviewService implements ReviewService {
+
+    // The review service the reviews are fetched from.
+    private final ReviewService delegate;
+
+    // Cached reviews keyed by the numeric value of the book's ISBN.
+    private final LruCache<Entry> entries;
+
+    // Fetches currently in flight, so concurrent misses for a book wait for the same result.
+    private final ConcurrentHashMap<Long, CompletableFuture<List<String>>> loading = new ConcurrentHashMap<>();
+
+    // How long an entry is served without asking the upstream again, in nanoseconds.
+    private final long ttlNanos;
+
+    // Source of the current time, in nanoseconds.
+    private final LongSupplier ticker;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+
+    /**
+     * Constructs a new CachingReviewService object.
+     *
+     * @param delegate   The review service the reviews are fetched from.
+     * @param maxEntries The maximum number of books whose reviews are cached.
+     * @param ttl        How long fetched reviews are served before they are fetched again.
+     * @param unit       The unit of the time to live.
+     */
+    public CachingReviewService(ReviewService delegate, int maxEntries, long ttl, TimeUnit unit) {
+        this(delegate, maxEntries, ttl, unit, System::nanoTime);
+    }
+
+    // Constructor with an explicit time source, for tests.
+    CachingReviewService(ReviewService delegate, int maxEntries, long ttl, TimeUnit unit, LongSupplier ticker) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        } else if (ttl <= 0) {
+            throw new IllegalArgumentException("Invalid time to live.");
+        }
+        this.delegate = delegate;
+        this.entries = new LruCache<>(maxEntries);
+        this.ttlNanos = unit.toNanos(ttl);
+        this.ticker = ticker;
+    }
+
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        long key = Identifiers.isbnKey(ISBN);
+        if (key == Identifiers.INVALID) {
+            // Nothing sensible to cache under; let the upstream decide what to do with it.
+            return delegate.getReviewsForBook(ISBN);
+        }
+
+        Entry cached = entries.get(key);
+        if (cached != null && ticker.getAsLong() - cached.fetchedAt < ttlNanos) {
+            hits.increment();
+            return cached.reviews;
+        }
+        misses.increment();
+
+        // Only the first caller of a missing book fetches it; everyone else waits for that fetch.
+        CompletableFuture<List<String>> fetch = new CompletableFuture<>();
+        CompletableFuture<List<String>> inFlight = loading.putIfAbsent(key, fetch);
+        if (inFlight != null) {
+            return await(inFlight, cached);
+        }
+
+        try {
+            // A fetch that finished since the lookup above installed its entry before leaving loading,
+            // so the entry is found here and the fetch isn't repeated.
+            Entry installed = entries.get(key);
+            if (installed != null && ticker.getAsLong() - installed.fetchedAt < ttlNanos) {
+                fetch.complete(installed.reviews);
+                return installed.reviews;
+            }
+
+            List<String> reviews = delegate.getReviewsForBook(ISBN);
+            if (reviews != null) {
+                reviews = Collections.unmodifiableList(new ArrayList<>(reviews));
+            }
+            Entry entry = new Entry(reviews, ticker.getAsLong());
+            // Install the entry and leave loading in one step, so a later caller always finds one of them.
+            loading.compute(key, (k, current) -> {
+                entries.put(k, entry);
+                return current == fetch ? null : current;
+            });
+            fetch.complete(reviews);
+            return reviews;
+        } catch (ReviewException e) {
+            fetch.completeExceptionally(e);
+            if (cached != null) {
+                // The upstream is failing; stale reviews are better than none.
+                staleHits.increment();
+                return cached.reviews;
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, fetch);
+        }
+    }
+
+    /**
+     * Waits for a fetch started by another caller.
+     *
+     * @param inFlight The fetch to wait for.
+     * @param cached   The expired entry of the book, or null if there is none.
+     * @return The fetched reviews, or the expired ones if the fetch failed with a review exception.
+     */
+    private List<String> await(CompletableFuture<List<String>> inFlight, Entry cached) {
+        try {
+            return inFlight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ReviewException && cached != null) {
+                staleHits.increment();
+                return cached.reviews;
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the upstream review service. Cached reviews are kept.
+     */
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    /**
+     * Removes the cached reviews of a book, so the next request fetches them again.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     */
+    public void invalidate(String ISBN) {
+        long key = Identifiers.isbnKey(ISBN);
+        if (key != Identifiers.INVALID) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Counts the requests answered with fresh cached reviews.
+     *
+     * @return The number of cache hits.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Counts the requests that found no fresh cached reviews.
+     *
+     * @return The number of cache misses.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Counts the requests answered with expired reviews because the upstream failed.
+     *
+     * @return The number of stale hits.
+     */
+    public long getStaleHitCount() {
+        return staleHits.sum();
+    }
+
+    /**
+     * Counts the entries evicted to respect the size bound.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+        return entries.evictions();
+    }
+
+    /**
+     * The reviews of a book and the time they were fetched.
+     */
+    private static final class Entry {
+        final List<String> reviews;
+        final long fetchedAt;
+
+        Entry(List<String> reviews, long fetchedAt) {
+            this.reviews = reviews;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package ac.il.bgu.qa.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A circuit breaker that stops calls to a failing backend.
+ * While closed, the outcomes of the last calls are tracked in a sliding window; once the share of
+ * failures reaches the threshold, the breaker opens and rejects every call without touching the
+ * backend. After the open duration it lets a few probe calls through (half-open): if they all
+ * succeed the breaker closes again, and if any fails it opens for another period.
+ * Every state change starts a new generation, and a permit remembers the generation it was
+ * issued in, so a call that completes after the breaker moved on is not counted against the new state.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The states of the circuit breaker.
+     */
+    public enum State {
+        // Calls go through and their outcomes are recorded.
+        CLOSED,
+        // Calls are rejected immediately.
+        OPEN,
+        // A limited number of probe calls go through to test the backend.
+        HALF_OPEN
+    }
+
+    // Share of failed calls in the window, between 0 and 1, at which the breaker opens.
+    private final double failureRateThreshold;
+
+    // Minimum number of recorded calls before the failure rate is acted upon.
+    private final int minimumCalls;
+
+    // How long the breaker stays open before probing the backend, in nanoseconds.
+    private final long openDurationNanos;
+
+    // Number of probe calls that must succeed in the half-open state to close the breaker.
+    private final int halfOpenProbes;
+
+    // Source of the current time, in nanoseconds.
+    private final LongSupplier ticker;
+
+    // Returned instead of a permit when a call must fail fast.
+    public static final long NO_PERMISSION = -1;
+
+    // The current state. Read without locking so rejections cost no more than a volatile read.
+    private volatile State state = State.CLOSED;
+
+    // Incremented on every state change; written under this, read without locking.
+    private volatile long generation;
+
+    // The time the breaker last opened.
+    private volatile long openedAt;
+
+    // Ring buffer of the outcomes of the last calls, true for a failure; guarded by this.
+    private final boolean[] window;
+    private int windowNext;
+    private int windowSize;
+    private int windowFailures;
+
+    // Probe calls admitted and succeeded in the current half-open period; guarded by this.
+    private int probesAdmitted;
+    private int probesSucceeded;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timesOpened = new LongAdder();
+
+    /**
+     * Constructs a new CircuitBreaker object.
+     *
+     * @param failureRateThreshold The share of failed calls, between 0 and 1, at which the breaker opens.
+     * @param windowSize           The number of most recent calls the failure rate is computed over.
+     * @param minimumCalls         The minimum number of calls in the window before the breaker may open.
+     * @param openDuration         How long the breaker stays open before probing the backend.
+     * @param unit                 The unit of the open duration.
+     * @param halfOpenProbes       The number of probe calls that must succeed to close the breaker.
+     */
+    public CircuitBreaker(double failureRateThreshold, int windowSize, int minimumCalls,
+                          long openDuration, TimeUnit unit, int halfOpenProbes) {
+        this(failureRateThreshold, windowSize, minimumCalls, openDuration, unit, halfOpenProbes, System::nanoTime);
+    }
+
+    // Constructor with an explicit time source, for tests.
+    CircuitBreaker(double failureRateThreshold, int windowSize, int minimumCalls,
+                   long openDuration, TimeUnit unit, int halfOpenProbes, LongSupplier ticker) {
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+            throw new IllegalArgumentException("Invalid failure rate threshold.");
+        } else if (windowSize <= 0) {
+            throw new IllegalArgumentException("Invalid window size.");
+        } else if (minimumCalls <= 0 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("Invalid minimum number of calls.");
+        } else if (openDuration < 0) {
+            throw new IllegalArgumentException("Invalid open duration.");
+        } else if (halfOpenProbes <= 0) {
+            throw new IllegalArgumentException("Invalid number of probes.");
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        this.window = new boolean[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.openDurationNanos = unit.toNanos(openDuration);
+        this.halfOpenProbes = halfOpenProbes;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Asks for permission to call the backend.
+     * Every permitted call must be followed by {@link #onSuccess(long)} or {@link #onFailure(long)}
+     * with the returned permit, whatever way the call ends.
+     *
+     * @return The permit of the call, or {@link #NO_PERMISSION} if it must fail fast.
+     */
+    public long acquirePermission() {
+        // Read the generation before the state, so a state change in between makes the permit stale rather than wrong.
+        long current = generation;
+        State currentState = state;
+        if (currentState == State.CLOSED) {
+            return current;
+        }
+        if (currentState == State.OPEN && ticker.getAsLong() - openedAt < openDurationNanos) {
+            rejected.increment();
+            return NO_PERMISSION;
+        }
+
+        synchronized (this) {
+            if (state == State.OPEN && ticker.getAsLong() - openedAt >= openDurationNanos) {
+                state = State.HALF_OPEN;
+                generation++;
+                probesAdmitted = 0;
+                probesSucceeded = 0;
+            }
+            if (state == State.CLOSED) {
+                return generation;
+            }
+            if (state == State.HALF_OPEN && probesAdmitted < halfOpenProbes) {
+                probesAdmitted++;
+                return generation;
+            }
+        }
+        rejected.increment();
+        return NO_PERMISSION;
+    }
+
+    /**
+     * Asks for permission to call the backend, without tracking the call's generation.
+     *
+     * @return true if the call may proceed, false if it must fail fast.
+     * @see #acquirePermission()
+     */
+    public boolean tryAcquirePermission() {
+        return acquirePermission() != NO_PERMISSION;
+    }
+
+    /**
+     * Records a permitted call that succeeded, unless the breaker changed state since the permit was issued.
+     *
+     * @param permit The permit the call was admitted with.
+     */
+    public synchronized void onSuccess(long permit) {
+        if (permit == generation) {
+            onSuccess();
+        }
+    }
+
+    /**
+     * Records a permitted call that failed, unless the breaker changed state since the permit was issued.
+     *
+     * @param permit The permit the call was admitted with.
+     */
+    public synchronized void onFailure(long permit) {
+        if (permit == generation) {
+            onFailure();
+        }
+    }
+
+    /**
+     * Records a call that succeeded against the current state.
+     */
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++probesSucceeded >= halfOpenProbes) {
+                close();
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    /**
+     * Records a call that failed against the current state.
+     */
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (windowSize >= minimumCalls && windowFailures >= failureRateThreshold * windowSize) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the current state of the breaker.
+     *
+     * @return The current state.
+     */
+    public State getState() {
+        State current = state;
+        if (current == State.OPEN && ticker.getAsLong() - openedAt >= openDurationNanos) {
+            // The next call will be admitted as a probe.
+            return State.HALF_OPEN;
+        }
+        return current;
+    }
+
+    /**
+     * Computes the share of failed calls in the current window.
+     *
+     * @return The failure rate between 0 and 1, or 0 if no calls were recorded.
+     */
+    public synchronized double getFailureRate() {
+        return windowSize == 0 ? 0 : (double) windowFailures / windowSize;
+    }
+
+    /**
+     * Counts the calls rejected without reaching the backend.
+     *
+     * @return The number of rejected calls.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Counts how many times the breaker opened.
+     *
+     * @return The number of transitions to the open state.
+     */
+    public long getOpenedCount() {
+        return timesOpened.sum();
+    }
+
+    private void record(boolean failure) {
+        if (windowSize == window.length) {
+            // The window is full; the oldest outcome falls out of it.
+            if (window[windowNext]) {
+                windowFailures--;
+            }
+        } else {
+            windowSize++;
+        }
+        window[windowNext] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowNext = (windowNext + 1) % window.length;
+    }
+
+    private void open() {
+        openedAt = ticker.getAsLong();
+        state = State.OPEN;
+        generation++;
+        timesOpened.increment();
+    }
+
+    private void close() {
+        windowNext = 0;
+        windowSize = 0;
+        windowFailures = 0;
+        state = State.CLOSED;
+        generation++;
+    }
+}
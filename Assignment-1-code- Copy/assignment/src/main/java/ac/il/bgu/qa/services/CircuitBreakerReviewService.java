@@ -0,0 +1,73 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.CircuitOpenException;
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.List;
+
+/**
+ * A review service that guards another review service with a circuit breaker.
+ * While the breaker is open, fetches fail immediately with a {@link CircuitOpenException}
+ * instead of waiting for the failing backend. Pooled sessions of the same backend should
+ * share one breaker.
+ */
+public class CircuitBreakerReviewService implements ReviewService {
+
+    // The review service the reviews are fetched from.
+    private final ReviewService delegate;
+
+    // The breaker deciding whether the review service is called at all.
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * Constructs a new CircuitBreakerReviewService object.
+     *
+     * @param delegate       The review service the reviews are fetched from.
+     * @param circuitBreaker The breaker guarding the review service.
+     */
+    public CircuitBreakerReviewService(ReviewService delegate, CircuitBreaker circuitBreaker) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        } else if (circuitBreaker == null) {
+            throw new IllegalArgumentException("Invalid circuit breaker.");
+        }
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        long permit = circuitBreaker.acquirePermission();
+        if (permit == CircuitBreaker.NO_PERMISSION) {
+            throw new CircuitOpenException("Review service circuit is open!");
+        }
+
+        // Record the outcome however the call ends, errors included, so a half-open probe is never leaked.
+        boolean succeeded = false;
+        try {
+            List<String> reviews = delegate.getReviewsForBook(ISBN);
+            succeeded = true;
+            return reviews;
+        } finally {
+            if (succeeded) {
+                circuitBreaker.onSuccess(permit);
+            } else {
+                circuitBreaker.onFailure(permit);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    /**
+     * Retrieves the breaker guarding the review service, e.g. to report its state.
+     *
+     * @return The circuit breaker.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+}
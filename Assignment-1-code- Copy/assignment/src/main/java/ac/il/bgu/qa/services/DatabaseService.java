@@ -1,8 +1,17 @@
 package ac.il.bgu.qa.services;
 
 import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ResultCode;
 import ac.il.bgu.qa.User;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
 /**
  * Provides an interface for services responsible for managing the database of books and users.
  */
@@ -16,6 +25,19 @@ public interface DatabaseService {
      */
     void addBook(String ISBN, Book book);
 
+    /**
+     * Adds a batch of books to the database in a single write.
+     * The default implementation adds the books one by one; remote databases should override it
+     * with a single round trip.
+     *
+     * @param books The books to be added, keyed by their ISBN.
+     */
+    default void addBooks(Map<String, Book> books) {
+        for (Map.Entry<String, Book> entry : books.entrySet()) {
+            addBook(entry.getKey(), entry.getValue());
+        }
+    }
+
     /**
      * Registers a user with the database.
      *
@@ -32,6 +54,34 @@ public interface DatabaseService {
      */
     Book getBookByISBN(String ISBN);
 
+    /**
+     * Fetches a batch of books from the database in a single lookup.
+     * The default implementation fetches the books one by one; remote databases should override it
+     * with a single round trip.
+     *
+     * @param ISBNs The International Standard Book Numbers of the books.
+     * @return The books that exist in the database, keyed by the ISBN they were requested with.
+     */
+    default Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        Map<String, Book> books = new HashMap<>();
+        for (String ISBN : ISBNs) {
+            Book book = getBookByISBN(ISBN);
+            if (book != null) {
+                books.put(ISBN, book);
+            }
+        }
+        return books;
+    }
+
+    /**
+     * Passes every book stored in the database to an action, with the ISBN it can be fetched by.
+     * Lets a library index a catalog it didn't write itself, such as one restored from disk.
+     * Books written during the iteration may or may not be seen.
+     *
+     * @param action The action to perform on each ISBN and book.
+     */
+    void forEachBook(BiConsumer<String, Book> action);
+
     /**
      * Fetches a user from the database using their ID.
      *
@@ -40,6 +90,25 @@ public interface DatabaseService {
      */
     User getUserById(String userId);
 
+    /**
+     * Fetches a batch of users from the database in a single lookup.
+     * The default implementation fetches the users one by one; remote databases should override it
+     * with a single round trip.
+     *
+     * @param userIds The unique identifiers of the users.
+     * @return The users that are registered in the database, keyed by the Id they were requested with.
+     */
+    default Map<String, User> getUsersByIds(Collection<String> userIds) {
+        Map<String, User> users = new HashMap<>();
+        for (String userId : userIds) {
+            User user = getUserById(userId);
+            if (user != null) {
+                users.put(userId, user);
+            }
+        }
+        return users;
+    }
+
     /**
      * Borrows a book identified by its ISBN for a user identified by their userId.
      * This method should appropriately mark the book as borrowed and associate it with the user.
@@ -56,4 +125,141 @@ public interface DatabaseService {
      * @param ISBN The International Standard Book Number of the book to be returned.
      */
     void returnBook(String ISBN);
+
+    /**
+     * Fetches the Id of the user currently borrowing a book.
+     * Loans can't be derived from the other methods, so every database has to record them itself.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The borrower's Id, or null if the book is not borrowed.
+     */
+    String getBorrowerId(String ISBN);
+
+    /**
+     * Fetches the ISBNs of the books a user currently borrows.
+     *
+     * @param userId The unique identifier for the user.
+     * @return The ISBNs of the borrowed books, in the order they were borrowed.
+     */
+    List<String> getBorrowedISBNs(String userId);
+
+    /**
+     * Adds a book to the database unless a book with the same ISBN is already stored.
+     * The default implementation probes and then writes, in two calls that other writers may
+     * interleave with; databases should override it with a single atomic round trip.
+     *
+     * @param ISBN The International Standard Book Number identifying the book.
+     * @param book The book to be added.
+     * @return true if the book was added, false if the ISBN was already taken.
+     */
+    default boolean addBookIfAbsent(String ISBN, Book book) {
+        if (getBookByISBN(ISBN) != null) {
+            return false;
+        }
+        addBook(ISBN, book);
+        return true;
+    }
+
+    /**
+     * Adds a batch of books to the database, skipping every book whose ISBN is already stored.
+     * The default implementation adds the books one by one with {@link #addBookIfAbsent(String, Book)};
+     * remote databases should override it with a single atomic round trip.
+     *
+     * @param books The books to be added, keyed by their ISBN.
+     * @return The ISBNs of the books that were added, as given in the batch.
+     */
+    default Set<String> addBooksIfAbsent(Map<String, Book> books) {
+        Set<String> added = new HashSet<>();
+        for (Map.Entry<String, Book> entry : books.entrySet()) {
+            if (addBookIfAbsent(entry.getKey(), entry.getValue())) {
+                added.add(entry.getKey());
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Registers a user with the database unless a user with the same Id is already registered.
+     * The default implementation probes and then writes; databases should override it with a
+     * single atomic round trip.
+     *
+     * @param id   The unique identifier for the user.
+     * @param user The user to be registered.
+     * @return true if the user was registered, false if the Id was already taken.
+     */
+    default boolean registerUserIfAbsent(String id, User user) {
+        if (getUserById(id) != null) {
+            return false;
+        }
+        registerUser(id, user);
+        return true;
+    }
+
+    /**
+     * Removes a user, but only while the Id is still registered to that same user.
+     * A {@link ac.il.bgu.qa.ShardedLibrary} relies on it to roll back a registration that
+     * failed part way, so every database has to support it.
+     *
+     * @param id   The unique identifier for the user.
+     * @param user The user to be removed.
+     * @return true if the user was removed, false if the Id is registered to another user or to none.
+     */
+    boolean unregisterUser(String id, User user);
+
+    /**
+     * Borrows a book for a user if the book exists, the user is registered and the book is not
+     * borrowed yet. On success the book is marked as borrowed and associated with the user.
+     * The checks run in that order, and the first one that fails decides the result.
+     * The default implementation composes the lookups and {@link #borrowBook(String, String)},
+     * three calls in total; databases should override it with a single atomic round trip.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be borrowed.
+     * @param userId The unique identifier for the user borrowing the book.
+     * @return {@link ResultCode#SUCCESS}, {@link ResultCode#BOOK_NOT_FOUND},
+     *         {@link ResultCode#USER_NOT_REGISTERED} or {@link ResultCode#BOOK_ALREADY_BORROWED}.
+     */
+    default ResultCode tryBorrow(String ISBN, String userId) {
+        Book book = getBookByISBN(ISBN);
+        if (book == null) {
+            return ResultCode.BOOK_NOT_FOUND;
+        } else if (getUserById(userId) == null) {
+            return ResultCode.USER_NOT_REGISTERED;
+        } else if (book.isBorrowed() || !book.tryBorrow()) {
+            return ResultCode.BOOK_ALREADY_BORROWED;
+        }
+        // If the write is rejected, release the copy again so the book isn't left marked as borrowed.
+        try {
+            borrowBook(ISBN, userId);
+        } catch (RuntimeException e) {
+            book.tryReturn();
+            throw e;
+        }
+        return ResultCode.SUCCESS;
+    }
+
+    /**
+     * Returns a book if it exists and is currently borrowed. On success the book is marked as
+     * returned and its association with the borrower is removed.
+     * The default implementation composes the lookup and {@link #returnBook(String)}; databases
+     * should override it with a single atomic round trip.
+     *
+     * @param ISBN The International Standard Book Number of the book to be returned.
+     * @return {@link ResultCode#SUCCESS}, {@link ResultCode#BOOK_NOT_FOUND} or {@link ResultCode#BOOK_NOT_BORROWED}.
+     */
+    default ResultCode tryReturn(String ISBN) {
+        Book book = getBookByISBN(ISBN);
+        if (book == null) {
+            return ResultCode.BOOK_NOT_FOUND;
+        } else if (!book.isBorrowed() || !book.tryReturn()) {
+            return ResultCode.BOOK_NOT_BORROWED;
+        }
+        // If the write is rejected, the book is still on loan, so mark it as borrowed again.
+        try {
+            returnBook(ISBN);
+        } catch (RuntimeException e) {
+            book.tryBorrow();
+            throw e;
+        }
+        return ResultCode.SUCCESS;
+    }
 }
@@ -0,0 +1,223 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Writes the contents of an {@link InMemoryDatabaseService} to a compact binary file and loads them back.
+ * Restarting from a snapshot is much faster than registering every book and user again through the
+ * library: the file is memory-mapped, the maps are presized from the counts in its trailer, and the
+ * records go straight into them by their numeric keys without being validated again.
+ * <p>
+ * Writing copies one segment of each map at a time, so writers are never paused for the whole
+ * snapshot. The snapshot is therefore fuzzy: a write made while it is being taken may or may not
+ * be included. A book's borrowed flag and its borrower are read together under the book's loan
+ * lock and stored in the same record, though, so a restored book is never borrowed without a
+ * borrower or the other way round. Take it while writes are quiesced when an exact copy is needed.
+ */
+public final class DatabaseSnapshot {
+
+    // Identifies a snapshot file; stored last, so a file cut short is rejected. Version 2 stores
+    // loans inside the book records.
+    private static final int MAGIC = 0x4C425332;
+
+    // Record types. END is followed by the trailer.
+    private static final byte END = 0;
+    private static final byte BOOK = 1;
+    private static final byte USER = 2;
+
+    // Trailer: number of books, users and loans, and the magic number.
+    private static final int TRAILER_SIZE = 16;
+
+    private DatabaseSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of a database. The file is replaced atomically, so a crash while writing
+     * leaves the previous snapshot in place.
+     *
+     * @param database The database to snapshot.
+     * @param file     The snapshot file.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public static void write(InMemoryDatabaseService database, Path file) throws IOException {
+        if (database == null) {
+            throw new IllegalArgumentException("Invalid database.");
+        } else if (file == null) {
+            throw new IllegalArgumentException("Invalid file.");
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        int[] counts = new int[3];
+        try (FileOutputStream stream = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+            try {
+                database.forEachBookWithLoan((key, book, borrowed, borrowerId) -> {
+                    writeBook(out, key, book, borrowed, borrowerId);
+                    counts[0]++;
+                    if (borrowerId != null) {
+                        counts[2]++;
+                    }
+                });
+                database.forEachUser((key, user) -> {
+                    writeUser(out, key, user);
+                    counts[1]++;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.writeByte(END);
+            out.writeInt(counts[0]);
+            out.writeInt(counts[1]);
+            out.writeInt(counts[2]);
+            out.writeInt(MAGIC);
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes a snapshot of a database in the background.
+     *
+     * @param database The database to snapshot.
+     * @param file     The snapshot file.
+     * @param executor The executor the snapshot is written on.
+     * @return A future completed once the snapshot is in place, or failed with an {@link UncheckedIOException}.
+     */
+    public static CompletableFuture<Void> writeAsync(InMemoryDatabaseService database, Path file, Executor executor) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                write(database, file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Loads a snapshot into a new database.
+     *
+     * @param file                 The snapshot file.
+     * @param notificationServices Provides the notification service of a restored user, by user Id.
+     * @return A database holding the books, users and loans of the snapshot.
+     * @throws IOException If the snapshot cannot be read or is not a complete snapshot.
+     */
+    public static InMemoryDatabaseService load(Path file, Function<String, NotificationService> notificationServices) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Invalid file.");
+        } else if (notificationServices == null) {
+            throw new IllegalArgumentException("Invalid notification services.");
+        }
+
+        MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TRAILER_SIZE + 1) {
+                throw new IOException("Incomplete snapshot: " + file + ".");
+            }
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        int trailer = in.limit() - TRAILER_SIZE;
+        if (in.getInt(trailer + 12) != MAGIC) {
+            throw new IOException("Incomplete snapshot: " + file + ".");
+        }
+        int bookCount = in.getInt(trailer);
+        int userCount = in.getInt(trailer + 4);
+        InMemoryDatabaseService database = new InMemoryDatabaseService(bookCount, userCount);
+
+        try {
+            byte type;
+            while ((type = in.get()) != END) {
+                long key = in.getLong();
+                switch (type) {
+                    case BOOK: {
+                        Book book = new Book(readText(in), readText(in), readText(in));
+                        if (in.get() != 0) {
+                            book.tryBorrow();
+                        }
+                        String borrowerId = readText(in);
+                        database.restoreBook(key, book);
+                        if (borrowerId != null) {
+                            database.restoreLoan(key, borrowerId);
+                        }
+                        break;
+                    }
+                    case USER: {
+                        String id = readText(in);
+                        database.restoreUser(key, new User(readText(in), id, notificationServices.apply(id)));
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unknown snapshot record type " + type + ".");
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt snapshot: " + file + ".", e);
+        }
+        return database;
+    }
+
+    private static void writeBook(DataOutputStream out, long key, Book book, boolean borrowed, String borrowerId) {
+        try {
+            out.writeByte(BOOK);
+            out.writeLong(key);
+            writeText(out, book.getISBN());
+            writeText(out, book.getTitle());
+            writeText(out, book.getAuthor());
+            out.writeBoolean(borrowed);
+            writeText(out, borrowerId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeUser(DataOutputStream out, long key, User user) {
+        try {
+            out.writeByte(USER);
+            out.writeLong(key);
+            writeText(out, user.getId());
+            writeText(out, user.getName());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeText(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+    }
+
+    private static String readText(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
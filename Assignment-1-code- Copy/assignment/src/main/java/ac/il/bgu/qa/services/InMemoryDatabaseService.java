@@ -0,0 +1,256 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ResultCode;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.index.LoanIndex;
+import ac.il.bgu.qa.util.Identifiers;
+import ac.il.bgu.qa.util.LockStripes;
+import ac.il.bgu.qa.util.LongKeyedMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * A thread-safe, in-memory implementation of the database service.
+ * Both an ISBN-13 and a 12-digit user Id fit in a long, so books, users and loans are
+ * kept in primitive-long-keyed maps instead of String-keyed hash maps. Hyphenated and
+ * plain forms of the same ISBN resolve to the same record.
+ */
+public class InMemoryDatabaseService implements DatabaseService {
+
+    // Books keyed by the numeric value of their ISBN.
+    private final LongKeyedMap<Book> books;
+
+    // Users keyed by the numeric value of their Id.
+    private final LongKeyedMap<User> users;
+
+    // The current loans, by book and by borrower.
+    private final LoanIndex loans = new LoanIndex();
+
+    // Make the borrows and returns of a book atomic, flag and loan together.
+    private final LockStripes loanLocks = new LockStripes(64);
+
+    /**
+     * Constructs a new, empty database with a default capacity.
+     */
+    public InMemoryDatabaseService() {
+        this(1024, 1024);
+    }
+
+    /**
+     * Constructs a new, empty database sized for the expected catalog and user base.
+     *
+     * @param expectedBooks The number of books the database is expected to hold.
+     * @param expectedUsers The number of users the database is expected to hold.
+     */
+    public InMemoryDatabaseService(int expectedBooks, int expectedUsers) {
+        this.books = new LongKeyedMap<>(expectedBooks);
+        this.users = new LongKeyedMap<>(expectedUsers);
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        books.put(requireISBNKey(ISBN), book);
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        long key = Identifiers.parseUserId(id);
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        users.put(key, user);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = Identifiers.isbnKey(ISBN);
+        return key < 0 ? null : books.get(key);
+    }
+
+    @Override
+    public void forEachBook(BiConsumer<String, Book> action) {
+        books.forEach((key, book) -> action.accept(Identifiers.formatISBN(key), book));
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = Identifiers.parseUserId(userId);
+        return key < 0 ? null : users.get(key);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        // The book itself is already marked as borrowed by the caller, so only the association is recorded.
+        long key = requireISBNKey(ISBN);
+        ReentrantLock lock = loanLocks.lock(key);
+        try {
+            loans.borrowed(key, Identifiers.parseUserId(userId), userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        long key = requireISBNKey(ISBN);
+        ReentrantLock lock = loanLocks.lock(key);
+        try {
+            loans.returned(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean addBookIfAbsent(String ISBN, Book book) {
+        return books.putIfAbsent(requireISBNKey(ISBN), book) == null;
+    }
+
+    @Override
+    public boolean registerUserIfAbsent(String id, User user) {
+        long key = Identifiers.parseUserId(id);
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        return users.putIfAbsent(key, user) == null;
+    }
+
+    @Override
+    public boolean unregisterUser(String id, User user) {
+        long key = Identifiers.parseUserId(id);
+        return key >= 0 && users.remove(key, user);
+    }
+
+    @Override
+    public ResultCode tryBorrow(String ISBN, String userId) {
+        long key = Identifiers.isbnKey(ISBN);
+        Book book = key < 0 ? null : books.get(key);
+        if (book == null) {
+            return ResultCode.BOOK_NOT_FOUND;
+        } else if (getUserById(userId) == null) {
+            return ResultCode.USER_NOT_REGISTERED;
+        }
+        ReentrantLock lock = loanLocks.lock(key);
+        try {
+            if (!book.tryBorrow()) {
+                return ResultCode.BOOK_ALREADY_BORROWED;
+            }
+            loans.borrowed(key, Identifiers.parseUserId(userId), userId);
+            return ResultCode.SUCCESS;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ResultCode tryReturn(String ISBN) {
+        long key = Identifiers.isbnKey(ISBN);
+        Book book = key < 0 ? null : books.get(key);
+        if (book == null) {
+            return ResultCode.BOOK_NOT_FOUND;
+        }
+        ReentrantLock lock = loanLocks.lock(key);
+        try {
+            if (!book.tryReturn()) {
+                return ResultCode.BOOK_NOT_BORROWED;
+            }
+            loans.returned(key);
+            return ResultCode.SUCCESS;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String getBorrowerId(String ISBN) {
+        long key = Identifiers.isbnKey(ISBN);
+        return key < 0 ? null : loans.borrowerOf(key);
+    }
+
+    @Override
+    public List<String> getBorrowedISBNs(String userId) {
+        long key = Identifiers.parseUserId(userId);
+        if (key < 0) {
+            return new ArrayList<>();
+        }
+        long[] keys = loans.loansOf(key);
+        List<String> ISBNs = new ArrayList<>(keys.length);
+        for (long isbnKey : keys) {
+            ISBNs.add(Identifiers.formatISBN(isbnKey));
+        }
+        return ISBNs;
+    }
+
+    /**
+     * Counts the books stored in the database.
+     *
+     * @return The number of books.
+     */
+    public int bookCount() {
+        return books.size();
+    }
+
+    /**
+     * Counts the users registered in the database.
+     *
+     * @return The number of users.
+     */
+    public int userCount() {
+        return users.size();
+    }
+
+    // Entry-level access for snapshots. Keys are the numeric values used by the maps, and
+    // restored entries skip parsing since they were validated before the snapshot was taken.
+
+    // Reads each book's borrowed flag and borrower together, under the book's loan lock, so they
+    // agree even while books are being borrowed and returned.
+    void forEachBookWithLoan(BookLoanConsumer action) {
+        books.forEach((key, book) -> {
+            boolean borrowed;
+            String borrowerId;
+            ReentrantLock lock = loanLocks.lock(key);
+            try {
+                borrowed = book.isBorrowed();
+                borrowerId = loans.borrowerOf(key);
+            } finally {
+                lock.unlock();
+            }
+            action.accept(key, book, borrowed, borrowerId);
+        });
+    }
+
+    void forEachUser(LongKeyedMap.EntryConsumer<? super User> action) {
+        users.forEach(action);
+    }
+
+    void restoreBook(long key, Book book) {
+        books.put(key, book);
+    }
+
+    void restoreUser(long key, User user) {
+        users.put(key, user);
+    }
+
+    void restoreLoan(long key, String userId) {
+        loans.borrowed(key, Identifiers.parseUserId(userId), userId);
+    }
+
+    /**
+     * An action performed on a book, its borrowed flag and its borrower, read as one.
+     */
+    interface BookLoanConsumer {
+        void accept(long key, Book book, boolean borrowed, String borrowerId);
+    }
+
+    private static long requireISBNKey(String ISBN) {
+        long key = Identifiers.isbnKey(ISBN);
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return key;
+    }
+}
@@ -0,0 +1,694 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ResultCode;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.util.Identifiers;
+import ac.il.bgu.qa.util.LongKeyedMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * A durable database service that keeps its data in memory and appends every write to a journal file.
+ * A write returns only once its journal record has been forced to disk, and readers only see a write
+ * once its record is durable, so nothing they observe can be lost by a failed force or a crash.
+ * Writers that arrive while a force is in progress are batched into the next one (group commit), so
+ * throughput is not capped by the rate of forces the disk sustains. At startup the state is rebuilt by
+ * replaying the journal; a torn record at its end, left by a crash in the middle of a write, is discarded.
+ */
+public class JournalDatabaseService implements DatabaseService, Closeable {
+
+    // Journal record types.
+    private static final byte ADD_BOOK = 1;
+    private static final byte REGISTER_USER = 2;
+    private static final byte BORROW_BOOK = 3;
+    private static final byte RETURN_BOOK = 4;
+    private static final byte UNREGISTER_USER = 5;
+
+    // Every record starts with the length and the CRC32 checksum of its payload.
+    private static final int HEADER_SIZE = 8;
+
+    // The current state, rebuilt from the journal at startup.
+    private final InMemoryDatabaseService state;
+
+    // Provides the notification service of a user restored from the journal.
+    private final Function<String, NotificationService> notificationServices;
+
+    // The journal file, opened for appending.
+    private final FileChannel channel;
+
+    // Guards the fields below, and makes the in-memory state change in journal order.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+
+    // Records appended but not yet handed to a force.
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    // Apply the pending records to the in-memory state, in journal order, once they are durable.
+    private final ArrayDeque<Runnable> unpublished = new ArrayDeque<>();
+
+    // What the pending records will make of the books, users and loans they touch, keyed by ISBN or
+    // user Id, so that a conditional write sees the writes queued before it in the same batch.
+    private final Map<Long, Staged<Book>> stagedBooks = new HashMap<>();
+    // A null user stands for a pending removal, and a null borrower for a pending return.
+    private final Map<Long, Staged<User>> stagedUsers = new HashMap<>();
+    private final Map<Long, Staged<String>> stagedLoans = new HashMap<>();
+
+    // Sequence numbers of the last appended record and of the last record forced to disk.
+    private long appendedSeq;
+    private long durableSeq;
+
+    // Set while one writer forces a batch to disk on behalf of all waiting writers.
+    private boolean flushing;
+
+    // The first write failure. The journal may be incomplete afterwards, so no further writes are accepted.
+    private IOException failure;
+
+    private boolean closed;
+
+    /**
+     * Opens a journal, creating it if it doesn't exist, and rebuilds the state it records.
+     *
+     * @param journal              The journal file.
+     * @param notificationServices Provides the notification service of a user restored from the journal, by user Id.
+     * @throws IOException If the journal cannot be opened or read, or holds a damaged record before its end.
+     */
+    public JournalDatabaseService(Path journal, Function<String, NotificationService> notificationServices) throws IOException {
+        if (journal == null) {
+            throw new IllegalArgumentException("Invalid journal.");
+        } else if (notificationServices == null) {
+            throw new IllegalArgumentException("Invalid notification services.");
+        }
+        this.state = new InMemoryDatabaseService();
+        this.notificationServices = notificationServices;
+        this.channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long end = replay();
+            // Cut off a torn last record so new records are appended right after the last valid one.
+            channel.truncate(end);
+            channel.position(end);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        long key = requireISBNKey(ISBN);
+        byte[] record = bookRecord(ISBN, book);
+        lock.lock();
+        try {
+            long seq = enqueue(record, () -> state.addBook(ISBN, book));
+            stagedBooks.put(key, new Staged<>(book, seq));
+            awaitDurable(seq);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addBooks(Map<String, Book> books) {
+        // One append, and therefore at most one force, for the whole batch.
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        for (Map.Entry<String, Book> entry : books.entrySet()) {
+            requireISBNKey(entry.getKey());
+            byte[] record = bookRecord(entry.getKey(), entry.getValue());
+            batch.write(record, 0, record.length);
+        }
+        lock.lock();
+        try {
+            long seq = enqueue(batch.toByteArray(), () -> state.addBooks(books));
+            for (Map.Entry<String, Book> entry : books.entrySet()) {
+                stagedBooks.put(Identifiers.isbnKey(entry.getKey()), new Staged<>(entry.getValue(), seq));
+            }
+            awaitDurable(seq);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        long key = requireUserKey(id);
+        byte[] record = new Record(REGISTER_USER).text(id).text(user.getName()).bytes();
+        lock.lock();
+        try {
+            long seq = enqueue(record, () -> state.registerUser(id, user));
+            stagedUsers.put(key, new Staged<>(user, seq));
+            awaitDurable(seq);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return state.getBookByISBN(ISBN);
+    }
+
+    @Override
+    public void forEachBook(BiConsumer<String, Book> action) {
+        state.forEachBook(action);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return state.getUserById(userId);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        long key = requireISBNKey(ISBN);
+        byte[] record = new Record(BORROW_BOOK).text(ISBN).text(userId).bytes();
+        lock.lock();
+        try {
+            long seq = enqueue(record, () -> state.borrowBook(ISBN, userId));
+            stagedLoans.put(key, new Staged<>(userId, seq));
+            awaitDurable(seq);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        long key = requireISBNKey(ISBN);
+        byte[] record = new Record(RETURN_BOOK).text(ISBN).bytes();
+        lock.lock();
+        try {
+            long seq = enqueue(record, () -> state.returnBook(ISBN));
+            stagedLoans.put(key, new Staged<>(null, seq));
+            awaitDurable(seq);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean addBookIfAbsent(String ISBN, Book book) {
+        long key = requireISBNKey(ISBN);
+        byte[] record = bookRecord(ISBN, book);
+        lock.lock();
+        try {
+            if (bookOf(key, ISBN) != null) {
+                return false;
+            }
+            long seq = enqueue(record, () -> state.addBook(ISBN, book));
+            stagedBooks.put(key, new Staged<>(book, seq));
+            awaitDurable(seq);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Set<String> addBooksIfAbsent(Map<String, Book> books) {
+        for (String ISBN : books.keySet()) {
+            requireISBNKey(ISBN);
+        }
+        lock.lock();
+        try {
+            // Probe and append under the lock, so no other writer can take an ISBN in between.
+            LongKeyedMap<String> taken = new LongKeyedMap<>(books.size());
+            Map<String, Book> added = new LinkedHashMap<>();
+            ByteArrayOutputStream batch = new ByteArrayOutputStream();
+            for (Map.Entry<String, Book> entry : books.entrySet()) {
+                long key = Identifiers.isbnKey(entry.getKey());
+                if (bookOf(key, entry.getKey()) == null && taken.putIfAbsent(key, entry.getKey()) == null) {
+                    added.put(entry.getKey(), entry.getValue());
+                    byte[] record = bookRecord(entry.getKey(), entry.getValue());
+                    batch.write(record, 0, record.length);
+                }
+            }
+            if (!added.isEmpty()) {
+                long seq = enqueue(batch.toByteArray(), () -> state.addBooks(added));
+                for (Map.Entry<String, Book> entry : added.entrySet()) {
+                    stagedBooks.put(Identifiers.isbnKey(entry.getKey()), new Staged<>(entry.getValue(), seq));
+                }
+                awaitDurable(seq);
+            }
+            return added.keySet();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean registerUserIfAbsent(String id, User user) {
+        long key = requireUserKey(id);
+        byte[] record = new Record(REGISTER_USER).text(id).text(user.getName()).bytes();
+        lock.lock();
+        try {
+            if (userOf(key, id) != null) {
+                return false;
+            }
+            long seq = enqueue(record, () -> state.registerUser(id, user));
+            stagedUsers.put(key, new Staged<>(user, seq));
+            awaitDurable(seq);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean unregisterUser(String id, User user) {
+        long key = requireUserKey(id);
+        byte[] record = new Record(UNREGISTER_USER).text(id).bytes();
+        lock.lock();
+        try {
+            if (userOf(key, id) != user) {
+                return false;
+            }
+            long seq = enqueue(record, () -> state.unregisterUser(id, user));
+            stagedUsers.put(key, new Staged<>(null, seq));
+            awaitDurable(seq);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ResultCode tryBorrow(String ISBN, String userId) {
+        long key = Identifiers.isbnKey(ISBN);
+        if (key < 0) {
+            return ResultCode.BOOK_NOT_FOUND;
+        }
+        byte[] record = new Record(BORROW_BOOK).text(ISBN).text(userId).bytes();
+        lock.lock();
+        try {
+            Book book = bookOf(key, ISBN);
+            long userKey = Identifiers.parseUserId(userId);
+            if (book == null) {
+                return ResultCode.BOOK_NOT_FOUND;
+            } else if (userKey < 0 || userOf(userKey, userId) == null) {
+                return ResultCode.USER_NOT_REGISTERED;
+            } else if (isBorrowed(key, book)) {
+                return ResultCode.BOOK_ALREADY_BORROWED;
+            }
+            long seq = enqueue(record, () -> state.tryBorrow(ISBN, userId));
+            stagedLoans.put(key, new Staged<>(userId, seq));
+            awaitDurable(seq);
+            return ResultCode.SUCCESS;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ResultCode tryReturn(String ISBN) {
+        long key = Identifiers.isbnKey(ISBN);
+        if (key < 0) {
+            return ResultCode.BOOK_NOT_FOUND;
+        }
+        byte[] record = new Record(RETURN_BOOK).text(ISBN).bytes();
+        lock.lock();
+        try {
+            Book book = bookOf(key, ISBN);
+            if (book == null) {
+                return ResultCode.BOOK_NOT_FOUND;
+            } else if (!isBorrowed(key, book)) {
+                return ResultCode.BOOK_NOT_BORROWED;
+            }
+            long seq = enqueue(record, () -> state.tryReturn(ISBN));
+            stagedLoans.put(key, new Staged<>(null, seq));
+            awaitDurable(seq);
+            return ResultCode.SUCCESS;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String getBorrowerId(String ISBN) {
+        return state.getBorrowerId(ISBN);
+    }
+
+    @Override
+    public List<String> getBorrowedISBNs(String userId) {
+        return state.getBorrowedISBNs(userId);
+    }
+
+    /**
+     * Stops accepting writes, forces the writes already queued and closes the journal.
+     *
+     * @throws IOException If the journal cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            // Writers that got in before are still owed their force, so drain the queue first.
+            while (flushing || (durableSeq < appendedSeq && failure == null)) {
+                if (flushing) {
+                    flushed.awaitUninterruptibly();
+                } else {
+                    flush();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        channel.close();
+    }
+
+    /**
+     * Appends records to the journal, to be applied to the in-memory state once they are durable.
+     * Called with the lock held.
+     *
+     * @param records The serialized records.
+     * @param apply   Applies the records to the in-memory state.
+     * @return The sequence number of the records.
+     */
+    private long enqueue(byte[] records, Runnable apply) {
+        if (closed) {
+            throw new IllegalStateException("Journal is closed.");
+        }
+        checkFailure();
+        pending.write(records, 0, records.length);
+        unpublished.add(apply);
+        return ++appendedSeq;
+    }
+
+    /**
+     * Waits until the records with a sequence number are durable and applied, forcing them if no other writer is.
+     * Called with the lock held.
+     *
+     * @param seq The sequence number of the records.
+     */
+    private void awaitDurable(long seq) {
+        while (durableSeq < seq) {
+            checkFailure();
+            if (flushing) {
+                // Another writer is forcing; our record goes out with the next batch.
+                flushed.awaitUninterruptibly();
+            } else {
+                flush();
+            }
+        }
+    }
+
+    // Decide conditional writes on the staged outcome of the pending records, falling back to the in-memory state.
+
+    private Book bookOf(long key, String ISBN) {
+        Staged<Book> staged = stagedBooks.get(key);
+        return staged != null ? staged.value : state.getBookByISBN(ISBN);
+    }
+
+    private User userOf(long key, String id) {
+        Staged<User> staged = stagedUsers.get(key);
+        return staged != null ? staged.value : state.getUserById(id);
+    }
+
+    private boolean isBorrowed(long key, Book book) {
+        Staged<String> staged = stagedLoans.get(key);
+        return staged != null ? staged.value != null : book.isBorrowed();
+    }
+
+    /**
+     * Writes and forces every pending record on behalf of all waiting writers, then applies them to the in-memory state.
+     * Called with the lock held; the lock is released during the disk I/O so that
+     * more writers can queue up for the next batch meanwhile.
+     */
+    private void flush() {
+        flushing = true;
+        ByteBuffer batch = ByteBuffer.wrap(pending.toByteArray());
+        pending.reset();
+        List<Runnable> applies = new ArrayList<>(unpublished);
+        unpublished.clear();
+        long batchSeq = appendedSeq;
+
+        IOException error = null;
+        lock.unlock();
+        try {
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            lock.lock();
+        }
+
+        flushing = false;
+        if (error == null) {
+            // Applying under the lock, in batch order, keeps the in-memory state in the same order as the journal.
+            for (Runnable apply : applies) {
+                apply.run();
+            }
+            durableSeq = batchSeq;
+            stagedBooks.values().removeIf(staged -> staged.seq <= batchSeq);
+            stagedUsers.values().removeIf(staged -> staged.seq <= batchSeq);
+            stagedLoans.values().removeIf(staged -> staged.seq <= batchSeq);
+        } else {
+            // The batch never reaches the in-memory state, so readers saw none of it.
+            failure = error;
+        }
+        flushed.signalAll();
+    }
+
+    // Rejects an invalid ISBN before it is journaled, since replaying it would fail.
+    private static long requireISBNKey(String ISBN) {
+        long key = Identifiers.isbnKey(ISBN);
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return key;
+    }
+
+    private static long requireUserKey(String id) {
+        long key = Identifiers.parseUserId(id);
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        return key;
+    }
+
+    private static byte[] bookRecord(String ISBN, Book book) {
+        return new Record(ADD_BOOK).text(ISBN).text(book.getTitle()).text(book.getAuthor()).bytes();
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal write failed.", failure);
+        }
+    }
+
+    /**
+     * Rebuilds the in-memory state from the journal.
+     *
+     * @return The position right after the last valid record.
+     * @throws IOException If the journal cannot be read.
+     */
+    private long replay() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = 0;
+        CRC32 crc = new CRC32();
+
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0) {
+                requireTornTail(position, size, isZeroedFrom(position, size));
+                break;
+            } else if (position + HEADER_SIZE + length > size) {
+                // The record runs past the end of the file, so its write was cut short.
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + HEADER_SIZE);
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != checksum) {
+                requireTornTail(position, size, position + HEADER_SIZE + length == size);
+                break;
+            }
+
+            payload.flip();
+            apply(payload);
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    /**
+     * Accepts a damaged record only if it is the last thing in the journal, as left by a crash in the
+     * middle of its write. Records after a damaged one were forced to disk and acknowledged, so
+     * discarding them would lose data; the corruption is reported instead.
+     *
+     * @param position The position of the damaged record.
+     * @param size     The size of the journal.
+     * @param isTail   Whether nothing but the damaged record follows the position.
+     * @throws IOException If the damaged record is followed by more data.
+     */
+    private static void requireTornTail(long position, long size, boolean isTail) throws IOException {
+        if (!isTail) {
+            throw new IOException("Corrupt journal record at offset " + position + " of " + size + ".");
+        }
+    }
+
+    // A file extended by a crash before its data was written reads back as zeros.
+    private boolean isZeroedFrom(long position, long size) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(4096);
+        while (position < size) {
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), size - position));
+            readFully(chunk, position);
+            for (int i = 0; i < chunk.limit(); i++) {
+                if (chunk.get(i) != 0) {
+                    return false;
+                }
+            }
+            position += chunk.limit();
+        }
+        return true;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of journal.");
+            }
+        }
+    }
+
+    // Applies one replayed record to the in-memory state.
+    private void apply(ByteBuffer payload) {
+        byte type = payload.get();
+        switch (type) {
+            case ADD_BOOK: {
+                String ISBN = readText(payload);
+                state.addBook(ISBN, new Book(ISBN, readText(payload), readText(payload)));
+                break;
+            }
+            case REGISTER_USER: {
+                String id = readText(payload);
+                state.registerUser(id, new User(readText(payload), id, notificationServices.apply(id)));
+                break;
+            }
+            case BORROW_BOOK: {
+                String ISBN = readText(payload);
+                Book book = state.getBookByISBN(ISBN);
+                if (book != null) {
+                    book.tryBorrow();
+                }
+                state.borrowBook(ISBN, readText(payload));
+                break;
+            }
+            case RETURN_BOOK: {
+                String ISBN = readText(payload);
+                Book book = state.getBookByISBN(ISBN);
+                if (book != null) {
+                    book.tryReturn();
+                }
+                state.returnBook(ISBN);
+                break;
+            }
+            case UNREGISTER_USER: {
+                String id = readText(payload);
+                User user = state.getUserById(id);
+                if (user != null) {
+                    state.unregisterUser(id, user);
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type + ".");
+        }
+    }
+
+    private static String readText(ByteBuffer payload) {
+        int length = payload.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The value a key will have once the record with a sequence number is applied.
+     */
+    private static final class Staged<V> {
+        final V value;
+        final long seq;
+
+        Staged(V value, long seq) {
+            this.value = value;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * Builds one journal record: header, type and length-prefixed UTF-8 strings.
+     */
+    private static final class Record {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        Record(byte type) {
+            try {
+                out.writeLong(0); // Placeholder for the header.
+                out.writeByte(type);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        Record text(String value) {
+            try {
+                if (value == null) {
+                    out.writeInt(-1);
+                } else {
+                    byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(encoded.length);
+                    out.write(encoded);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        byte[] bytes() {
+            byte[] record = bytes.toByteArray();
+            int length = record.length - HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            crc.update(record, HEADER_SIZE, length);
+            ByteBuffer.wrap(record).putInt(length).putInt((int) crc.getValue());
+            return record;
+        }
+    }
+}
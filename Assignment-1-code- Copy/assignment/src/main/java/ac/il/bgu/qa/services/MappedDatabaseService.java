@@ -0,0 +1,606 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ResultCode;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.index.LoanIndex;
+import ac.il.bgu.qa.util.Identifiers;
+import ac.il.bgu.qa.util.LongKeyedMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * A database service that keeps the book catalog off-heap, in a memory-mapped file.
+ * Every book is a fixed-width record in an open-addressing table of slots, keyed by the numeric
+ * value of its ISBN; titles and authors live in a separate append-only string heap file and the
+ * record only holds their offsets. Lookups probe the mapped table directly and return a small
+ * flyweight {@link Book} that reads through to the record, so the catalog costs no heap space
+ * and is cached by the operating system's page cache. Users are few and hold live notification
+ * services, so they are kept in memory.
+ */
+public class MappedDatabaseService implements DatabaseService, Closeable {
+
+    // Identifies a slot file written by this class.
+    private static final int MAGIC = 0x4C424B53;
+
+    // Slot file header: magic, capacity, number of books and a reserved word.
+    private static final int HEADER_SIZE = 16;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int COUNT_OFFSET = 8;
+
+    // Record layout: ISBN key + 1 (0 marks a free slot), title offset, author offset,
+    // borrower Id + 1 (0 when not borrowed), borrowed flag and padding.
+    private static final int RECORD_SIZE = 40;
+    private static final int KEY = 0;
+    private static final int TITLE = 8;
+    private static final int AUTHOR = 16;
+    private static final int BORROWER = 24;
+    private static final int BORROWED = 32;
+
+    // Heap offset standing for a null string.
+    private static final long NULL_STRING = -1L;
+
+    // The table is never filled beyond three quarters, so probes stay short.
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // Largest table whose slot file still fits in a single mapping.
+    private static final int MAX_CAPACITY = 1 << 25;
+
+    // Number of locks guarding the borrowed flags, picked by slot.
+    private static final int FLAG_STRIPES = 64;
+
+    // The slot table, mapped read-write.
+    private final FileChannel slotChannel;
+    private final MappedByteBuffer slots;
+
+    // The string heap, appended to under the write lock and read with positional reads.
+    private final FileChannel heap;
+    private long heapEnd;
+
+    // Per-thread buffer strings are read from the heap into, grown to the longest string read so far.
+    private final ThreadLocal<ByteBuffer> readBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(256));
+
+    // Number of slots in the table, a power of two.
+    private final int capacity;
+
+    // Serializes writers. Readers never take it; a record's key is written last, and the
+    // volatile book count is written after it, so a reader that finds the key sees the whole record.
+    private final Object writeLock = new Object();
+    private volatile int count;
+
+    // Guard the check-and-set of the borrowed flags, which the mapping can't do atomically.
+    private final Object[] flagLocks = new Object[FLAG_STRIPES];
+
+    // Users keyed by the numeric value of their Id.
+    private final LongKeyedMap<User> users = new LongKeyedMap<>();
+
+    // The loans by borrower, rebuilt from the records at startup and updated under the records' flag locks.
+    private final LoanIndex loans = new LoanIndex();
+
+    /**
+     * Opens the catalog stored in a directory, creating it with room for the expected number of books if it doesn't exist.
+     *
+     * @param directory     The directory holding the catalog files.
+     * @param expectedBooks The number of books a new catalog must have room for. Ignored when the catalog exists.
+     * @throws IOException If the catalog files cannot be opened or mapped.
+     */
+    public MappedDatabaseService(Path directory, int expectedBooks) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Invalid directory.");
+        } else if (expectedBooks <= 0 || expectedBooks > MAX_CAPACITY * LOAD_FACTOR) {
+            throw new IllegalArgumentException("Invalid expected number of books.");
+        }
+        Files.createDirectories(directory);
+        Path slotFile = directory.resolve("books.slots");
+        boolean exists = Files.exists(slotFile) && Files.size(slotFile) >= HEADER_SIZE;
+
+        this.slotChannel = FileChannel.open(slotFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.heap = FileChannel.open(directory.resolve("books.heap"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            slotChannel.close();
+            throw e;
+        }
+
+        try {
+            int slotCount;
+            if (exists) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                readFully(slotChannel, header, 0);
+                if (header.getInt(0) != MAGIC) {
+                    throw new IOException("Not a book catalog: " + slotFile + ".");
+                }
+                slotCount = header.getInt(CAPACITY_OFFSET);
+            } else {
+                slotCount = tableSizeFor(expectedBooks);
+            }
+
+            this.capacity = slotCount;
+            this.slots = slotChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slotCount * RECORD_SIZE);
+            if (!exists) {
+                slots.putInt(0, MAGIC);
+                slots.putInt(CAPACITY_OFFSET, slotCount);
+            }
+            this.count = slots.getInt(COUNT_OFFSET);
+            this.heapEnd = heap.size();
+        } catch (IOException | RuntimeException e) {
+            closeChannels();
+            throw e;
+        }
+
+        for (int i = 0; i < FLAG_STRIPES; i++) {
+            flagLocks[i] = new Object();
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            int record = offset(slot);
+            long key = slots.getLong(record + KEY);
+            long borrower = slots.getLong(record + BORROWER);
+            if (key != 0 && borrower != 0) {
+                loans.borrowed(key - 1, borrower - 1, pad(borrower - 1, 12));
+            }
+        }
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        long key = requireISBNKey(ISBN);
+        synchronized (writeLock) {
+            int slot = findSlot(key);
+            writeRecord(slot, key, book, slots.getLong(offset(slot) + KEY) == 0);
+        }
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        long key = Identifiers.parseUserId(id);
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        users.put(key, user);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = Identifiers.isbnKey(ISBN);
+        if (key < 0 || count == 0) {
+            return null;
+        }
+        int slot = findSlot(key);
+        return slots.getLong(offset(slot) + KEY) == 0 ? null : new MappedBook(slot, key);
+    }
+
+    @Override
+    public void forEachBook(BiConsumer<String, Book> action) {
+        // Records counted by now are complete; see the publication order in writeRecord.
+        if (count == 0) {
+            return;
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            long key = slots.getLong(offset(slot) + KEY);
+            if (key != 0) {
+                action.accept(pad(key - 1, 13), new MappedBook(slot, key - 1));
+            }
+        }
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = Identifiers.parseUserId(userId);
+        return key < 0 ? null : users.get(key);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        // The book itself is already marked as borrowed by the caller, so only the association is recorded.
+        long borrower = Identifiers.parseUserId(userId);
+        if (borrower < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        int record = offset(requireSlot(ISBN));
+        synchronized (flagLock(record)) {
+            slots.putLong(record + BORROWER, borrower + 1);
+            loans.borrowed(slots.getLong(record + KEY) - 1, borrower, userId);
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        int record = offset(requireSlot(ISBN));
+        synchronized (flagLock(record)) {
+            slots.putLong(record + BORROWER, 0);
+            loans.returned(slots.getLong(record + KEY) - 1);
+        }
+    }
+
+    @Override
+    public boolean addBookIfAbsent(String ISBN, Book book) {
+        long key = requireISBNKey(ISBN);
+        synchronized (writeLock) {
+            int slot = findSlot(key);
+            if (slots.getLong(offset(slot) + KEY) != 0) {
+                return false;
+            }
+            writeRecord(slot, key, book, true);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean registerUserIfAbsent(String id, User user) {
+        long key = Identifiers.parseUserId(id);
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        return users.putIfAbsent(key, user) == null;
+    }
+
+    @Override
+    public boolean unregisterUser(String id, User user) {
+        long key = Identifiers.parseUserId(id);
+        return key >= 0 && users.remove(key, user);
+    }
+
+    @Override
+    public ResultCode tryBorrow(String ISBN, String userId) {
+        int record = recordOf(ISBN);
+        if (record < 0) {
+            return ResultCode.BOOK_NOT_FOUND;
+        } else if (getUserById(userId) == null) {
+            return ResultCode.USER_NOT_REGISTERED;
+        }
+        // The flag and the borrower change together under the record's flag lock.
+        synchronized (flagLock(record)) {
+            if (slots.getInt(record + BORROWED) != 0) {
+                return ResultCode.BOOK_ALREADY_BORROWED;
+            }
+            long borrower = Identifiers.parseUserId(userId);
+            slots.putInt(record + BORROWED, 1);
+            slots.putLong(record + BORROWER, borrower + 1);
+            loans.borrowed(slots.getLong(record + KEY) - 1, borrower, userId);
+            return ResultCode.SUCCESS;
+        }
+    }
+
+    @Override
+    public ResultCode tryReturn(String ISBN) {
+        int record = recordOf(ISBN);
+        if (record < 0) {
+            return ResultCode.BOOK_NOT_FOUND;
+        }
+        synchronized (flagLock(record)) {
+            if (slots.getInt(record + BORROWED) == 0) {
+                return ResultCode.BOOK_NOT_BORROWED;
+            }
+            slots.putInt(record + BORROWED, 0);
+            slots.putLong(record + BORROWER, 0);
+            loans.returned(slots.getLong(record + KEY) - 1);
+            return ResultCode.SUCCESS;
+        }
+    }
+
+    @Override
+    public String getBorrowerId(String ISBN) {
+        long key = Identifiers.isbnKey(ISBN);
+        if (key < 0 || count == 0) {
+            return null;
+        }
+        int record = offset(findSlot(key));
+        long borrower = slots.getLong(record + BORROWER);
+        return slots.getLong(record + KEY) == 0 || borrower == 0 ? null : pad(borrower - 1, 12);
+    }
+
+    @Override
+    public List<String> getBorrowedISBNs(String userId) {
+        long key = Identifiers.parseUserId(userId);
+        List<String> ISBNs = new ArrayList<>();
+        if (key >= 0) {
+            for (long isbnKey : loans.loansOf(key)) {
+                ISBNs.add(pad(isbnKey, 13));
+            }
+        }
+        return ISBNs;
+    }
+
+    /**
+     * Counts the books stored in the catalog.
+     *
+     * @return The number of books.
+     */
+    public int bookCount() {
+        return count;
+    }
+
+    /**
+     * Counts the users registered in the database.
+     *
+     * @return The number of users.
+     */
+    public int userCount() {
+        return users.size();
+    }
+
+    /**
+     * Forces the catalog to disk.
+     *
+     * @throws IOException If the string heap cannot be forced.
+     */
+    public void flush() throws IOException {
+        heap.force(false);
+        slots.force();
+    }
+
+    /**
+     * Forces the catalog to disk and closes its files.
+     *
+     * @throws IOException If the catalog cannot be forced or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            closeChannels();
+        }
+    }
+
+    private void closeChannels() throws IOException {
+        try {
+            heap.close();
+        } finally {
+            slotChannel.close();
+        }
+    }
+
+    // Finds the slot holding a key, or the free slot where it would be inserted.
+    private int findSlot(long key) {
+        int mask = capacity - 1;
+        int slot = spread(key) & mask;
+        // The load factor keeps free slots around, but a damaged file may have none; probe every slot at most once.
+        for (int probes = 0; probes < capacity; probes++) {
+            long stored = slots.getLong(offset(slot) + KEY);
+            if (stored == 0 || stored == key + 1) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        throw new IllegalStateException("Book catalog has no free slot.");
+    }
+
+    // Finds the record of a book, or -1 if the ISBN is invalid or not in the catalog.
+    private int recordOf(String ISBN) {
+        long key = Identifiers.isbnKey(ISBN);
+        if (key < 0 || count == 0) {
+            return -1;
+        }
+        int record = offset(findSlot(key));
+        return slots.getLong(record + KEY) == 0 ? -1 : record;
+    }
+
+    private Object flagLock(int record) {
+        return flagLocks[(record / RECORD_SIZE) & (FLAG_STRIPES - 1)];
+    }
+
+    // Writes a book into a slot. Called with the write lock held.
+    private void writeRecord(int slot, long key, Book book, boolean isNew) {
+        if (isNew && count + 1 > capacity * LOAD_FACTOR) {
+            throw new IllegalStateException("Book catalog is full.");
+        }
+
+        int record = offset(slot);
+        slots.putLong(record + TITLE, appendString(book.getTitle()));
+        slots.putLong(record + AUTHOR, appendString(book.getAuthor()));
+        // A replaced record keeps its loan, like a replaced book in the in-memory database does;
+        // only a new record takes the given book's flag.
+        if (isNew) {
+            slots.putLong(record + BORROWER, 0);
+            slots.putInt(record + BORROWED, book.isBorrowed() ? 1 : 0);
+        }
+        // Publication order: the offsets, flag and borrower above are stored before the key, and the
+        // key before the volatile count, which is the publication point. A reader reads the count
+        // before it probes, so every book counted by then is seen with its whole record.
+        if (isNew) {
+            slots.putLong(record + KEY, key + 1);
+            slots.putInt(COUNT_OFFSET, count + 1);
+            count = count + 1;
+        }
+    }
+
+    private int requireSlot(String ISBN) {
+        int slot = findSlot(requireISBNKey(ISBN));
+        if (slots.getLong(offset(slot) + KEY) == 0) {
+            throw new IllegalArgumentException("Book not in catalog.");
+        }
+        return slot;
+    }
+
+    // Appends a string to the heap. Called with the write lock held.
+    private long appendString(String value) {
+        if (value == null) {
+            return NULL_STRING;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(4 + bytes.length);
+        entry.putInt(bytes.length).put(bytes).flip();
+        long offset = heapEnd;
+        try {
+            while (entry.hasRemaining()) {
+                heap.write(entry, offset + entry.position());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("String heap write failed.", e);
+        }
+        heapEnd += entry.limit();
+        return offset;
+    }
+
+    private String readString(long offset) {
+        if (offset == NULL_STRING) {
+            return null;
+        }
+        try {
+            // A single positional read usually brings in both the length and the bytes of the string.
+            ByteBuffer buffer = readBuffers.get();
+            buffer.clear();
+            readAtLeast(buffer, offset, 4);
+            int length = buffer.getInt(0);
+            if (4 + length > buffer.capacity()) {
+                buffer = ByteBuffer.allocate(Integer.highestOneBit(4 + length) << 1);
+                readBuffers.set(buffer);
+            }
+            readAtLeast(buffer, offset, 4 + length);
+            return new String(buffer.array(), 4, length, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("String heap read failed.", e);
+        }
+    }
+
+    // Reads from the heap at a position until the buffer holds at least the needed number of bytes.
+    private void readAtLeast(ByteBuffer buffer, long position, int needed) throws IOException {
+        while (buffer.position() < needed) {
+            if (heap.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file.");
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file.");
+            }
+        }
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    // MurmurHash3 finalizer, so sequential ISBNs spread over the whole table.
+    private static int spread(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private static int tableSizeFor(int expectedBooks) {
+        int needed = (int) Math.ceil(expectedBooks / LOAD_FACTOR);
+        int size = 16;
+        while (size < needed) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static String pad(long value, int digits) {
+        StringBuilder padded = new StringBuilder(digits).append(value);
+        while (padded.length() < digits) {
+            padded.insert(0, '0');
+        }
+        return padded.toString();
+    }
+
+    private static long requireISBNKey(String ISBN) {
+        long key = Identifiers.isbnKey(ISBN);
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return key;
+    }
+
+    /**
+     * A view of one catalog record. Holds no book data of its own; every getter reads the mapping,
+     * and a title or author is only decoded again once the record points to another string.
+     */
+    private final class MappedBook extends Book {
+        private final int record;
+        private final long key;
+
+        // The title and author last decoded from the heap. The heap is append-only, so a string
+        // decoded at an offset stays valid for as long as the record points there.
+        private volatile HeapString title;
+        private volatile HeapString author;
+
+        MappedBook(int slot, long key) {
+            super(null, null, null);
+            this.record = offset(slot);
+            this.key = key;
+        }
+
+        @Override
+        public String getISBN() {
+            return pad(key, 13);
+        }
+
+        @Override
+        public String getTitle() {
+            HeapString current = decode(title, slots.getLong(record + TITLE));
+            title = current;
+            return current.value;
+        }
+
+        @Override
+        public String getAuthor() {
+            HeapString current = decode(author, slots.getLong(record + AUTHOR));
+            author = current;
+            return current.value;
+        }
+
+        // Returns the cached string if it was decoded at the offset, otherwise decodes the string there.
+        private HeapString decode(HeapString cached, long offset) {
+            return cached != null && cached.offset == offset ? cached : new HeapString(offset, readString(offset));
+        }
+
+        @Override
+        public boolean isBorrowed() {
+            return slots.getInt(record + BORROWED) != 0;
+        }
+
+        @Override
+        public boolean tryBorrow() {
+            return setBorrowed(0, 1);
+        }
+
+        @Override
+        public boolean tryReturn() {
+            return setBorrowed(1, 0);
+        }
+
+        private boolean setBorrowed(int expected, int value) {
+            synchronized (flagLock(record)) {
+                if (slots.getInt(record + BORROWED) != expected) {
+                    return false;
+                }
+                slots.putInt(record + BORROWED, value);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * A string decoded from the heap, with the offset it was read at.
+     */
+    private static final class HeapString {
+        final long offset;
+        final String value;
+
+        HeapString(long offset, String value) {
+            this.offset = offset;
+            this.value = value;
+        }
+    }
+}
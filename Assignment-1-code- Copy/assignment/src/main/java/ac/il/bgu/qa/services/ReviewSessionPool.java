@@ -0,0 +1,247 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool of review service sessions.
+ * Instead of closing a session after every fetch, callers lease a session, use it and return it,
+ * so the connection behind it is reused. Sessions are only closed when they fail, when they stay
+ * idle for longer than the idle timeout, or when the pool is closed.
+ * Expired sessions are evicted whenever a session is leased or returned; a pool that may go quiet
+ * should also have {@link #evictIdle()} called periodically, e.g. through {@link #scheduleEviction}.
+ */
+public class ReviewSessionPool {
+
+    // Creates a new session whenever no idle one is available.
+    private final Supplier<? extends ReviewService> factory;
+
+    // Limits the number of sessions leased at the same time.
+    private final Semaphore permits;
+
+    // How long a returned session may stay idle before it is closed, in nanoseconds.
+    private final long idleTimeoutNanos;
+
+    // Returned sessions, most recently used last, so the oldest ones are evicted first.
+    private final ArrayDeque<IdleSession> idle = new ArrayDeque<>();
+
+    // Set once the pool is closed; guarded by the idle deque.
+    private boolean closed;
+
+    // The periodic eviction, if one was scheduled; guarded by the idle deque.
+    private ScheduledFuture<?> eviction;
+
+    /**
+     * Constructs a new ReviewSessionPool object.
+     *
+     * @param factory     Creates a new review service session.
+     * @param maxSessions The maximum number of sessions leased at the same time.
+     * @param idleTimeout How long a returned session is kept for reuse. Zero closes sessions as soon as they are returned.
+     * @param unit        The unit of the idle timeout.
+     */
+    public ReviewSessionPool(Supplier<? extends ReviewService> factory, int maxSessions, long idleTimeout, TimeUnit unit) {
+        if (factory == null) {
+            throw new IllegalArgumentException("Invalid session factory.");
+        } else if (maxSessions <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of sessions.");
+        } else if (idleTimeout < 0) {
+            throw new IllegalArgumentException("Invalid idle timeout.");
+        }
+        this.factory = factory;
+        this.permits = new Semaphore(maxSessions, true);
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+    }
+
+    /**
+     * Creates a pool around a single review service that is closed after every use,
+     * which is how the library treated its review service before sessions were pooled.
+     *
+     * @param reviewService The review service to hand out.
+     * @return A pool that never keeps sessions idle.
+     */
+    public static ReviewSessionPool closingAfterUse(ReviewService reviewService) {
+        return new ReviewSessionPool(() -> reviewService, Integer.MAX_VALUE, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Leases a session, waiting for one to become available if the pool is at its limit.
+     * The session must be handed back with {@link #release} or {@link #invalidate}.
+     *
+     * @return A review service session.
+     * @throws ReviewException If the pool is closed, no session could be created, or the wait was interrupted.
+     */
+    public ReviewService lease() throws ReviewException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReviewException("Interrupted while waiting for a review session.");
+        }
+
+        try {
+            List<ReviewService> expired;
+            IdleSession reusable;
+            synchronized (idle) {
+                if (closed) {
+                    throw new ReviewException("Review session pool is closed.");
+                }
+                expired = evictExpired(System.nanoTime());
+                reusable = idle.pollLast();
+            }
+            closeAll(expired);
+            if (reusable != null) {
+                return reusable.session;
+            }
+
+            ReviewService session = factory.get();
+            if (session == null) {
+                throw new ReviewException("Review session could not be created.");
+            }
+            return session;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a healthy session to the pool for reuse.
+     *
+     * @param session The session obtained from {@link #lease()}.
+     */
+    public void release(ReviewService session) {
+        List<ReviewService> toClose = new ArrayList<>();
+        synchronized (idle) {
+            long now = System.nanoTime();
+            if (closed || idleTimeoutNanos == 0) {
+                toClose.add(session);
+            } else {
+                idle.addLast(new IdleSession(session, now));
+            }
+            toClose.addAll(evictExpired(now));
+        }
+        permits.release();
+        closeAll(toClose);
+    }
+
+    /**
+     * Closes a session that failed instead of returning it to the pool.
+     *
+     * @param session The session obtained from {@link #lease()}.
+     */
+    public void invalidate(ReviewService session) {
+        permits.release();
+        closeQuietly(session);
+    }
+
+    /**
+     * Closes the sessions that stayed idle for longer than the idle timeout.
+     * Without it, sessions returned before a quiet period stay open until the next lease or return.
+     *
+     * @return The number of sessions closed.
+     */
+    public int evictIdle() {
+        List<ReviewService> expired;
+        synchronized (idle) {
+            expired = evictExpired(System.nanoTime());
+        }
+        closeAll(expired);
+        return expired.size();
+    }
+
+    /**
+     * Runs {@link #evictIdle()} periodically, once per idle timeout, until the pool is closed.
+     * Does nothing if the pool keeps no idle sessions.
+     *
+     * @param scheduler The scheduler to run the eviction on.
+     */
+    public void scheduleEviction(ScheduledExecutorService scheduler) {
+        if (scheduler == null) {
+            throw new IllegalArgumentException("Invalid scheduler.");
+        }
+        synchronized (idle) {
+            if (closed) {
+                throw new IllegalStateException("Review session pool is closed.");
+            } else if (eviction != null) {
+                throw new IllegalStateException("Eviction is already scheduled.");
+            } else if (idleTimeoutNanos > 0) {
+                eviction = scheduler.scheduleWithFixedDelay(
+                        this::evictIdle, idleTimeoutNanos, idleTimeoutNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Closes every idle session and stops the periodic eviction. Sessions that are still leased are closed when they are returned.
+     */
+    public void close() {
+        List<ReviewService> toClose = new ArrayList<>();
+        synchronized (idle) {
+            closed = true;
+            if (eviction != null) {
+                eviction.cancel(false);
+            }
+            for (IdleSession entry : idle) {
+                toClose.add(entry.session);
+            }
+            idle.clear();
+        }
+        closeAll(toClose);
+    }
+
+    /**
+     * Counts the sessions waiting in the pool for reuse.
+     *
+     * @return The number of idle sessions.
+     */
+    public int idleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    // Removes the sessions idle for longer than the timeout. The caller holds the idle deque's lock and
+    // closes the returned sessions after releasing it, since closing is slow for remote backends.
+    private List<ReviewService> evictExpired(long now) {
+        List<ReviewService> expired = new ArrayList<>();
+        while (!idle.isEmpty() && now - idle.peekFirst().returnedAt >= idleTimeoutNanos) {
+            expired.add(idle.pollFirst().session);
+        }
+        return expired;
+    }
+
+    private static void closeAll(List<ReviewService> sessions) {
+        for (ReviewService session : sessions) {
+            closeQuietly(session);
+        }
+    }
+
+    private static void closeQuietly(ReviewService session) {
+        try {
+            session.close();
+        } catch (RuntimeException e) {
+            // The session is discarded either way.
+        }
+    }
+
+    /**
+     * A returned session and the time it was returned.
+     */
+    private static final class IdleSession {
+        final ReviewService session;
+        final long returnedAt;
+
+        IdleSession(ReviewService session, long returnedAt) {
+            this.session = session;
+            this.returnedAt = returnedAt;
+        }
+    }
+}
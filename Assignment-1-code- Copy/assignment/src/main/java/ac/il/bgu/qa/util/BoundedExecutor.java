@@ -0,0 +1,82 @@
+package ac.il.bgu.qa.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * An executor that limits how many of its tasks run at the same time with a semaphore instead of
+ * a thread count. Submitting never blocks: every task is handed to the underlying executor at
+ * once and waits for a permit on its own thread. This suits executors whose threads are cheap to
+ * park, such as one virtual thread per task, where the number of threads is no limit at all and
+ * the semaphore is what keeps the backends from being flooded.
+ */
+public final class BoundedExecutor implements Executor {
+
+    // The executor the tasks run on.
+    private final Executor delegate;
+
+    // One permit per task allowed to run at the same time.
+    private final Semaphore permits;
+
+    private final int maxConcurrency;
+
+    /**
+     * Constructs a new BoundedExecutor object.
+     *
+     * @param delegate       The executor the tasks run on.
+     * @param maxConcurrency The maximum number of tasks running at the same time.
+     */
+    public BoundedExecutor(Executor delegate, int maxConcurrency) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid executor.");
+        } else if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Invalid maximum concurrency.");
+        }
+        this.delegate = delegate;
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException("task");
+        }
+        delegate.execute(() -> {
+            // Uninterruptible, since a task that gave up here would leave its future incomplete forever.
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Retrieves the maximum number of tasks running at the same time.
+     *
+     * @return The concurrency bound.
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Counts the tasks currently running.
+     *
+     * @return The number of tasks holding a permit.
+     */
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * Estimates the number of tasks waiting for a permit.
+     *
+     * @return The number of waiting tasks.
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+}
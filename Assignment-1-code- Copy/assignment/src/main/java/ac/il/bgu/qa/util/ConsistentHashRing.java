@@ -0,0 +1,122 @@
+package ac.il.bgu.qa.util;
+
+import java.util.Arrays;
+
+/**
+ * A consistent-hash ring mapping numeric keys to numbered nodes.
+ * Every node is placed on the ring at a number of pseudo-random points, its virtual nodes, and a key
+ * belongs to the node owning the first point at or after the key's hash. Adding a node only takes
+ * over the keys that fall just before its own points, about 1/N of them, and leaves every other key
+ * where it was. Points are derived from the node number alone, so the mapping is the same in every
+ * process and across restarts.
+ */
+public final class ConsistentHashRing {
+
+    // Number of points each node is placed at.
+    private final int virtualNodes;
+
+    // The points of the ring in ascending order, and the node owning each; replaced as a whole on change.
+    private volatile Points points = new Points(new long[0], new int[0]);
+
+    /**
+     * Constructs a new, empty ConsistentHashRing object.
+     *
+     * @param virtualNodes The number of points each node is placed at; more points spread the keys more evenly.
+     */
+    public ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("Invalid number of virtual nodes.");
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * Places a node on the ring.
+     *
+     * @param node The number of the node, not on the ring yet.
+     */
+    public synchronized void add(int node) {
+        if (node < 0) {
+            throw new IllegalArgumentException("Invalid node.");
+        }
+        Points current = points;
+        for (int owner : current.owners) {
+            if (owner == node) {
+                throw new IllegalArgumentException("Node already on the ring.");
+            }
+        }
+
+        // Merge the new node's sorted points into the existing ones.
+        long[] added = new long[virtualNodes];
+        for (int i = 0; i < virtualNodes; i++) {
+            added[i] = spread(((long) node << 32) | i);
+        }
+        Arrays.sort(added);
+        int size = current.hashes.length + added.length;
+        long[] hashes = new long[size];
+        int[] owners = new int[size];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < size; k++) {
+            if (j == added.length || (i < current.hashes.length && current.hashes[i] <= added[j])) {
+                hashes[k] = current.hashes[i];
+                owners[k] = current.owners[i++];
+            } else {
+                hashes[k] = added[j++];
+                owners[k] = node;
+            }
+        }
+        points = new Points(hashes, owners);
+    }
+
+    /**
+     * Finds the node a key belongs to.
+     *
+     * @param key The key.
+     * @return The number of the owning node.
+     */
+    public int nodeFor(long key) {
+        Points current = points;
+        if (current.hashes.length == 0) {
+            throw new IllegalStateException("No nodes on the ring.");
+        }
+        int index = Arrays.binarySearch(current.hashes, spread(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        // Past the last point, the ring wraps around to the first one.
+        return current.owners[index == current.hashes.length ? 0 : index];
+    }
+
+    /**
+     * Counts the nodes on the ring.
+     *
+     * @return The number of nodes.
+     */
+    public int size() {
+        return points.hashes.length / virtualNodes;
+    }
+
+    private static long spread(long key) {
+        // Finalization step of MurmurHash3, so sequential keys and node numbers scatter over the ring.
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * The points of the ring, published together.
+     */
+    private static final class Points {
+        final long[] hashes;
+        final int[] owners;
+
+        Points(long[] hashes, int[] owners) {
+            this.hashes = hashes;
+            this.owners = owners;
+        }
+    }
+}
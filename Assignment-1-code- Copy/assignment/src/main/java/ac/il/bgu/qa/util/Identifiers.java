@@ -0,0 +1,122 @@
+package ac.il.bgu.qa.util;
+
+/**
+ * Parses ISBNs and user Ids into canonical numeric keys, and formats keys back.
+ * Every parse method runs in a single pass over the input and allocates nothing, so they are safe
+ * to call on every request. Hyphenated and plain forms of the same ISBN map to the same key.
+ */
+public final class Identifiers {
+
+    /**
+     * The key returned for input that cannot be parsed. Valid keys are always non-negative.
+     */
+    public static final long INVALID = -1L;
+
+    private Identifiers() {
+    }
+
+    /**
+     * Parses and validates an ISBN-13.
+     * Hyphens are ignored; the remaining characters must be exactly 13 digits with a correct check digit.
+     *
+     * @param ISBN The International Standard Book Number to be parsed.
+     * @return The numeric key of the ISBN, or {@link #INVALID} if it isn't a valid ISBN-13.
+     */
+    public static long parseISBN(String ISBN) {
+        if (ISBN == null) {
+            return INVALID;
+        }
+
+        long key = 0;
+        int digits = 0;
+        int sum = 0;
+        for (int i = 0; i < ISBN.length(); i++) {
+            char c = ISBN.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            if (c < '0' || c > '9' || digits == 13) {
+                return INVALID;
+            }
+
+            // Odd position numbers are multiplied by 1, even position numbers by 3.
+            int digit = c - '0';
+            if (digits < 12) {
+                sum += (digits & 1) == 0 ? digit : digit * 3;
+            } else if ((10 - sum % 10) % 10 != digit) {
+                return INVALID;
+            }
+            key = key * 10 + digit;
+            digits++;
+        }
+        return digits == 13 ? key : INVALID;
+    }
+
+    /**
+     * Parses an ISBN-13 into its numeric key without verifying the check digit.
+     * Hyphens are ignored; the remaining characters must be exactly 13 digits.
+     *
+     * @param ISBN The International Standard Book Number to be parsed.
+     * @return The numeric key of the ISBN, or {@link #INVALID} if it isn't 13 digits long.
+     */
+    public static long isbnKey(String ISBN) {
+        if (ISBN == null) {
+            return INVALID;
+        }
+
+        long key = 0;
+        int digits = 0;
+        for (int i = 0; i < ISBN.length(); i++) {
+            char c = ISBN.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            if (c < '0' || c > '9' || digits == 13) {
+                return INVALID;
+            }
+            key = key * 10 + (c - '0');
+            digits++;
+        }
+        return digits == 13 ? key : INVALID;
+    }
+
+    /**
+     * Parses and validates a user Id, which must consist of exactly 12 digits.
+     *
+     * @param userId The user Id to be parsed.
+     * @return The numeric key of the user Id, or {@link #INVALID} if it isn't valid.
+     */
+    public static long parseUserId(String userId) {
+        if (userId == null || userId.length() != 12) {
+            return INVALID;
+        }
+
+        long key = 0;
+        for (int i = 0; i < 12; i++) {
+            char c = userId.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+
+    /**
+     * Formats the numeric key of an ISBN-13 as its 13 digits, without hyphens.
+     *
+     * @param key The numeric key of the ISBN.
+     * @return The plain form of the ISBN.
+     */
+    public static String formatISBN(long key) {
+        if (key < 0 || key > 9_999_999_999_999L) {
+            throw new IllegalArgumentException("Invalid ISBN key.");
+        }
+        char[] digits = new char[13];
+        for (int i = 12; i >= 0; i--) {
+            digits[i] = (char) ('0' + key % 10);
+            key /= 10;
+        }
+        return new String(digits);
+    }
+}
@@ -0,0 +1,117 @@
+package ac.il.bgu.qa.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed table of locks, picked by hashing a numeric key.
+ * Operations on the same key always take the same lock and are serialized, while operations on
+ * different keys usually take different locks and run in parallel. Every acquisition that had to
+ * wait is counted, per stripe, so the number of stripes can be tuned to the observed contention.
+ */
+public final class LockStripes {
+
+    // The locks; their number is a power of two.
+    private final ReentrantLock[] locks;
+
+    // Mask selecting a stripe out of the spread hash.
+    private final int mask;
+
+    // Number of acquisitions of each stripe that found it held by another thread.
+    private final AtomicLongArray contended;
+
+    private final LongAdder acquisitions = new LongAdder();
+
+    /**
+     * Constructs a new LockStripes object.
+     *
+     * @param stripes The minimum number of locks; rounded up to a power of two.
+     */
+    public LockStripes(int stripes) {
+        if (stripes <= 0 || stripes > 1 << 20) {
+            throw new IllegalArgumentException("Invalid number of stripes.");
+        }
+        int count = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.locks = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = count - 1;
+        this.contended = new AtomicLongArray(count);
+    }
+
+    /**
+     * Acquires the lock of a key, waiting for it if needed. The caller must unlock the returned lock.
+     *
+     * @param key The key to lock.
+     * @return The acquired lock.
+     */
+    public ReentrantLock lock(long key) {
+        int stripe = stripeOf(key);
+        ReentrantLock lock = locks[stripe];
+        if (!lock.tryLock()) {
+            contended.incrementAndGet(stripe);
+            lock.lock();
+        }
+        acquisitions.increment();
+        return lock;
+    }
+
+    /**
+     * Finds the stripe a key maps to.
+     *
+     * @param key The key.
+     * @return The index of the key's lock.
+     */
+    public int stripeOf(long key) {
+        // Finalization step of MurmurHash3, so neighbouring keys land on different stripes.
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    /**
+     * Counts the locks in the table.
+     *
+     * @return The number of stripes.
+     */
+    public int getStripeCount() {
+        return locks.length;
+    }
+
+    /**
+     * Counts every lock acquisition.
+     *
+     * @return The number of acquisitions.
+     */
+    public long getAcquisitionCount() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * Counts the acquisitions that had to wait for another thread.
+     *
+     * @return The number of contended acquisitions over all stripes.
+     */
+    public long getContendedCount() {
+        long total = 0;
+        for (int i = 0; i < contended.length(); i++) {
+            total += contended.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Counts the acquisitions of one stripe that had to wait for another thread.
+     *
+     * @param stripe The index of the stripe.
+     * @return The number of contended acquisitions of the stripe.
+     */
+    public long getContendedCount(int stripe) {
+        return contended.get(stripe);
+    }
+}
@@ -0,0 +1,397 @@
+package ac.il.bgu.qa.util;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A concurrent hash map keyed by non-negative primitive longs.
+ * Entries are kept in open-addressing tables (linear probing) split into independently
+ * locked segments, so lookups never box the key and never allocate an entry object.
+ * Reads are optimistic and only fall back to a read lock when they race with a writer.
+ *
+ * @param <V> The type of the mapped values.
+ */
+public final class LongKeyedMap<V> {
+
+    // Marker for a free slot. Valid keys are always non-negative.
+    private static final long EMPTY = -1L;
+
+    // Tables are resized once they are more than three quarters full.
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // The independently locked segments of the map.
+    private final Segment<V>[] segments;
+
+    // Shift and mask selecting a segment out of the top bits of the mixed key. Slots are picked
+    // from the low 32 bits, so the two never share a bit however large a segment's table grows.
+    private final int segmentShift;
+    private final int segmentMask;
+
+    /**
+     * Constructs a new, empty map with a default capacity.
+     */
+    public LongKeyedMap() {
+        this(1024);
+    }
+
+    /**
+     * Constructs a new, empty map sized for the given number of entries.
+     *
+     * @param expectedSize The number of entries the map is expected to hold.
+     */
+    public LongKeyedMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Invalid expected size.");
+        }
+
+        // Use roughly four segments per core to keep writer contention low.
+        int segmentCount = powerOfTwoAtLeast(Runtime.getRuntime().availableProcessors() * 4);
+        int perSegment = (int) Math.min(1 << 30, (long) (expectedSize / segmentCount / LOAD_FACTOR) + 1);
+
+        @SuppressWarnings("unchecked")
+        Segment<V>[] segments = (Segment<V>[]) new Segment<?>[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(powerOfTwoAtLeast(Math.max(perSegment, 8)));
+        }
+        this.segments = segments;
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(segmentCount);
+        this.segmentMask = segmentCount - 1;
+    }
+
+    /**
+     * Retrieves the value mapped to a key.
+     *
+     * @param key The key to look up.
+     * @return The mapped value, or null if the key is not present.
+     */
+    public V get(long key) {
+        checkKey(key);
+        long mixed = mix(key);
+        int hash = (int) mixed;
+        return segmentFor(mixed).get(key, hash);
+    }
+
+    /**
+     * Checks whether a key is present in the map.
+     *
+     * @param key The key to look up.
+     * @return true if the key is mapped, otherwise false.
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps a key to a value, replacing any previous mapping.
+     *
+     * @param key   The key to map.
+     * @param value The value to associate with the key.
+     * @return The previously mapped value, or null if there was none.
+     */
+    public V put(long key, V value) {
+        checkKey(key);
+        checkValue(value);
+        long mixed = mix(key);
+        int hash = (int) mixed;
+        return segmentFor(mixed).put(key, hash, value, false);
+    }
+
+    /**
+     * Maps a key to a value only if the key is not already present.
+     *
+     * @param key   The key to map.
+     * @param value The value to associate with the key.
+     * @return The existing value if the key was present (the map is unchanged), otherwise null.
+     */
+    public V putIfAbsent(long key, V value) {
+        checkKey(key);
+        checkValue(value);
+        long mixed = mix(key);
+        int hash = (int) mixed;
+        return segmentFor(mixed).put(key, hash, value, true);
+    }
+
+    /**
+     * Removes the mapping of a key.
+     *
+     * @param key The key to remove.
+     * @return The removed value, or null if the key was not present.
+     */
+    public V remove(long key) {
+        checkKey(key);
+        long mixed = mix(key);
+        int hash = (int) mixed;
+        return segmentFor(mixed).remove(key, hash, null);
+    }
+
+    /**
+     * Removes the mapping of a key only if it is currently mapped to a given value.
+     *
+     * @param key   The key to remove.
+     * @param value The value the key must be mapped to.
+     * @return true if the mapping was removed, otherwise false.
+     */
+    public boolean remove(long key, V value) {
+        checkKey(key);
+        checkValue(value);
+        long mixed = mix(key);
+        int hash = (int) mixed;
+        return segmentFor(mixed).remove(key, hash, value) != null;
+    }
+
+    /**
+     * Counts the entries in the map. The count is exact only when no writers are active.
+     *
+     * @return The number of entries in the map.
+     */
+    public int size() {
+        long size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Passes every entry of the map to an action. Each segment is copied under its read lock and the
+     * action runs on the copy, so writers are only held up for the copy of one segment at a time.
+     * Entries written during the iteration may or may not be seen.
+     *
+     * @param action The action to perform on each entry.
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        for (Segment<V> segment : segments) {
+            long[] keys;
+            Object[] values;
+            long stamp = segment.readLock();
+            try {
+                keys = segment.table.keys.clone();
+                values = segment.table.values.clone();
+            } finally {
+                segment.unlockRead(stamp);
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    action.accept(keys[i], Segment.<V>cast(values[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * An action performed on a key and its value, without boxing the key.
+     *
+     * @param <V> The type of the mapped values.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        /**
+         * Performs the action.
+         *
+         * @param key   The key of the entry.
+         * @param value The value of the entry.
+         */
+        void accept(long key, V value);
+    }
+
+    private Segment<V> segmentFor(long mixed) {
+        // With a single segment the shift is 64, which Java ignores; the mask of 0 still selects it.
+        return segments[(int) (mixed >>> segmentShift) & segmentMask];
+    }
+
+    private static void checkKey(long key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid key.");
+        }
+    }
+
+    private static void checkValue(Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Invalid value.");
+        }
+    }
+
+    private static long mix(long key) {
+        // Finalization step of MurmurHash3, so sequential keys land in scattered segments and slots.
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    // The hash a slot is picked from: the low half of the mixed key.
+    private static int spread(long key) {
+        return (int) mix(key);
+    }
+
+    private static int powerOfTwoAtLeast(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * The key and value arrays of a segment, swapped as a unit on resize so that
+     * optimistic readers always see arrays of matching length.
+     */
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+    }
+
+    /**
+     * A single open-addressing table guarded by its own lock.
+     */
+    private static final class Segment<V> extends StampedLock {
+        private static final long serialVersionUID = 1L;
+
+        Table table;
+        volatile int size;
+
+        Segment(int capacity) {
+            table = new Table(capacity);
+        }
+
+        V get(long key, int hash) {
+            long stamp = tryOptimisticRead();
+            if (stamp != 0L) {
+                Object value = find(table, key, hash);
+                if (validate(stamp)) {
+                    return cast(value);
+                }
+            }
+
+            // A writer raced with the optimistic read; retry under the read lock.
+            stamp = readLock();
+            try {
+                return cast(find(table, key, hash));
+            } finally {
+                unlockRead(stamp);
+            }
+        }
+
+        V put(long key, int hash, V value, boolean onlyIfAbsent) {
+            long stamp = writeLock();
+            try {
+                Table t = table;
+                int mask = t.keys.length - 1;
+                int i = hash & mask;
+                while (t.keys[i] != EMPTY) {
+                    if (t.keys[i] == key) {
+                        V previous = cast(t.values[i]);
+                        if (!onlyIfAbsent) {
+                            t.values[i] = value;
+                        }
+                        return previous;
+                    }
+                    i = (i + 1) & mask;
+                }
+
+                t.keys[i] = key;
+                t.values[i] = value;
+                size = size + 1;
+                if (size > t.keys.length * LOAD_FACTOR) {
+                    resize();
+                }
+                return null;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        V remove(long key, int hash, Object expected) {
+            long stamp = writeLock();
+            try {
+                Table t = table;
+                int mask = t.keys.length - 1;
+                int i = hash & mask;
+                while (t.keys[i] != key) {
+                    if (t.keys[i] == EMPTY) {
+                        return null;
+                    }
+                    i = (i + 1) & mask;
+                }
+
+                if (expected != null && !expected.equals(t.values[i])) {
+                    return null;
+                }
+                V removed = cast(t.values[i]);
+                shiftBack(t, i);
+                size = size - 1;
+                return removed;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        private void resize() {
+            Table old = table;
+            Table grown = new Table(old.keys.length << 1);
+            int mask = grown.keys.length - 1;
+            for (int j = 0; j < old.keys.length; j++) {
+                long key = old.keys[j];
+                if (key != EMPTY) {
+                    int i = spread(key) & mask;
+                    while (grown.keys[i] != EMPTY) {
+                        i = (i + 1) & mask;
+                    }
+                    grown.keys[i] = key;
+                    grown.values[i] = old.values[j];
+                }
+            }
+            table = grown;
+        }
+
+        // Backward-shift deletion: pull later entries of the probe chain into the hole
+        // so lookups never need tombstones.
+        private static void shiftBack(Table t, int hole) {
+            int mask = t.keys.length - 1;
+            int i = hole;
+            while (true) {
+                i = (i + 1) & mask;
+                long key = t.keys[i];
+                if (key == EMPTY) {
+                    break;
+                }
+                int home = spread(key) & mask;
+                // Move the entry only if the hole lies on its probe path from its home slot.
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    t.keys[hole] = key;
+                    t.values[hole] = t.values[i];
+                    hole = i;
+                }
+            }
+            t.keys[hole] = EMPTY;
+            t.values[hole] = null;
+        }
+
+        private static Object find(Table t, long key, int hash) {
+            long[] keys = t.keys;
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            // Bound the probe so a racing writer can never trap an optimistic reader.
+            for (int probes = 0; probes <= mask; probes++) {
+                long k = keys[i];
+                if (k == key) {
+                    return t.values[i];
+                }
+                if (k == EMPTY) {
+                    return null;
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> V cast(Object value) {
+            return (V) value;
+        }
+    }
+}
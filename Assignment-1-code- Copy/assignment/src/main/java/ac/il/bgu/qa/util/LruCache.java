@@ -0,0 +1,325 @@
+package ac.il.bgu.qa.util;
+
+import java.util.Arrays;
+
+/**
+ * A thread-safe cache keyed by non-negative primitive longs, bounded to a maximum number of entries.
+ * Entries are split into independently locked segments, each evicting its own least recently used
+ * entry when full, so readers of different keys don't serialize on one lock and lookups never box
+ * the key. Small caches use a single segment and therefore keep exact LRU order; larger ones are
+ * approximately LRU, since an eviction only considers the entries of one segment.
+ *
+ * @param <V> The type of the values.
+ */
+public final class LruCache<V> {
+
+    // Every segment holds at least this many entries, so small caches keep exact LRU order.
+    private static final int MIN_SEGMENT_ENTRIES = 64;
+
+    // The independently locked segments of the cache.
+    private final Segment<V>[] segments;
+
+    // Shift and mask selecting a segment out of the top bits of the spread hash; the slot index
+    // within a segment uses the low bits, so the two never overlap.
+    private final int segmentShift;
+    private final int segmentMask;
+
+    /**
+     * Constructs a new, empty cache.
+     *
+     * @param maxEntries The maximum number of entries the cache holds.
+     */
+    public LruCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of entries.");
+        }
+
+        // Roughly four segments per core, but never so many that a segment gets too small.
+        int bySize = Integer.highestOneBit(Math.max(1, maxEntries / MIN_SEGMENT_ENTRIES));
+        int byCores = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+        int segmentCount = Math.min(bySize, byCores);
+
+        @SuppressWarnings("unchecked")
+        Segment<V>[] segments = (Segment<V>[]) new Segment<?>[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // Share the bound exactly, so the segments together never hold more than maxEntries.
+            segments[i] = new Segment<>(maxEntries / segmentCount + (i < maxEntries % segmentCount ? 1 : 0));
+        }
+        this.segments = segments;
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        this.segmentMask = segmentCount - 1;
+    }
+
+    /**
+     * Retrieves the value of a key and marks the entry as recently used.
+     *
+     * @param key The key to look up.
+     * @return The cached value, or null if the key is not cached.
+     */
+    public V get(long key) {
+        int hash = spread(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    /**
+     * Caches a value, evicting the least recently used entry of its segment if the segment is full.
+     *
+     * @param key   The key to cache the value under.
+     * @param value The value to cache.
+     */
+    public void put(long key, V value) {
+        int hash = spread(key);
+        segmentFor(hash).put(key, hash, value);
+    }
+
+    /**
+     * Removes a key from the cache.
+     *
+     * @param key The key to remove.
+     * @return The removed value, or null if the key was not cached.
+     */
+    public V remove(long key) {
+        int hash = spread(key);
+        return segmentFor(hash).remove(key, hash);
+    }
+
+    /**
+     * Removes every entry from the cache.
+     */
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Counts the cached entries.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Counts the entries that were evicted to respect the size bound.
+     *
+     * @return The number of evictions.
+     */
+    public long evictions() {
+        long evictions = 0;
+        for (Segment<V> segment : segments) {
+            evictions += segment.evictions();
+        }
+        return evictions;
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        // With a single segment the shift is 32, which Java ignores; the mask of 0 still selects it.
+        return segments[(hash >>> segmentShift) & segmentMask];
+    }
+
+    private static int spread(long key) {
+        // Finalization step of MurmurHash3, so neighbouring keys spread over segments and slots.
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * One segment of the cache: a fixed pool of entries, a linear-probing table pointing into it,
+     * and a doubly linked list through the entries from the most to the least recently used one.
+     * Every method is guarded by the segment itself.
+     *
+     * @param <V> The type of the values.
+     */
+    private static final class Segment<V> {
+
+        // The entries, addressed by their index in the pool.
+        private final long[] keys;
+        private final Object[] values;
+        private final int[] prev;
+        private final int[] next;
+
+        // Slots holding an entry index plus one, or 0 if free; at least twice the pool size, so probes end quickly.
+        private final int[] table;
+        private final int tableMask;
+
+        // Most and least recently used entries, or -1 if the segment is empty.
+        private int head = -1;
+        private int tail = -1;
+
+        // Entries in use, entries ever handed out, and the first free entry, chained through next.
+        private int size;
+        private int used;
+        private int free = -1;
+
+        private long evictions;
+
+        Segment(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+            this.prev = new int[capacity];
+            this.next = new int[capacity];
+            int tableSize = Integer.highestOneBit(Math.max(1, capacity * 2 - 1)) << 1;
+            this.table = new int[tableSize];
+            this.tableMask = tableSize - 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V get(long key, int hash) {
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return null;
+            }
+            int entry = table[slot] - 1;
+            moveToFront(entry);
+            return (V) values[entry];
+        }
+
+        synchronized void put(long key, int hash, V value) {
+            int slot = find(key, hash);
+            if (slot >= 0) {
+                int entry = table[slot] - 1;
+                values[entry] = value;
+                moveToFront(entry);
+                return;
+            }
+            if (size == keys.length) {
+                int eldest = tail;
+                removeEntry(find(keys[eldest], spread(keys[eldest])), eldest);
+                evictions++;
+                // Removing shifts later entries back in the table, so the free slot may have moved.
+                slot = find(key, hash);
+            }
+
+            int entry;
+            if (free >= 0) {
+                entry = free;
+                free = next[entry];
+            } else {
+                entry = used++;
+            }
+            keys[entry] = key;
+            values[entry] = value;
+            table[-slot - 1] = entry + 1;
+            linkFront(entry);
+            size++;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V remove(long key, int hash) {
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return null;
+            }
+            int entry = table[slot] - 1;
+            V value = (V) values[entry];
+            removeEntry(slot, entry);
+            return value;
+        }
+
+        synchronized void clear() {
+            Arrays.fill(table, 0);
+            Arrays.fill(values, null);
+            head = -1;
+            tail = -1;
+            size = 0;
+            used = 0;
+            free = -1;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long evictions() {
+            return evictions;
+        }
+
+        // Finds the slot of a key, or minus one minus the free slot where it would be inserted.
+        private int find(long key, int hash) {
+            int slot = hash & tableMask;
+            while (table[slot] != 0) {
+                if (keys[table[slot] - 1] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & tableMask;
+            }
+            return -slot - 1;
+        }
+
+        private void removeEntry(int slot, int entry) {
+            deleteSlot(slot);
+            unlink(entry);
+            values[entry] = null;
+            next[entry] = free;
+            free = entry;
+            size--;
+        }
+
+        // Frees a slot and shifts the following entries of the probe run back, so no lookup stops early.
+        private void deleteSlot(int slot) {
+            int hole = slot;
+            table[hole] = 0;
+            int current = hole;
+            while (true) {
+                current = (current + 1) & tableMask;
+                if (table[current] == 0) {
+                    return;
+                }
+                int home = spread(keys[table[current] - 1]) & tableMask;
+                // Leave the entry if its home lies cyclically after the hole and up to its current slot.
+                boolean reachable = hole <= current
+                        ? hole < home && home <= current
+                        : hole < home || home <= current;
+                if (!reachable) {
+                    table[hole] = table[current];
+                    table[current] = 0;
+                    hole = current;
+                }
+            }
+        }
+
+        private void linkFront(int entry) {
+            prev[entry] = -1;
+            next[entry] = head;
+            if (head >= 0) {
+                prev[head] = entry;
+            }
+            head = entry;
+            if (tail < 0) {
+                tail = entry;
+            }
+        }
+
+        private void unlink(int entry) {
+            int before = prev[entry];
+            int after = next[entry];
+            if (before >= 0) {
+                next[before] = after;
+            } else {
+                head = after;
+            }
+            if (after >= 0) {
+                prev[after] = before;
+            } else {
+                tail = before;
+            }
+        }
+
+        private void moveToFront(int entry) {
+            if (head != entry) {
+                unlink(entry);
+                linkFront(entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ac.il.bgu.qa.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads from code that must still compile and run on Java 8.
+ * The executor factory is looked up reflectively once; on runtimes older than Java 21
+ * virtual threads are reported as unsupported instead of failing to load.
+ */
+public final class VirtualThreads {
+
+    // Executors.newVirtualThreadPerTaskExecutor(), or null before Java 21.
+    private static final Method NEW_EXECUTOR = findFactory();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Checks whether the running JVM offers virtual threads.
+     *
+     * @return true on Java 21 or later, otherwise false.
+     */
+    public static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for every task.
+     *
+     * @return The executor.
+     * @throws UnsupportedOperationException If the running JVM has no virtual threads.
+     */
+    public static ExecutorService newExecutor() {
+        if (NEW_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later.");
+        }
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("Virtual threads are not accessible.", e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Virtual thread executor could not be created.", e.getCause());
+        }
+    }
+
+    private static Method findFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -4,15 +4,25 @@ import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.metrics.LibraryMetrics;
 import ac.il.bgu.qa.services.*;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.*;
 import org.mockito.internal.matchers.Null;
 
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.stream.LongStream;
 
 public class TestLibrary {
 
@@ -20,7 +30,8 @@ public class TestLibrary {
     User mockUser;
     @Mock
     Book mockBook;
-    @Mock
+    // Calls the default conditional writes, which are built on the stubbed lookups and writes.
+    @Mock(answer = Answers.CALLS_REAL_METHODS)
     DatabaseService mockDatabaseService;
     @Mock
     ReviewService mockReviewService;
@@ -189,11 +200,248 @@ public class TestLibrary {
         // 4. Assertion
         verify(mockDatabaseService,times(1)).getBookByISBN(ISBN);
         verify(mockBook,times(1)).isBorrowed();
-        verify(mockBook,times(1)).getAuthor();
-        verify(mockBook,times(2)).getTitle();
+        // The author, title and ISBN are read again to index the stored book.
+        verify(mockBook,times(2)).getAuthor();
+        verify(mockBook,times(3)).getTitle();
         verify(mockBook,times(3)).getISBN();
         verify(mockDatabaseService,times(1)).addBook(ISBN,mockBook);
     }
+    /* ADD BOOKS TESTS */
+    @Test
+    public void givenNullBatch_whenAddBooks_ThrowException() {
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService);
+        // 3. Action
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> library.addBooks((List<Book>) null));
+        // 4. Assertion
+        assertEquals(exception.getMessage(), "Invalid books.");
+    }
+    @Test
+    public void givenMixedBatch_whenAddBooks_RejectsInvalidRecordsAndAddsTheRest() {
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService);
+        Book valid = new Book(ISBN, "Alice In Wonderland", "Lewis Carroll");
+        Book existing = new Book("978-0-306-40615-7", "Existing", "Lewis Carroll");
+        Book invalidAuthor = new Book("978-3-16-148410-0", "Title", "Lewis--Carroll");
+        Book duplicate = new Book(ISBN, "Alice In Wonderland", "Lewis Carroll");
+        // 2. Stubbing
+        doReturn(Collections.singleton(ISBN)).when(mockDatabaseService).addBooksIfAbsent(anyMap());
+        // 3. Action
+        BulkAddResult result = library.addBooks(Arrays.asList(valid, null, existing, invalidAuthor, duplicate));
+        // 4. Assertion
+        assertEquals(1, result.getAdded());
+        assertEquals(4, result.getRejections().size());
+        assertEquals(1, result.getRejections().get(0).getIndex());
+        assertEquals("Invalid book.", result.getRejections().get(0).getReason());
+        assertEquals("Book already exists.", result.getRejections().get(1).getReason());
+        assertEquals("Invalid author.", result.getRejections().get(2).getReason());
+        assertEquals("Duplicate book in batch.", result.getRejections().get(3).getReason());
+        Map<String, Book> submitted = new LinkedHashMap<>();
+        submitted.put(ISBN, valid);
+        submitted.put("978-0-306-40615-7", existing);
+        verify(mockDatabaseService,times(1)).addBooksIfAbsent(submitted);
+        verify(mockDatabaseService,never()).getBooksByISBN(anyCollection());
+        verify(mockDatabaseService,never()).getBookByISBN(anyString());
+        verify(mockDatabaseService,never()).addBook(anyString(),any());
+    }
+    @Test
+    public void givenBookAddedConcurrently_whenAddBooks_KeepsItAndIndexesItOnce() {
+        // 1. Arrange
+        Book concurrent = new Book(ISBN, "Harry Potter", "J. K. Rowling");
+        Library[] other = new Library[1];
+        InMemoryDatabaseService databaseService = new InMemoryDatabaseService() {
+            @Override
+            public Set<String> addBooksIfAbsent(Map<String, Book> books) {
+                // Another library adds the same ISBN between validation and the write.
+                other[0].addBook(concurrent);
+                return super.addBooksIfAbsent(books);
+            }
+        };
+        Library library = new Library(databaseService, mockReviewService);
+        other[0] = library;
+        Book late = new Book(ISBN, "Harry Potter", "J. K. Rowling");
+        // 3. Action
+        BulkAddResult result = library.addBooks(Collections.singletonList(late));
+        // 4. Assertion
+        assertEquals(0, result.getAdded());
+        assertEquals("Book already exists.", result.getRejections().get(0).getReason());
+        assertSame(concurrent, databaseService.getBookByISBN(ISBN));
+        assertEquals(Collections.singletonList(concurrent), library.findBooksByAuthor("J. K. Rowling", 0, 10, false));
+    }
+    @Test
+    public void givenLargeStream_whenAddBooks_AllBooksAreAddedInChunks() {
+        // 1. Arrange
+        InMemoryDatabaseService databaseService = new InMemoryDatabaseService();
+        Library library = new Library(databaseService, mockReviewService);
+        // 3. Action
+        BulkAddResult result = library.addBooks(LongStream.range(0, 25_000)
+                .mapToObj(i -> new Book(isbn13(978_000_000_000L + i), "Title " + i, "Lewis Carroll")));
+        // 4. Assertion
+        assertEquals(25_000, result.getAdded());
+        assertTrue(result.getRejections().isEmpty());
+        assertEquals(25_000, databaseService.bookCount());
+    }
+    /* FIND BOOKS BY AUTHOR TESTS */
+    @Test
+    public void givenBooksOfAuthor_whenFindBooksByAuthor_ReturnsPageInInsertionOrder() {
+        // 1. Arrange
+        Library library = new Library(new InMemoryDatabaseService(), mockReviewService);
+        for (int i = 0; i < 5; i++) {
+            library.addBook(new Book(isbn13(978_000_000_000L + i), "Title " + i, "Lewis Carroll"));
+        }
+        library.addBook(new Book(ISBN, "Harry Potter", "J. K. Rowling"));
+        // 3. Action
+        List<Book> page = library.findBooksByAuthor("lewis  CARROLL", 1, 3, false);
+        // 4. Assertion
+        assertEquals(3, page.size());
+        assertEquals("Title 1", page.get(0).getTitle());
+        assertEquals("Title 3", page.get(2).getTitle());
+        assertTrue(library.findBooksByAuthor("Lewis Carroll", 5, 3, false).isEmpty());
+        assertTrue(library.findBooksByAuthor("Edgar Poe", 0, 3, false).isEmpty());
+    }
+    @Test
+    public void givenBorrowedBooks_whenFindAvailableBooksByAuthor_SkipsThem() {
+        // 1. Arrange
+        InMemoryDatabaseService databaseService = new InMemoryDatabaseService();
+        Library library = new Library(databaseService, mockReviewService);
+        library.addBooks(LongStream.range(0, 6)
+                .mapToObj(i -> new Book(isbn13(978_000_000_000L + i), "Title " + i, "Lewis Carroll")));
+        databaseService.getBookByISBN(isbn13(978_000_000_000L)).borrow();
+        databaseService.getBookByISBN(isbn13(978_000_000_002L)).borrow();
+        // 3. Action
+        List<Book> page = library.findBooksByAuthor("Lewis Carroll", 1, 10, true);
+        // 4. Assertion
+        assertEquals(3, page.size());
+        assertEquals("Title 3", page.get(0).getTitle());
+        assertEquals("Title 5", page.get(2).getTitle());
+    }
+    @Test
+    public void givenBooksAlreadyInDatabase_whenFindBooksByAuthor_ReturnsThem() {
+        // 1. Arrange
+        InMemoryDatabaseService databaseService = new InMemoryDatabaseService();
+        databaseService.addBook(ISBN, new Book(ISBN, "Harry Potter", "J. K. Rowling"));
+        new Library(databaseService, mockReviewService)
+                .addBook(new Book(isbn13(978_000_000_001L), "The Casual Vacancy", "J. K. Rowling"));
+        // 3. Action
+        Library library = new Library(databaseService, mockReviewService);
+        List<Book> found = library.findBooksByAuthor("J. K. Rowling", 0, 10, false);
+        // 4. Assertion
+        assertEquals(2, found.size());
+    }
+    @Test
+    public void givenDatabaseKeyedByGivenISBN_whenFindBooksByAuthor_ReadBackUnderSameISBN() {
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService);
+        Book book = new Book(ISBN, "Harry Potter", "J. K. Rowling");
+        library.addBook(book);
+        // 2. Stubbing
+        // Only the hyphenated form the book was written with finds it.
+        doReturn(book).when(mockDatabaseService).getBookByISBN(ISBN);
+        // 3. Action
+        List<Book> found = library.findBooksByAuthor("J. K. Rowling", 0, 10, false);
+        // 4. Assertion
+        assertEquals(Collections.singletonList(book), found);
+        verify(mockDatabaseService, never()).getBookByISBN("9780545010221");
+    }
+    /* TITLE SEARCH TESTS */
+    @Test
+    public void givenAddedBooks_whenAutocompleteTitles_ReturnsMatchingBooks() {
+        // 1. Arrange
+        Library library = new Library(new InMemoryDatabaseService(), mockReviewService);
+        library.addBook(new Book(ISBN, "Harry Potter and the Chamber of Secrets", "J. K. Rowling"));
+        library.addBooks(Arrays.asList(
+                new Book(isbn13(978_000_000_001L), "Harry Potter and the Goblet of Fire", "J. K. Rowling"),
+                new Book(isbn13(978_000_000_002L), "Alice In Wonderland", "Lewis Carroll")));
+        // 3. Action
+        List<Book> found = library.autocompleteTitles("harry potter and the g", 10);
+        // 4. Assertion
+        assertEquals(1, found.size());
+        assertEquals("Harry Potter and the Goblet of Fire", found.get(0).getTitle());
+        assertEquals(2, library.autocompleteTitles("HARRY", 10).size());
+        assertEquals(1, library.autocompleteTitles("harry", 1).size());
+        assertTrue(library.autocompleteTitles("Bob", 10).isEmpty());
+    }
+    @Test
+    public void givenBooksAlreadyInDatabase_whenSearchTitles_ReturnsThem() {
+        // 1. Arrange
+        InMemoryDatabaseService databaseService = new InMemoryDatabaseService();
+        databaseService.addBook(ISBN, new Book(ISBN, "Harry Potter and the Chamber of Secrets", "J. K. Rowling"));
+        // 3. Action
+        Library library = new Library(databaseService, mockReviewService);
+        // 4. Assertion
+        assertEquals(1, library.searchBooksByTitle("chamber", 10).size());
+        assertEquals(1, library.autocompleteTitles("harry potter", 10).size());
+    }
+    @Test
+    public void givenManyCandidatesBeyondTrieDepth_whenAutocompleteTitles_PageUntilLimitIsFilled() {
+        // 1. Arrange
+        Library library = new Library(new InMemoryDatabaseService(), mockReviewService);
+        for (int i = 0; i < 5; i++) {
+            library.addBook(new Book(isbn13(978_000_000_000L + i), "A Very Long Other Story " + i, "Lewis Carroll"));
+        }
+        for (int i = 5; i < 8; i++) {
+            library.addBook(new Book(isbn13(978_000_000_000L + i), "A Very Long Title " + i, "Lewis Carroll"));
+        }
+        // 3. Action
+        List<Book> found = library.autocompleteTitles("A Very Long Title", 2);
+        // 4. Assertion
+        assertEquals(2, found.size());
+        assertEquals("A Very Long Title 5", found.get(0).getTitle());
+        assertEquals(3, library.autocompleteTitles("a very long title", 10).size());
+    }
+    @Test
+    public void givenAddedBooks_whenSearchBooksByTitle_ReturnsBooksContainingText() {
+        // 1. Arrange
+        Library library = new Library(new InMemoryDatabaseService(), mockReviewService);
+        library.addBook(new Book(ISBN, "Harry Potter and the Chamber of Secrets", "J. K. Rowling"));
+        library.addBook(new Book(isbn13(978_000_000_001L), "The Secret Garden", "Frances Burnett"));
+        library.addBook(new Book(isbn13(978_000_000_002L), "Secrets of the Banana Nab", "Lewis Carroll"));
+        // 3. Action
+        List<Book> found = library.searchBooksByTitle("SECRET", 10);
+        // 4. Assertion
+        assertEquals(3, found.size());
+        assertEquals(1, library.searchBooksByTitle("chamber of", 10).size());
+        assertEquals(2, library.searchBooksByTitle("secrets", 10).size());
+        // Every trigram of "anab" occurs in "Banana Nab", but the text itself doesn't.
+        assertTrue(library.searchBooksByTitle("anab", 10).isEmpty());
+        library.addBook(new Book(isbn13(978_000_000_009L), "Alice In Wonderland", "Lewis Carroll"));
+        assertEquals("Alice In Wonderland", library.searchBooksByTitle("in", 10).get(0).getTitle());
+        assertEquals(1, library.searchBooksByTitle("Secret", 1).size());
+    }
+    @Test
+    public void givenInvalidArguments_whenSearchTitles_ThrowException() {
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService);
+        // 3. Action & 4. Assertion
+        assertEquals("Invalid title.", assertThrows(IllegalArgumentException.class,
+                () -> library.searchBooksByTitle("  ", 1)).getMessage());
+        assertEquals("Invalid limit.", assertThrows(IllegalArgumentException.class,
+                () -> library.autocompleteTitles("Harry", 0)).getMessage());
+    }
+    @Test
+    public void givenInvalidArguments_whenFindBooksByAuthor_ThrowException() {
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService);
+        // 3. Action & 4. Assertion
+        assertEquals("Invalid author.", assertThrows(IllegalArgumentException.class,
+                () -> library.findBooksByAuthor("Lewis--Carroll", 0, 1, false)).getMessage());
+        assertEquals("Invalid offset.", assertThrows(IllegalArgumentException.class,
+                () -> library.findBooksByAuthor("Lewis Carroll", -1, 1, false)).getMessage());
+        assertEquals("Invalid limit.", assertThrows(IllegalArgumentException.class,
+                () -> library.findBooksByAuthor("Lewis Carroll", 0, 0, false)).getMessage());
+        verify(mockDatabaseService, never()).getBooksByISBN(anyCollection());
+    }
+
+    // Appends the ISBN-13 check digit to a 12-digit prefix.
+    private static String isbn13(long prefix) {
+        String digits = Long.toString(prefix);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
     /* BORROW BOOK TESTS */
     @Test
     public void givenNullISBN_whenBorrowBook_ThrowException() {
@@ -282,6 +530,7 @@ public class TestLibrary {
         verify(mockDatabaseService,times(1)).getUserById(userID);
         verify(mockBook,times(1)).isBorrowed();
         assertEquals(exception.getMessage(), "Book is already borrowed!");
+        assertEquals(0, exception.getStackTrace().length);
     }
     @Test
     public void givenValidCall_whenBorrowBook_DoesntThrowException() {
@@ -291,15 +540,155 @@ public class TestLibrary {
         when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
         when(mockDatabaseService.getUserById(userID)).thenReturn(mockUser);
         when(mockBook.isBorrowed()).thenReturn(false);
+        when(mockBook.tryBorrow()).thenReturn(true);
         // 3. Action
         assertDoesNotThrow(() -> library.borrowBook(ISBN,userID));
         // 4. Assertion
         verify(mockDatabaseService,times(1)).getBookByISBN(ISBN);
         verify(mockDatabaseService,times(1)).getUserById(userID);
         verify(mockBook,times(1)).isBorrowed();
-        verify(mockBook,times(1)).borrow();
+        verify(mockBook,times(1)).tryBorrow();
         verify(mockDatabaseService,times(1)).borrowBook(ISBN,userID);
     }
+    @Test
+    public void givenLostBorrowRace_whenBorrowBook_ThrowException() {
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService);
+        // 2. Stubbing
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(userID)).thenReturn(mockUser);
+        when(mockBook.isBorrowed()).thenReturn(false);
+        when(mockBook.tryBorrow()).thenReturn(false);
+        // 3. Action
+        BookAlreadyBorrowedException exception = assertThrows(BookAlreadyBorrowedException.class, () -> library.borrowBook(ISBN,userID));
+        // 4. Assertion
+        verify(mockDatabaseService,never()).borrowBook(anyString(),anyString());
+        assertEquals(exception.getMessage(), "Book is already borrowed!");
+    }
+    @Test
+    public void givenFailedDBWrite_whenBorrowBook_BookIsReleased() {
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService);
+        Book book = new Book(ISBN, "Alice In Wonderland", "Lewis Carroll");
+        // 2. Stubbing
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(book);
+        when(mockDatabaseService.getUserById(userID)).thenReturn(mockUser);
+        doThrow(new IllegalStateException("Database down")).when(mockDatabaseService).borrowBook(ISBN,userID);
+        // 3. Action
+        assertThrows(IllegalStateException.class, () -> library.borrowBook(ISBN,userID));
+        // 4. Assertion
+        assertFalse(book.isBorrowed());
+    }
+    @Test
+    public void givenConcurrentBorrowers_whenBorrowBook_OnlyOneSucceeds() throws Exception {
+        // 1. Arrange
+        InMemoryDatabaseService databaseService = new InMemoryDatabaseService();
+        Library library = new Library(databaseService, mockReviewService);
+        library.addBook(new Book(ISBN, "Alice In Wonderland", "Lewis Carroll"));
+        int threads = 8;
+        for (int i = 0; i < threads; i++) {
+            library.registerUser(new User("someName", "12345678900" + i, mockNotificationService));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> attempts = new LinkedList<>();
+        // 3. Action
+        for (int i = 0; i < threads; i++) {
+            String id = "12345678900" + i;
+            attempts.add(executor.submit(() -> {
+                start.await();
+                try {
+                    library.borrowBook(ISBN, id);
+                    return true;
+                } catch (BookAlreadyBorrowedException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        int successes = 0;
+        for (Future<Boolean> attempt : attempts) {
+            if (attempt.get(10, TimeUnit.SECONDS)) {
+                successes++;
+            }
+        }
+        executor.shutdown();
+        // 4. Assertion
+        assertEquals(1, successes);
+        assertNotNull(databaseService.getBorrowerId(ISBN));
+    }
+    @Test
+    public void givenConcurrentBorrowAndReturnCycles_whenDone_LoansAreConsistent() throws Exception {
+        // 1. Arrange
+        InMemoryDatabaseService databaseService = new InMemoryDatabaseService();
+        Library library = new Library(databaseService, ReviewSessionPool.closingAfterUse(mockReviewService),
+                ForkJoinPool.commonPool(), 3);
+        int books = 4;
+        int threads = 8;
+        for (int i = 0; i < books; i++) {
+            library.addBook(new Book(isbn13(978_000_000_000L + i), "Title " + i, "Lewis Carroll"));
+        }
+        for (int i = 0; i < threads; i++) {
+            library.registerUser(new User("someName", "12345678900" + i, mockNotificationService));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new LinkedList<>();
+        // 3. Action
+        for (int t = 0; t < threads; t++) {
+            String id = "12345678900" + t;
+            workers.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    String isbn = isbn13(978_000_000_000L + i % books);
+                    try {
+                        library.borrowBook(isbn, id);
+                        library.returnBook(isbn);
+                    } catch (BookAlreadyBorrowedException e) {
+                        // Another thread holds the book; try the next one.
+                    }
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        // 4. Assertion
+        assertEquals(4, library.getLockStripes().getStripeCount());
+        assertTrue(library.getLockStripes().getAcquisitionCount() >= threads * 500);
+        for (int i = 0; i < books; i++) {
+            String isbn = isbn13(978_000_000_000L + i);
+            assertFalse(databaseService.getBookByISBN(isbn).isBorrowed());
+            assertNull(databaseService.getBorrowerId(isbn));
+            assertNull(library.getBorrower(isbn));
+        }
+        for (int t = 0; t < threads; t++) {
+            assertTrue(library.getBorrowedBooks("12345678900" + t).isEmpty());
+        }
+    }
+    @ParameterizedTest
+    @ValueSource(strings = {"978-0-545-01022-2","97805450102210","978-0-545-0102a-1","978 0545010221"})
+    public void givenMalformedOrBadChecksumISBN_whenBorrowBook_ThrowException(String invalidISBN) {
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService);
+        // 3. Action
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> library.borrowBook(invalidISBN, userID));
+        // 4. Assertion
+        verify(mockDatabaseService,never()).getBookByISBN(anyString());
+        assertEquals(exception.getMessage(), "Invalid ISBN.");
+    }
+    @Test
+    public void givenHyphenatedISBN_whenBorrowBookByPlainISBN_ResolvesSameBook() {
+        // 1. Arrange
+        Library library = new Library(new InMemoryDatabaseService(), mockReviewService);
+        Book book = new Book(ISBN, "Alice In Wonderland", "Lewis Carroll");
+        library.addBook(book);
+        library.registerUser(new User("someName", userID, mockNotificationService));
+        // 3. Action
+        library.borrowBook("9780545010221", userID);
+        // 4. Assertion
+        assertTrue(book.isBorrowed());
+        assertThrows(IllegalArgumentException.class, () -> library.addBook(new Book("9780545010221", "Alice", "Lewis Carroll")));
+    }
     /* RETURN BOOK TESTS */
     @ParameterizedTest
     @ValueSource(strings = {"11-12","11-1A2","9832-9485398475"})
@@ -343,6 +732,7 @@ public class TestLibrary {
         // 2. Stubbing
         when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
         when(mockBook.isBorrowed()).thenReturn(true);
+        when(mockBook.tryReturn()).thenReturn(true);
         // 3. Action
         library.returnBook(ISBN);
         // 4. Assertion
@@ -350,8 +740,73 @@ public class TestLibrary {
         verify(mockDatabaseService,times(1)).getBookByISBN(ISBN);
         verify(mockDatabaseService,times(1)).returnBook(ISBN);
         verify(mockBook,times(1)).isBorrowed();
+        verify(mockBook,times(1)).tryReturn();
         assertFalse(mockBook.isBorrowed());
     }
+    /* LOAN INDEX TESTS */
+    @Test
+    public void givenBorrowedBooks_whenGetBorrowedBooks_ReturnsCurrentLoans() {
+        // 1. Arrange
+        Library library = new Library(new InMemoryDatabaseService(), mockReviewService);
+        String second = isbn13(978_000_000_001L);
+        library.addBook(new Book(ISBN, "Harry Potter", "J. K. Rowling"));
+        library.addBook(new Book(second, "Alice In Wonderland", "Lewis Carroll"));
+        library.registerUser(new User("Name", userID, mockNotificationService));
+        // 3. Action
+        library.borrowBook(ISBN, userID);
+        library.borrowBook(second, userID);
+        library.returnBook(ISBN);
+        // 4. Assertion
+        List<Book> borrowed = library.getBorrowedBooks(userID);
+        assertEquals(1, borrowed.size());
+        assertEquals("Alice In Wonderland", borrowed.get(0).getTitle());
+        assertEquals(userID, library.getBorrower(second));
+        assertNull(library.getBorrower(ISBN));
+        assertTrue(library.getBorrowedBooks("000000000000").isEmpty());
+    }
+    @Test
+    public void givenLoansInDatabase_whenQueryLoans_ReadThemFromDatabase() {
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService);
+        // 2. Stubbing
+        when(mockDatabaseService.getBorrowerId(ISBN)).thenReturn(userID);
+        when(mockDatabaseService.getBorrowedISBNs(userID)).thenReturn(Collections.singletonList(ISBN));
+        when(mockDatabaseService.getBooksByISBN(Collections.singletonList(ISBN))).thenReturn(Collections.singletonMap(ISBN, mockBook));
+        // 3. Action & 4. Assertion
+        assertEquals(userID, library.getBorrower(ISBN));
+        assertEquals(Collections.singletonList(mockBook), library.getBorrowedBooks(userID));
+    }
+    @Test
+    public void givenRestoredSnapshot_whenQueryLoans_ReturnLoansMadeBeforeRestart(@TempDir Path directory) throws Exception {
+        // 1. Arrange
+        InMemoryDatabaseService databaseService = new InMemoryDatabaseService();
+        Library before = new Library(databaseService, mockReviewService);
+        before.addBook(new Book(ISBN, "Harry Potter", "J. K. Rowling"));
+        before.registerUser(new User("Name", userID, mockNotificationService));
+        before.borrowBook(ISBN, userID);
+        Path snapshot = directory.resolve("library.snapshot");
+        DatabaseSnapshot.write(databaseService, snapshot);
+        // 3. Action
+        InMemoryDatabaseService restored = DatabaseSnapshot.load(snapshot, id -> mockNotificationService);
+        Library after = new Library(restored, mockReviewService);
+        Library sharing = new Library(restored, mockReviewService);
+        // 4. Assertion
+        assertEquals(userID, after.getBorrower(ISBN));
+        assertEquals(1, after.getBorrowedBooks(userID).size());
+        after.returnBook(ISBN);
+        assertNull(sharing.getBorrower(ISBN));
+        assertTrue(sharing.getBorrowedBooks(userID).isEmpty());
+    }
+    @Test
+    public void givenInvalidIds_whenQueryLoans_ThrowException() {
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService);
+        // 3. Action & 4. Assertion
+        assertEquals("Invalid user Id.", assertThrows(IllegalArgumentException.class,
+                () -> library.getBorrowedBooks("12345")).getMessage());
+        assertEquals("Invalid ISBN.", assertThrows(IllegalArgumentException.class,
+                () -> library.getBorrower("978-0-545-01022-2")).getMessage());
+    }
 
 //-------------------------------------------------------------------------------------
 
@@ -470,7 +925,7 @@ public class TestLibrary {
         // 3. Action
         assertDoesNotThrow(()->library.registerUser(mockUser));
         // 4. Assertion
-        verify(mockUser,times(4)).getId();
+        verify(mockUser,times(3)).getId();
         verify(mockUser,times(2)).getName();
 
     }
@@ -668,4 +1123,446 @@ public class TestLibrary {
 
     }
 
+    @Test
+    public void givenDataIsValid_whenNotifyUserWithBookReviewsAsync_thenCompleteWithOutcome(){
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService, Runnable::run);
+        // 2. Stubbing
+        when(mockDatabaseService.getUserById(anyString())).thenReturn(mockUser);
+        when(mockDatabaseService.getBookByISBN(anyString())).thenReturn(mockBook);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Some review"));
+        doThrow(new NotificationException("Exception")).doNothing().when(mockUser).sendNotification(anyString());
+        // 3. Action
+        NotificationOutcome outcome = library.notifyUserWithBookReviewsAsync(ISBN,userID).join();
+        // 4. Assertion
+        assertEquals(2, outcome.getAttempts());
+        assertEquals(ISBN, outcome.getISBN());
+        assertEquals(userID, outcome.getUserId());
+    }
+
+    @Test
+    public void givenInvalidISBN_whenNotifyUserWithBookReviewsAsync_thenCompleteExceptionally(){
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService, Runnable::run);
+        // 3. Action
+        CompletableFuture<NotificationOutcome> future = assertDoesNotThrow(()->library.notifyUserWithBookReviewsAsync("1234",userID));
+        // 4. Assertion
+        CompletionException exception = assertThrows(CompletionException.class, future::join);
+        assertInstanceOf(IllegalArgumentException.class, exception.getCause());
+        assertEquals(exception.getCause().getMessage(), "Invalid ISBN.");
+    }
+
+    @Test
+    public void givenReviewServiceIsUnavailable_whenNotifyUserWithBookReviewsAsync_thenCompleteExceptionally(){
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService, Runnable::run);
+        // 2. Stubbing
+        when(mockDatabaseService.getUserById(anyString())).thenReturn(mockUser);
+        when(mockDatabaseService.getBookByISBN(anyString())).thenReturn(mockBook);
+        doThrow(new ReviewException("Exception")).when(mockReviewService).getReviewsForBook(ISBN);
+        // 3. Action
+        CompletionException exception = assertThrows(CompletionException.class,
+                ()->library.notifyUserWithBookReviewsAsync(ISBN,userID).join());
+        // 4. Assertion
+        assertInstanceOf(ReviewServiceUnavailableException.class, exception.getCause());
+    }
+
+    @Test
+    public void givenRejectingExecutor_whenNotifyUserWithBookReviewsAsync_thenCompleteExceptionally(){
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService, task -> {
+            throw new RejectedExecutionException("Saturated");
+        });
+        // 3. Action
+        CompletableFuture<NotificationOutcome> future = library.notifyUserWithBookReviewsAsync(ISBN,userID);
+        // 4. Assertion
+        assertTrue(future.isCompletedExceptionally());
+    }
+
+    @Test
+    public void givenUnpooledReviewService_whenNotifyUserWithBookReviews_thenCloseAfterFetch(){
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService);
+        // 2. Stubbing
+        when(mockDatabaseService.getUserById(anyString())).thenReturn(mockUser);
+        when(mockDatabaseService.getBookByISBN(anyString())).thenReturn(mockBook);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Some review"));
+        // 3. Action
+        library.notifyUserWithBookReviews(ISBN,userID);
+        // 4. Assertion
+        verify(mockReviewService,times(1)).close();
+    }
+
+    @Test
+    public void givenPooledReviewSessions_whenNotifyUserWithBookReviews_thenSessionIsReused(){
+        // 1. Arrange
+        ReviewSessionPool pool = new ReviewSessionPool(() -> mockReviewService, 2, 1, TimeUnit.MINUTES);
+        Library library = new Library(mockDatabaseService, pool);
+        // 2. Stubbing
+        when(mockDatabaseService.getUserById(anyString())).thenReturn(mockUser);
+        when(mockDatabaseService.getBookByISBN(anyString())).thenReturn(mockBook);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Some review"));
+        // 3. Action
+        library.notifyUserWithBookReviews(ISBN,userID);
+        library.notifyUserWithBookReviews(ISBN,userID);
+        // 4. Assertion
+        verify(mockReviewService,times(2)).getReviewsForBook(ISBN);
+        verify(mockReviewService,never()).close();
+        assertEquals(1, pool.idleCount());
+        library.shutdown();
+        verify(mockReviewService,times(1)).close();
+        assertEquals(0, pool.idleCount());
+    }
+
+    @Test
+    public void givenSessionIdleBeyondTimeout_whenEvictIdle_thenSessionIsClosedWithoutFurtherUse() throws InterruptedException {
+        // 1. Arrange
+        ReviewSessionPool pool = new ReviewSessionPool(() -> mockReviewService, 2, 1, TimeUnit.MILLISECONDS);
+        pool.release(pool.lease());
+        Thread.sleep(20);
+        // 3. Action
+        int evicted = pool.evictIdle();
+        // 4. Assertion
+        assertEquals(1, evicted);
+        assertEquals(0, pool.idleCount());
+        verify(mockReviewService,times(1)).close();
+        assertEquals(0, pool.evictIdle());
+    }
+
+    @Test
+    public void givenScheduledEviction_whenPoolGoesQuiet_thenIdleSessionIsClosed() throws InterruptedException {
+        // 1. Arrange
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        ReviewSessionPool pool = new ReviewSessionPool(() -> mockReviewService, 2, 10, TimeUnit.MILLISECONDS);
+        try {
+            pool.scheduleEviction(scheduler);
+            // 3. Action
+            pool.release(pool.lease());
+            // 4. Assertion
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (pool.idleCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(0, pool.idleCount());
+            verify(mockReviewService,times(1)).close();
+            assertThrows(IllegalStateException.class, () -> pool.scheduleEviction(scheduler));
+        } finally {
+            pool.close();
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenFailingPooledSession_whenNotifyUserWithBookReviews_thenSessionIsClosed(){
+        // 1. Arrange
+        ReviewSessionPool pool = new ReviewSessionPool(() -> mockReviewService, 2, 1, TimeUnit.MINUTES);
+        Library library = new Library(mockDatabaseService, pool);
+        // 2. Stubbing
+        when(mockDatabaseService.getUserById(anyString())).thenReturn(mockUser);
+        when(mockDatabaseService.getBookByISBN(anyString())).thenReturn(mockBook);
+        doThrow(new ReviewException("Exception")).when(mockReviewService).getReviewsForBook(ISBN);
+        // 3. Action
+        assertThrows(ReviewServiceUnavailableException.class, ()->library.notifyUserWithBookReviews(ISBN,userID));
+        // 4. Assertion
+        verify(mockReviewService,times(1)).close();
+        assertEquals(0, pool.idleCount());
+    }
+
+    @Test
+    public void givenClosedPool_whenNotifyUserWithBookReviews_thenThrowException(){
+        // 1. Arrange
+        ReviewSessionPool pool = new ReviewSessionPool(() -> mockReviewService, 2, 1, TimeUnit.MINUTES);
+        Library library = new Library(mockDatabaseService, pool);
+        library.shutdown();
+        // 2. Stubbing
+        when(mockDatabaseService.getUserById(anyString())).thenReturn(mockUser);
+        when(mockDatabaseService.getBookByISBN(anyString())).thenReturn(mockBook);
+        // 3. Action
+        assertThrows(ReviewServiceUnavailableException.class, ()->library.notifyUserWithBookReviews(ISBN,userID));
+        // 4. Assertion
+        verify(mockReviewService,never()).getReviewsForBook(anyString());
+    }
+
+    @Test
+    public void givenOpenCircuit_whenNotifyUserWithBookReviews_thenFailFastAndKeepSession(){
+        // 1. Arrange
+        CircuitBreaker circuitBreaker = new CircuitBreaker(0.5, 2, 2, 1, TimeUnit.MINUTES, 1);
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        ReviewSessionPool pool = new ReviewSessionPool(
+                () -> new CircuitBreakerReviewService(mockReviewService, circuitBreaker), 2, 1, TimeUnit.MINUTES);
+        Library library = new Library(mockDatabaseService, pool);
+        // 2. Stubbing
+        when(mockDatabaseService.getUserById(anyString())).thenReturn(mockUser);
+        when(mockDatabaseService.getBookByISBN(anyString())).thenReturn(mockBook);
+        // 3. Action
+        ReviewServiceUnavailableException exception = assertThrows(ReviewServiceUnavailableException.class,
+                ()->library.notifyUserWithBookReviews(ISBN,userID));
+        // 4. Assertion
+        assertEquals(exception.getMessage(), "Review service unavailable!");
+        verify(mockReviewService,never()).getReviewsForBook(anyString());
+        verify(mockReviewService,never()).close();
+        assertEquals(1, pool.idleCount());
+    }
+
+    @Test
+    public void givenBookIsValid_whenGetBookByISBN_thenReturnBeforeNotification(){
+        // 1. Arrange
+        List<Runnable> pending = new LinkedList<>();
+        Library library = new Library(mockDatabaseService, mockReviewService, pending::add);
+        // 2. Stubbing
+        when(mockDatabaseService.getBookByISBN(anyString())).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(anyString())).thenReturn(mockUser);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Some review"));
+        // 3. Action
+        Book book = library.getBookByISBN(ISBN,userID);
+        // 4. Assertion
+        assertSame(mockBook, book);
+        verify(mockReviewService,never()).getReviewsForBook(anyString());
+        verify(mockUser,never()).sendNotification(anyString());
+        assertEquals(1, pending.size());
+        pending.get(0).run();
+        verify(mockUser,times(1)).sendNotification(anyString());
+        verify(mockDatabaseService,times(1)).getBookByISBN(ISBN);
+    }
+
+    @Test
+    public void givenFailingNotification_whenGetBookByISBN_thenStillReturnBook(){
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService, Runnable::run);
+        // 2. Stubbing
+        when(mockDatabaseService.getBookByISBN(anyString())).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(anyString())).thenReturn(null);
+        // 3. Action
+        Book book = assertDoesNotThrow(()->library.getBookByISBN(ISBN,userID));
+        // 4. Assertion
+        assertSame(mockBook, book);
+        verify(mockDatabaseService,times(1)).getUserById(userID);
+        verify(mockReviewService,never()).getReviewsForBook(anyString());
+    }
+
+    /* METRICS TESTS */
+    @Test
+    public void givenBorrowsAndFailures_whenBorrowBook_thenCountOutcomesAndLatencies(){
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService);
+        // 2. Stubbing
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(userID)).thenReturn(mockUser);
+        when(mockBook.tryBorrow()).thenReturn(true, false);
+        // 3. Action
+        library.borrowBook(ISBN, userID);
+        assertThrows(BookAlreadyBorrowedException.class, () -> library.borrowBook(ISBN, userID));
+        assertThrows(IllegalArgumentException.class, () -> library.borrowBook("1234", userID));
+        // 4. Assertion
+        LibraryMetrics.Snapshot snapshot = library.getMetrics().snapshot();
+        assertEquals(1, snapshot.getOutcomeCount(LibraryMetrics.Operation.BORROW_BOOK, LibraryMetrics.SUCCESS));
+        assertEquals(1, snapshot.getOutcomeCount(LibraryMetrics.Operation.BORROW_BOOK, "BookAlreadyBorrowedException"));
+        assertEquals(1, snapshot.getOutcomeCount(LibraryMetrics.Operation.BORROW_BOOK, "IllegalArgumentException"));
+        assertEquals(3, snapshot.getLatency(LibraryMetrics.Operation.BORROW_BOOK).getCount());
+        assertEquals(0, snapshot.getLatency(LibraryMetrics.Operation.RETURN_BOOK).getCount());
+    }
+
+    @Test
+    public void givenRetriedNotifications_whenNotifyUserWithBookReviews_thenCountAttempts(){
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService, Runnable::run);
+        // 2. Stubbing
+        when(mockDatabaseService.getUserById(anyString())).thenReturn(mockUser);
+        when(mockDatabaseService.getBookByISBN(anyString())).thenReturn(mockBook);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Some review"));
+        doThrow(new NotificationException("Exception")).doNothing()
+                .doThrow(new NotificationException("Exception")).when(mockUser).sendNotification(anyString());
+        // 3. Action
+        library.notifyUserWithBookReviewsAsync(ISBN, userID).join();
+        assertThrows(NotificationException.class, () -> library.notifyUserWithBookReviews(ISBN, userID));
+        // 4. Assertion
+        LibraryMetrics.Snapshot snapshot = library.getMetrics().snapshot();
+        assertEquals(1, snapshot.getDeliveredOnAttempt(2));
+        assertEquals(0, snapshot.getDeliveredOnAttempt(1));
+        assertEquals(1, snapshot.getUndelivered());
+        assertEquals(1, snapshot.getOutcomeCount(LibraryMetrics.Operation.NOTIFY_USER_WITH_BOOK_REVIEWS, LibraryMetrics.SUCCESS));
+        assertEquals(1, snapshot.getOutcomeCount(LibraryMetrics.Operation.NOTIFY_USER_WITH_BOOK_REVIEWS, "NotificationException"));
+    }
+
+    @Test
+    public void givenAsyncFailure_whenNotifyUserWithBookReviewsAsync_thenCountCauseOfFailure(){
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService, Runnable::run);
+        // 2. Stubbing
+        when(mockDatabaseService.getBookByISBN(anyString())).thenReturn(null);
+        // 3. Action
+        CompletableFuture<NotificationOutcome> future = library.notifyUserWithBookReviewsAsync(ISBN, userID);
+        // 4. Assertion
+        assertThrows(CompletionException.class, future::join);
+        LibraryMetrics.Snapshot snapshot = library.getMetrics().snapshot();
+        assertEquals(1, snapshot.getOutcomeCount(LibraryMetrics.Operation.NOTIFY_USER_WITH_BOOK_REVIEWS, "BookNotFoundException"));
+    }
+
+    /* RESULT CODE API TESTS */
+    @Test
+    public void givenBookAlreadyBorrowed_whenTryBorrowBook_thenReturnCodeWithoutThrowing(){
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService);
+        // 2. Stubbing
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.getUserById(userID)).thenReturn(mockUser);
+        when(mockBook.isBorrowed()).thenReturn(true);
+        // 3. Action
+        ResultCode result = assertDoesNotThrow(() -> library.tryBorrowBook(ISBN, userID));
+        // 4. Assertion
+        assertEquals(ResultCode.BOOK_ALREADY_BORROWED, result);
+        verify(mockDatabaseService, never()).borrowBook(anyString(), anyString());
+        assertEquals(1, library.getMetrics().snapshot()
+                .getOutcomeCount(LibraryMetrics.Operation.BORROW_BOOK, "BookAlreadyBorrowedException"));
+    }
+
+    @Test
+    public void givenChecksInOrder_whenTryBorrowBook_thenReportFirstFailedCheck(){
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService);
+        // 2. Stubbing
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(null, mockBook);
+        // 3. Action & 4. Assertion
+        assertEquals(ResultCode.INVALID_ISBN, library.tryBorrowBook("1234", "1234"));
+        assertEquals(ResultCode.BOOK_NOT_FOUND, library.tryBorrowBook(ISBN, "1234"));
+        assertEquals(ResultCode.INVALID_USER_ID, library.tryBorrowBook(ISBN, "1234"));
+        assertEquals(ResultCode.USER_NOT_REGISTERED, library.tryBorrowBook(ISBN, userID));
+    }
+
+    @Test
+    public void givenBorrowedBook_whenTryReturnBookTwice_thenSecondReportsNotBorrowed(){
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService);
+        // 2. Stubbing
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockBook.isBorrowed()).thenReturn(true, false);
+        when(mockBook.tryReturn()).thenReturn(true);
+        // 3. Action & 4. Assertion
+        assertEquals(ResultCode.SUCCESS, library.tryReturnBook(ISBN));
+        assertEquals(ResultCode.BOOK_NOT_BORROWED, library.tryReturnBook(ISBN));
+        verify(mockDatabaseService, times(1)).returnBook(ISBN);
+    }
+
+    @Test
+    public void givenMissingBook_whenTryGetBookByISBN_thenReturnSharedFailure(){
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService, Runnable::run);
+        // 2. Stubbing
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(null);
+        // 3. Action
+        BookLookup first = library.tryGetBookByISBN(ISBN, userID);
+        BookLookup second = library.tryGetBookByISBN(ISBN, userID);
+        // 4. Assertion
+        assertEquals(ResultCode.BOOK_NOT_FOUND, first.getCode());
+        assertNull(first.getBook());
+        assertSame(first, second);
+    }
+
+    @Test
+    public void givenAvailableBook_whenTryGetBookByISBN_thenReturnBook(){
+        // 1. Arrange
+        Library library = new Library(mockDatabaseService, mockReviewService, command -> { });
+        // 2. Stubbing
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        // 3. Action
+        BookLookup lookup = library.tryGetBookByISBN(ISBN, userID);
+        // 4. Assertion
+        assertTrue(lookup.getCode().isSuccess());
+        assertSame(mockBook, lookup.getBook());
+    }
+
+    @Test
+    public void givenStacklessConstruction_whenCreateException_thenNoStackTrace(){
+        // 3. Action
+        BookAlreadyBorrowedException exception = new BookAlreadyBorrowedException("Book is already borrowed!", false);
+        // 4. Assertion
+        assertEquals(0, exception.getStackTrace().length);
+        assertEquals("Book is already borrowed!", exception.getMessage());
+        assertTrue(new BookNotFoundException("Book not found!", true).getStackTrace().length > 0);
+    }
+
+    /* CONDITIONAL WRITE TESTS */
+    @Test
+    public void givenDatabaseWithConditionalWrites_whenBorrowBook_thenMakeOneRoundTrip(){
+        // 1. Arrange
+        DatabaseService database = mock(DatabaseService.class);
+        Library library = new Library(database, mockReviewService);
+        // 2. Stubbing
+        when(database.tryBorrow(ISBN, userID)).thenReturn(ResultCode.SUCCESS);
+        when(database.tryReturn(ISBN)).thenReturn(ResultCode.SUCCESS);
+        // 3. Action
+        library.borrowBook(ISBN, userID);
+        library.returnBook(ISBN);
+        // 4. Assertion
+        verify(database, times(1)).tryBorrow(ISBN, userID);
+        verify(database, times(1)).tryReturn(ISBN);
+        // Besides listing the catalog to index it when the library is created.
+        verify(database, times(1)).forEachBook(any());
+        verifyNoMoreInteractions(database);
+    }
+
+    @Test
+    public void givenDatabaseWithConditionalWrites_whenAddBookAndRegisterUser_thenSkipProbes(){
+        // 1. Arrange
+        DatabaseService database = mock(DatabaseService.class);
+        Library library = new Library(database, mockReviewService);
+        // 2. Stubbing
+        when(database.addBookIfAbsent(eq(ISBN), any())).thenReturn(false);
+        when(database.registerUserIfAbsent(eq(userID), any())).thenReturn(true);
+        // 3. Action & 4. Assertion
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> library.addBook(new Book(ISBN, "Alice In Wonderland", "Lewis Carroll")));
+        assertEquals("Book already exists.", exception.getMessage());
+        library.registerUser(new User("someName", userID, mockNotificationService));
+        verify(database, never()).getBookByISBN(anyString());
+        verify(database, never()).getUserById(anyString());
+    }
+
+    /* ASYNCHRONOUS DATABASE TESTS */
+    @Test
+    public void givenPendingReads_whenNotifyUserWithBookReviewsAsync_thenIssueBothReadsBeforeEitherCompletes(){
+        // 1. Arrange
+        AsyncDatabaseService asyncDatabase = mock(AsyncDatabaseService.class);
+        CompletableFuture<Book> book = new CompletableFuture<>();
+        CompletableFuture<User> user = new CompletableFuture<>();
+        Library library = new Library(mockDatabaseService, asyncDatabase,
+                ReviewSessionPool.closingAfterUse(mockReviewService), Runnable::run, 16);
+        // 2. Stubbing
+        when(asyncDatabase.getBookByISBN(ISBN)).thenReturn(book);
+        when(asyncDatabase.getUserById(userID)).thenReturn(user);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Some review"));
+        // 3. Action
+        CompletableFuture<NotificationOutcome> outcome = library.notifyUserWithBookReviewsAsync(ISBN, userID);
+        // 4. Assertion
+        verify(asyncDatabase, times(1)).getBookByISBN(ISBN);
+        verify(asyncDatabase, times(1)).getUserById(userID);
+        assertFalse(outcome.isDone());
+        user.complete(mockUser);
+        assertFalse(outcome.isDone());
+        book.complete(mockBook);
+        assertEquals(1, outcome.join().getAttempts());
+        verify(mockUser, times(1)).sendNotification(anyString());
+        // The catalog is only listed to index it when the library is created.
+        verify(mockDatabaseService, times(1)).forEachBook(any());
+        verifyNoMoreInteractions(mockDatabaseService);
+    }
+
+    @Test
+    public void givenMissingBookAndUser_whenNotifyUserWithBookReviewsAsync_thenReportMissingBook(){
+        // 1. Arrange
+        AsyncDatabaseService asyncDatabase = mock(AsyncDatabaseService.class);
+        Library library = new Library(mockDatabaseService, asyncDatabase,
+                ReviewSessionPool.closingAfterUse(mockReviewService), Runnable::run, 16);
+        // 2. Stubbing
+        when(asyncDatabase.getBookByISBN(ISBN)).thenReturn(CompletableFuture.completedFuture(null));
+        when(asyncDatabase.getUserById(userID)).thenReturn(CompletableFuture.completedFuture(null));
+        // 3. Action
+        CompletionException exception = assertThrows(CompletionException.class,
+                () -> library.notifyUserWithBookReviewsAsync(ISBN, userID).join());
+        // 4. Assertion
+        assertInstanceOf(BookNotFoundException.class, exception.getCause());
+        verify(mockReviewService, never()).getReviewsForBook(anyString());
+    }
 }
+
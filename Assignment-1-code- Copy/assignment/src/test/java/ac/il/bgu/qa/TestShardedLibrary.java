@@ -0,0 +1,197 @@
+package ac.il.bgu.qa;
+
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.metrics.LibraryMetrics;
+import ac.il.bgu.qa.metrics.LibraryMetrics.Operation;
+import ac.il.bgu.qa.services.*;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestShardedLibrary {
+
+    private final String userID = "123456789123";
+
+    private List<InMemoryDatabaseService> databases;
+    private ShardedLibrary library;
+
+    @BeforeEach
+    public void setUp() {
+        databases = new ArrayList<>();
+        List<Library> partitions = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            InMemoryDatabaseService database = new InMemoryDatabaseService();
+            databases.add(database);
+            partitions.add(new Library(database, mock(ReviewService.class)));
+        }
+        library = new ShardedLibrary(partitions);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        library.shutdown();
+    }
+
+    private static String isbn13(long prefix) {
+        String digits = Long.toString(prefix);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    private List<Book> addBooks(int count) {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Book book = new Book(isbn13(978_000_000_000L + i), "Title " + i, "Author");
+            library.addBook(book);
+            books.add(book);
+        }
+        return books;
+    }
+
+    @Test
+    public void givenBooks_whenAddBook_thenEachIsStoredInItsPartitionOnly() {
+        // 3. Action
+        List<Book> books = addBooks(200);
+        // 4. Assertion
+        int total = 0;
+        for (int i = 0; i < databases.size(); i++) {
+            assertTrue(databases.get(i).bookCount() > 0);
+            total += databases.get(i).bookCount();
+        }
+        assertEquals(books.size(), total);
+        for (Book book : books) {
+            Library partition = library.partitionOf(book.getISBN());
+            int owner = library.getPartitions().indexOf(partition);
+            for (int i = 0; i < databases.size(); i++) {
+                assertEquals(i == owner, databases.get(i).getBookByISBN(book.getISBN()) != null);
+            }
+        }
+    }
+
+    @Test
+    public void givenRegisteredUser_whenBorrowAndReturnAcrossPartitions_thenRoutedToOwners() {
+        // 1. Arrange
+        List<Book> books = addBooks(20);
+        library.registerUser(new User("Name", userID, mock(NotificationService.class)));
+        // 3. Action
+        for (Book book : books) {
+            library.borrowBook(book.getISBN(), userID);
+        }
+        // 4. Assertion
+        for (InMemoryDatabaseService database : databases) {
+            assertEquals(1, database.userCount());
+        }
+        assertEquals(books.size(), library.getBorrowedBooks(userID).size());
+        for (Book book : books) {
+            assertEquals(userID, library.getBorrower(book.getISBN()));
+            assertEquals(ResultCode.BOOK_ALREADY_BORROWED, library.tryBorrowBook(book.getISBN(), userID));
+            library.returnBook(book.getISBN());
+            assertEquals(ResultCode.BOOK_NOT_BORROWED, library.tryReturnBook(book.getISBN()));
+        }
+        assertEquals(Collections.emptyList(), library.getBorrowedBooks(userID));
+    }
+
+    @Test
+    public void givenUserReplicaAlreadyPresent_whenRegisterUser_thenCompleteTheReplication() {
+        // 1. Arrange
+        User user = new User("Name", userID, mock(NotificationService.class));
+        library.getPartitions().get(2).registerUser(user);
+        // 3. Action
+        library.registerUser(user);
+        // 4. Assertion
+        for (InMemoryDatabaseService database : databases) {
+            assertEquals(1, database.userCount());
+        }
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> library.registerUser(user));
+        assertEquals("User already exists.", exception.getMessage());
+    }
+
+    @Test
+    public void givenFailingPartition_whenRegisterUser_thenRollBackWrittenReplicas() {
+        // 1. Arrange
+        AtomicBoolean failing = new AtomicBoolean(true);
+        List<InMemoryDatabaseService> stores = new ArrayList<>();
+        List<Library> partitions = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            InMemoryDatabaseService database = i != 2 ? new InMemoryDatabaseService() : new InMemoryDatabaseService() {
+                @Override
+                public boolean registerUserIfAbsent(String id, User user) {
+                    if (failing.get()) {
+                        throw new IllegalStateException("Disk full.");
+                    }
+                    return super.registerUserIfAbsent(id, user);
+                }
+            };
+            stores.add(database);
+            partitions.add(new Library(database, mock(ReviewService.class)));
+        }
+        ShardedLibrary sharded = new ShardedLibrary(partitions);
+        User user = new User("Name", userID, mock(NotificationService.class));
+        try {
+            // 3. Action
+            IllegalStateException exception = assertThrows(IllegalStateException.class, () -> sharded.registerUser(user));
+            // 4. Assertion
+            assertEquals("Disk full.", exception.getMessage());
+            for (InMemoryDatabaseService database : stores) {
+                assertEquals(0, database.userCount());
+            }
+            failing.set(false);
+            sharded.registerUser(user);
+            for (InMemoryDatabaseService database : stores) {
+                assertSame(user, database.getUserById(userID));
+            }
+        } finally {
+            sharded.shutdown();
+        }
+    }
+
+    @Test
+    public void givenInvalidISBN_whenRouted_thenRejectBeforeAnyPartitionIsCalled() {
+        // 1. Arrange
+        library.registerUser(new User("Name", userID, mock(NotificationService.class)));
+        // 3. Action & 4. Assertion
+        assertEquals("Invalid ISBN.", assertThrows(IllegalArgumentException.class,
+                () -> library.partitionOf("978-0-545-01022-2")).getMessage());
+        assertEquals("Invalid ISBN.", assertThrows(IllegalArgumentException.class,
+                () -> library.getBorrower("123")).getMessage());
+        assertEquals("Invalid ISBN.", assertThrows(IllegalArgumentException.class,
+                () -> library.addBook(new Book("123", "Title", "Author"))).getMessage());
+        assertEquals(ResultCode.INVALID_ISBN, library.tryReturnBook(null));
+        CompletionException exception = assertThrows(CompletionException.class,
+                () -> library.notifyUserWithBookReviewsAsync("123", userID).join());
+        assertInstanceOf(IllegalArgumentException.class, exception.getCause());
+        for (Library partition : library.getPartitions()) {
+            LibraryMetrics.Snapshot metrics = partition.getMetrics().snapshot();
+            assertEquals(0, metrics.getLatency(Operation.ADD_BOOK).getCount());
+            assertEquals(0, metrics.getLatency(Operation.RETURN_BOOK).getCount());
+            assertEquals(0, metrics.getLatency(Operation.NOTIFY_USER_WITH_BOOK_REVIEWS).getCount());
+        }
+    }
+
+    @Test
+    public void givenInvalidArguments_whenCalled_thenThrowSameExceptionsAsLibrary() {
+        // 1. Arrange
+        addBooks(1);
+        String missing = isbn13(979_000_000_000L);
+        // 3. Action & 4. Assertion
+        assertEquals("Invalid ISBN.", assertThrows(IllegalArgumentException.class,
+                () -> library.borrowBook("123", userID)).getMessage());
+        assertEquals("Invalid ISBN.", assertThrows(IllegalArgumentException.class,
+                () -> library.returnBook(null)).getMessage());
+        assertThrows(IllegalArgumentException.class, () -> library.addBook(null));
+        assertThrows(BookNotFoundException.class, () -> library.borrowBook(missing, userID));
+        assertEquals(ResultCode.INVALID_ISBN, library.tryBorrowBook("123", userID));
+        assertThrows(IllegalArgumentException.class, () -> new ShardedLibrary(Collections.emptyList()));
+        assertThrows(IllegalArgumentException.class, () -> new ShardedLibrary(null));
+    }
+}
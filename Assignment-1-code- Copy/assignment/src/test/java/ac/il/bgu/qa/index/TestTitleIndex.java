@@ -0,0 +1,66 @@
+package ac.il.bgu.qa.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+public class TestTitleIndex {
+
+    private TitleIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new TitleIndex();
+        index.add("Harry Potter", 1);
+        index.add("Harry  Houdini", 2);
+        index.add("The Hobbit", 3);
+        index.add("A Very Long Title Beyond The Trie Depth", 4);
+        index.add("A Very Long Title Beyond Other Things", 5);
+    }
+
+    @Test
+    public void givenTitles_whenWithPrefix_thenReturnAlphabetically() {
+        // 3. Action
+        long[] found = index.withPrefix("harry ", 0, 10);
+        // 4. Assertion
+        assertArrayEquals(new long[]{2, 1}, found);
+        assertArrayEquals(new long[]{2}, index.withPrefix("HARRY", 0, 1));
+        assertArrayEquals(new long[]{1}, index.withPrefix("HARRY", 1, 10));
+        assertEquals(0, index.withPrefix("Harry", 2, 10).length);
+        assertEquals(0, index.withPrefix("Harry Z", 0, 10).length);
+    }
+
+    @Test
+    public void givenPrefixLongerThanTrieDepth_whenWithPrefix_thenReturnAllSharingTheDepth() {
+        // 3. Action
+        long[] found = index.withPrefix("A Very Long Title Beyond The", 0, 10);
+        // 4. Assertion
+        assertArrayEquals(new long[]{4, 5}, found);
+        assertArrayEquals(new long[]{4}, index.withPrefix("A Very Long Title Beyond The", 0, 1));
+        assertArrayEquals(new long[]{5}, index.withPrefix("A Very Long Title Beyond The", 1, 1));
+    }
+
+    @Test
+    public void givenTitles_whenContaining_thenReturnInInsertionOrderWithPaging() {
+        // 3. Action
+        long[] found = index.containing("z", 0, 10);
+        // 4. Assertion
+        assertEquals(0, found.length);
+        assertArrayEquals(new long[]{1, 2}, index.containing("RRY", 0, 10));
+        assertArrayEquals(new long[]{2}, index.containing("rry", 1, 10));
+        assertArrayEquals(new long[]{4, 5}, index.containing("long title", 0, 10));
+        assertArrayEquals(new long[]{3}, index.containing("hobbit", 0, 10));
+        assertEquals(0, index.containing("hobbits", 0, 10).length);
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    public void givenShortText_whenContaining_thenMatchAnywhereInTheTitle() {
+        // 3. Action & 4. Assertion
+        assertArrayEquals(new long[]{3, 4, 5}, index.containing("th", 0, 10));
+        assertArrayEquals(new long[]{4, 5}, index.containing("th", 1, 10));
+        assertArrayEquals(new long[]{1, 2, 3, 4, 5}, index.containing("o", 0, 10));
+        assertArrayEquals(new long[]{2}, index.containing("DI", 0, 10));
+        assertEquals(0, index.containing("qz", 0, 10).length);
+    }
+}
@@ -0,0 +1,56 @@
+package ac.il.bgu.qa.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+public class TestLatencyHistogram {
+
+    @Test
+    public void givenEveryBucket_whenBucketOf_thenBoundsContainValue() {
+        // 3. Action & 4. Assertion
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            long low = LatencyHistogram.lowestValueOf(bucket);
+            long high = LatencyHistogram.highestValueOf(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(low));
+            assertEquals(bucket, LatencyHistogram.bucketOf(high));
+            // Every bucket is narrower than an eighth of its values.
+            assertTrue(high - low <= Math.max(low / 8, 0));
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void givenUniformValues_whenPercentile_thenWithinBucketPrecision() {
+        // 1. Arrange
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 3. Action
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value * 1_000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        // 4. Assertion
+        assertEquals(10_000, snapshot.getCount());
+        assertEquals(5_000_500, snapshot.getMean(), 0.001);
+        assertWithin(5_000_000, snapshot.getPercentile(50));
+        assertWithin(9_900_000, snapshot.getPercentile(99));
+        assertWithin(10_000_000, snapshot.getMax());
+    }
+
+    @Test
+    public void givenNoValues_whenSnapshot_thenReportZero() {
+        // 1. Arrange
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 3. Action
+        histogram.record(-5);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        // 4. Assertion
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, new LatencyHistogram().snapshot().getPercentile(99));
+        assertThrows(IllegalArgumentException.class, () -> snapshot.getPercentile(101));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 8, "Expected about " + expected + " but was " + actual);
+    }
+}
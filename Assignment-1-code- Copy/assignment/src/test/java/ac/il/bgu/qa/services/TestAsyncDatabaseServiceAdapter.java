@@ -0,0 +1,75 @@
+package ac.il.bgu.qa.services;
+
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ResultCode;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+public class TestAsyncDatabaseServiceAdapter {
+
+    @Mock
+    DatabaseService mockDatabaseService;
+    @Mock
+    Book mockBook;
+
+    private final String ISBN = "978-0-545-01022-1";
+    private final String userID = "123456789123";
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    public void givenQueuedCalls_whenExecutorRuns_thenCompleteWithDelegateResults() {
+        // 1. Arrange
+        List<Runnable> pending = new LinkedList<>();
+        AsyncDatabaseServiceAdapter adapter = new AsyncDatabaseServiceAdapter(mockDatabaseService, pending::add);
+        // 2. Stubbing
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        when(mockDatabaseService.tryBorrow(ISBN, userID)).thenReturn(ResultCode.SUCCESS);
+        // 3. Action
+        CompletableFuture<Book> book = adapter.getBookByISBN(ISBN);
+        CompletableFuture<ResultCode> borrowed = adapter.tryBorrow(ISBN, userID);
+        // 4. Assertion
+        verifyNoInteractions(mockDatabaseService);
+        assertEquals(2, pending.size());
+        pending.forEach(Runnable::run);
+        assertSame(mockBook, book.join());
+        assertEquals(ResultCode.SUCCESS, borrowed.join());
+    }
+
+    @Test
+    public void givenFailingDelegateOrExecutor_whenCall_thenCompleteExceptionally() {
+        // 1. Arrange
+        AsyncDatabaseServiceAdapter adapter = new AsyncDatabaseServiceAdapter(mockDatabaseService, Runnable::run);
+        AsyncDatabaseServiceAdapter rejecting = new AsyncDatabaseServiceAdapter(mockDatabaseService, command -> {
+            throw new RejectedExecutionException("Saturated");
+        });
+        // 2. Stubbing
+        when(mockDatabaseService.getUserById(userID)).thenThrow(new IllegalStateException("Down"));
+        // 3. Action
+        CompletionException failed = assertThrows(CompletionException.class, () -> adapter.getUserById(userID).join());
+        CompletableFuture<ResultCode> rejected = assertDoesNotThrow(() -> rejecting.tryReturn(ISBN));
+        // 4. Assertion
+        assertInstanceOf(IllegalStateException.class, failed.getCause());
+        CompletionException exception = assertThrows(CompletionException.class, rejected::join);
+        assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+    }
+
+    @Test
+    public void givenNullArguments_whenConstruct_thenThrowException() {
+        // 3. Action & 4. Assertion
+        assertThrows(IllegalArgumentException.class, () -> new AsyncDatabaseServiceAdapter(null, Runnable::run));
+        assertThrows(IllegalArgumentException.class, () -> new AsyncDatabaseServiceAdapter(mockDatabaseService, null));
+    }
+}
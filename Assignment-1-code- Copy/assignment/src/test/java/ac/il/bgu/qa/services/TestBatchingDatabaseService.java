@@ -0,0 +1,160 @@
+package ac.il.bgu.qa.services;
+
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+public class TestBatchingDatabaseService {
+
+    private final String userID = "123456789123";
+
+    private InMemoryDatabaseService database;
+    private DatabaseService spyDatabase;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        database = new InMemoryDatabaseService();
+        spyDatabase = spy(database);
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void givenConcurrentLookups_whenBatchIsFull_thenReadAllKeysOnce() throws Exception {
+        // 1. Arrange
+        List<String> ISBNs = new ArrayList<>();
+        for (long i = 0; i < 8; i++) {
+            String ISBN = Long.toString(9780000000000L + i);
+            database.addBook(ISBN, new Book(ISBN, "Title " + i, "Author"));
+            ISBNs.add(ISBN);
+        }
+        // A long window, so only reaching the maximum size can close the batch in time.
+        BatchingDatabaseService batching = new BatchingDatabaseService(spyDatabase, 10, TimeUnit.SECONDS, 8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Book>> lookups = new ArrayList<>();
+        // 3. Action
+        for (String ISBN : ISBNs) {
+            lookups.add(executor.submit(() -> {
+                start.await();
+                return batching.getBookByISBN(ISBN);
+            }));
+        }
+        start.countDown();
+        // 4. Assertion
+        for (int i = 0; i < ISBNs.size(); i++) {
+            assertEquals(ISBNs.get(i), lookups.get(i).get(5, TimeUnit.SECONDS).getISBN());
+        }
+        verify(spyDatabase, times(1)).getBooksByISBN(argThat(keys -> keys.size() == 8));
+        assertEquals(8, batching.getBookLoadCount());
+        assertEquals(1, batching.getBookBatchCount());
+    }
+
+    @Test
+    public void givenSameKeyWithinWindow_whenGetUserById_thenReadKeyOnce() throws Exception {
+        // 1. Arrange
+        User user = new User("Name", userID, mock(NotificationService.class));
+        database.registerUser(userID, user);
+        List<Collection<String>> requested = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            Collection<String> ids = invocation.getArgument(0);
+            requested.add(new ArrayList<>(ids));
+            return database.getUsersByIds(ids);
+        }).when(spyDatabase).getUsersByIds(anyCollection());
+        BatchingDatabaseService batching = new BatchingDatabaseService(spyDatabase, 200, TimeUnit.MILLISECONDS, 100);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<User>> lookups = new ArrayList<>();
+        // 3. Action
+        for (int i = 0; i < 4; i++) {
+            lookups.add(executor.submit(() -> {
+                start.await();
+                return batching.getUserById(userID);
+            }));
+        }
+        start.countDown();
+        // 4. Assertion
+        for (Future<User> lookup : lookups) {
+            assertSame(user, lookup.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(4, batching.getUserLoadCount());
+        for (Collection<String> ids : requested) {
+            assertEquals(Collections.singletonList(userID), ids);
+        }
+        assertEquals(requested.size(), batching.getUserBatchCount());
+    }
+
+    @Test
+    public void givenNoWindow_whenSequentialLookups_thenEachIsItsOwnBatch() {
+        // 1. Arrange
+        BatchingDatabaseService batching = new BatchingDatabaseService(spyDatabase, 0, TimeUnit.MILLISECONDS, 16);
+        // 3. Action
+        Book missing = batching.getBookByISBN("978-0-545-01022-1");
+        User unknown = batching.getUserById(userID);
+        // 4. Assertion
+        assertNull(missing);
+        assertNull(unknown);
+        assertEquals(1, batching.getBookBatchCount());
+        assertEquals(1, batching.getUserBatchCount());
+    }
+
+    @Test
+    public void givenFailingDatabase_whenBatchedLookup_thenEveryCallerSeesTheFailure() throws Exception {
+        // 1. Arrange
+        DatabaseService failing = mock(DatabaseService.class);
+        when(failing.getBooksByISBN(anyCollection())).thenThrow(new IllegalStateException("Database down."));
+        BatchingDatabaseService batching = new BatchingDatabaseService(failing, 10, TimeUnit.SECONDS, 2);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Book>> lookups = new ArrayList<>();
+        // 3. Action
+        for (String ISBN : new String[] {"9780000000001", "9780000000002"}) {
+            lookups.add(executor.submit(() -> {
+                start.await();
+                return batching.getBookByISBN(ISBN);
+            }));
+        }
+        start.countDown();
+        // 4. Assertion
+        for (Future<Book> lookup : lookups) {
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> lookup.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, exception.getCause());
+        }
+    }
+
+    @Test
+    public void givenWrites_whenCalled_thenPassThrough() {
+        // 1. Arrange
+        BatchingDatabaseService batching = new BatchingDatabaseService(spyDatabase, 0, TimeUnit.MILLISECONDS, 16);
+        Map<String, Book> batch = new HashMap<>();
+        batch.put("9780000000001", new Book("9780000000001", "Title", "Author"));
+        // 3. Action
+        batching.addBooks(batch);
+        batching.registerUser(userID, new User("Name", userID, mock(NotificationService.class)));
+        // 4. Assertion
+        verify(spyDatabase, times(1)).addBooks(batch);
+        assertEquals(1, database.bookCount());
+        assertEquals(1, database.userCount());
+    }
+
+    @Test
+    public void givenInvalidArguments_whenConstruct_thenThrowException() {
+        // 3. Action & 4. Assertion
+        assertThrows(IllegalArgumentException.class, () -> new BatchingDatabaseService(null, 1, TimeUnit.MILLISECONDS, 16));
+        assertThrows(IllegalArgumentException.class, () -> new BatchingDatabaseService(database, -1, TimeUnit.MILLISECONDS, 16));
+        assertThrows(IllegalArgumentException.class, () -> new BatchingDatabaseService(database, 1, TimeUnit.MILLISECONDS, 0));
+    }
+}
@@ -0,0 +1,102 @@
+package ac.il.bgu.qa.services;
+
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+public class TestCachingDatabaseService {
+
+    @Mock
+    DatabaseService mockDatabaseService;
+    @Mock
+    Book mockBook;
+    @Mock
+    User mockUser;
+
+    private final String ISBN = "978-0-545-01022-1";
+    private final String userID = "123456789123";
+
+    private CachingDatabaseService databaseService;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        databaseService = new CachingDatabaseService(mockDatabaseService, 16, 16);
+    }
+
+    @Test
+    public void givenCachedBook_whenGetBookByISBN_thenReadDatabaseOnce() {
+        // 2. Stubbing
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        // 3. Action
+        databaseService.getBookByISBN(ISBN);
+        Book cached = databaseService.getBookByISBN("9780545010221");
+        // 4. Assertion
+        assertSame(mockBook, cached);
+        verify(mockDatabaseService, times(1)).getBookByISBN(anyString());
+        assertEquals(1, databaseService.getBookHitCount());
+        assertEquals(1, databaseService.getBookMissCount());
+    }
+
+    @Test
+    public void givenMissingBook_whenGetBookByISBN_thenNothingIsCached() {
+        // 3. Action
+        databaseService.getBookByISBN(ISBN);
+        databaseService.getBookByISBN(ISBN);
+        // 4. Assertion
+        verify(mockDatabaseService, times(2)).getBookByISBN(ISBN);
+    }
+
+    @Test
+    public void givenCachedBook_whenBorrowAndReturnBook_thenEntryIsInvalidated() {
+        // 2. Stubbing
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(mockBook);
+        databaseService.getBookByISBN(ISBN);
+        // 3. Action
+        databaseService.borrowBook(ISBN, userID);
+        databaseService.getBookByISBN(ISBN);
+        databaseService.returnBook(ISBN);
+        databaseService.getBookByISBN(ISBN);
+        // 4. Assertion
+        verify(mockDatabaseService, times(3)).getBookByISBN(ISBN);
+        verify(mockDatabaseService, times(1)).borrowBook(ISBN, userID);
+        verify(mockDatabaseService, times(1)).returnBook(ISBN);
+    }
+
+    @Test
+    public void givenAddedBookAndRegisteredUser_whenRead_thenServedFromCache() {
+        // 3. Action
+        databaseService.addBook(ISBN, mockBook);
+        databaseService.registerUser(userID, mockUser);
+        // 4. Assertion
+        assertSame(mockBook, databaseService.getBookByISBN(ISBN));
+        assertSame(mockUser, databaseService.getUserById(userID));
+        verify(mockDatabaseService, never()).getBookByISBN(anyString());
+        verify(mockDatabaseService, never()).getUserById(anyString());
+        assertEquals(1, databaseService.getUserHitCount());
+    }
+
+    @Test
+    public void givenPartlyCachedBatch_whenGetBooksByISBN_thenOnlyMissesAreRead() {
+        // 1. Arrange
+        databaseService.addBook(ISBN, mockBook);
+        Book other = new Book("978-0-306-40615-7", "Title", "Author");
+        // 2. Stubbing
+        when(mockDatabaseService.getBooksByISBN(Collections.singletonList("978-0-306-40615-7")))
+                .thenReturn(Collections.singletonMap("978-0-306-40615-7", other));
+        // 3. Action
+        Map<String, Book> found = databaseService.getBooksByISBN(Arrays.asList(ISBN, "978-0-306-40615-7"));
+        // 4. Assertion
+        assertEquals(2, found.size());
+        assertSame(other, databaseService.getBookByISBN("9780306406157"));
+        verify(mockDatabaseService, never()).getBookByISBN(anyString());
+    }
+}
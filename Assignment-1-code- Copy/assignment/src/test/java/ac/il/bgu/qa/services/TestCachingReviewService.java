@@ -0,0 +1,163 @@
+package ac.il.bgu.qa.services;
+
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestCachingReviewService {
+
+    @Mock
+    ReviewService mockReviewService;
+
+    private final String ISBN = "978-0-545-01022-1";
+    private final List<String> reviews = Collections.singletonList("Some review");
+    private final AtomicLong now = new AtomicLong();
+
+    private CachingReviewService reviewService;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        reviewService = new CachingReviewService(mockReviewService, 2, 10, TimeUnit.SECONDS, now::get);
+    }
+
+    @Test
+    public void givenFreshEntry_whenGetReviewsForBook_thenUpstreamIsCalledOnce() {
+        // 2. Stubbing
+        when(mockReviewService.getReviewsForBook(anyString())).thenReturn(reviews);
+        // 3. Action
+        reviewService.getReviewsForBook(ISBN);
+        List<String> cached = reviewService.getReviewsForBook("9780545010221");
+        // 4. Assertion
+        assertEquals(reviews, cached);
+        verify(mockReviewService, times(1)).getReviewsForBook(anyString());
+        assertEquals(1, reviewService.getHitCount());
+        assertEquals(1, reviewService.getMissCount());
+    }
+
+    @Test
+    public void givenExpiredEntry_whenGetReviewsForBook_thenFetchAgain() {
+        // 2. Stubbing
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(reviews);
+        // 3. Action
+        reviewService.getReviewsForBook(ISBN);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        reviewService.getReviewsForBook(ISBN);
+        // 4. Assertion
+        verify(mockReviewService, times(2)).getReviewsForBook(ISBN);
+    }
+
+    @Test
+    public void givenFailingUpstream_whenEntryExpired_thenServeStaleReviews() {
+        // 2. Stubbing
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(reviews).thenThrow(new ReviewException("Exception"));
+        // 3. Action
+        reviewService.getReviewsForBook(ISBN);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        List<String> stale = reviewService.getReviewsForBook(ISBN);
+        // 4. Assertion
+        assertEquals(reviews, stale);
+        assertEquals(1, reviewService.getStaleHitCount());
+    }
+
+    @Test
+    public void givenFailingUpstream_whenNothingCached_thenThrowException() {
+        // 2. Stubbing
+        when(mockReviewService.getReviewsForBook(ISBN)).thenThrow(new ReviewException("Exception"));
+        // 3. Action + 4. Assertion
+        assertThrows(ReviewException.class, () -> reviewService.getReviewsForBook(ISBN));
+    }
+
+    @Test
+    public void givenFullCache_whenGetReviewsForNewBook_thenLeastRecentlyUsedIsEvicted() {
+        // 2. Stubbing
+        when(mockReviewService.getReviewsForBook(anyString())).thenReturn(reviews);
+        // 3. Action
+        reviewService.getReviewsForBook("9780545010221");
+        reviewService.getReviewsForBook("9780306406157");
+        reviewService.getReviewsForBook("9780545010221");
+        reviewService.getReviewsForBook("9783161484100");
+        reviewService.getReviewsForBook("9780545010221");
+        reviewService.getReviewsForBook("9780306406157");
+        // 4. Assertion
+        verify(mockReviewService, times(1)).getReviewsForBook("9780545010221");
+        verify(mockReviewService, times(2)).getReviewsForBook("9780306406157");
+        assertEquals(2, reviewService.getEvictionCount());
+    }
+
+    @Test
+    public void givenFetchFinishingBeforeSecondMissClaimsIt_whenGetReviewsForBook_thenUpstreamIsNotCalledAgain() throws Exception {
+        // 1. Arrange
+        // The second caller is held right after it found the entry expired, until the first caller's fetch is done.
+        CountDownLatch expiredSeen = new CountDownLatch(1);
+        CountDownLatch fetched = new CountDownLatch(1);
+        Thread[] held = new Thread[1];
+        CachingReviewService service = new CachingReviewService(mockReviewService, 2, 10, TimeUnit.SECONDS, () -> {
+            if (Thread.currentThread() == held[0] && expiredSeen.getCount() > 0) {
+                expiredSeen.countDown();
+                try {
+                    fetched.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return now.get();
+        });
+        // 2. Stubbing
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(reviews);
+        service.getReviewsForBook(ISBN);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            // 3. Action
+            Future<List<String>> second = pool.submit(() -> {
+                held[0] = Thread.currentThread();
+                return service.getReviewsForBook(ISBN);
+            });
+            assertTrue(expiredSeen.await(5, TimeUnit.SECONDS));
+            List<String> first = service.getReviewsForBook(ISBN);
+            fetched.countDown();
+            // 4. Assertion
+            assertEquals(reviews, first);
+            assertEquals(reviews, second.get(5, TimeUnit.SECONDS));
+            verify(mockReviewService, times(2)).getReviewsForBook(ISBN);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenConcurrentMisses_whenGetReviewsForBook_thenUpstreamIsCalledOnce() throws Exception {
+        // 1. Arrange
+        int threads = 8;
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // 2. Stubbing
+        when(mockReviewService.getReviewsForBook(ISBN)).thenAnswer(invocation -> {
+            release.await();
+            return reviews;
+        });
+        // 3. Action
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> reviewService.getReviewsForBook(ISBN)));
+        }
+        Thread.sleep(100);
+        release.countDown();
+        // 4. Assertion
+        for (Future<List<String>> result : results) {
+            assertEquals(reviews, result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        verify(mockReviewService, times(1)).getReviewsForBook(ISBN);
+    }
+}
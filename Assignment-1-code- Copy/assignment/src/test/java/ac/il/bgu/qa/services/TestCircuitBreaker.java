@@ -0,0 +1,155 @@
+package ac.il.bgu.qa.services;
+
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import ac.il.bgu.qa.errors.CircuitOpenException;
+import ac.il.bgu.qa.errors.ReviewException;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestCircuitBreaker {
+
+    @Mock
+    ReviewService mockReviewService;
+
+    private final String ISBN = "978-0-545-01022-1";
+    private final AtomicLong now = new AtomicLong();
+
+    private CircuitBreaker circuitBreaker;
+    private CircuitBreakerReviewService reviewService;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        circuitBreaker = new CircuitBreaker(0.5, 4, 4, 30, TimeUnit.SECONDS, 2, now::get);
+        reviewService = new CircuitBreakerReviewService(mockReviewService, circuitBreaker);
+    }
+
+    private void failCalls(int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertThrows(ReviewException.class, () -> reviewService.getReviewsForBook(ISBN));
+        }
+    }
+
+    @Test
+    public void givenFewerCallsThanMinimum_whenAllFail_thenStayClosed() {
+        // 2. Stubbing
+        when(mockReviewService.getReviewsForBook(ISBN)).thenThrow(new ReviewException("Exception"));
+        // 3. Action
+        failCalls(3);
+        // 4. Assertion
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(1.0, circuitBreaker.getFailureRate());
+    }
+
+    @Test
+    public void givenFailureRateReachesThreshold_whenGetReviewsForBook_thenOpenAndFailFast() {
+        // 2. Stubbing
+        when(mockReviewService.getReviewsForBook(ISBN))
+                .thenReturn(Collections.singletonList("Some review"))
+                .thenReturn(Collections.singletonList("Some review"))
+                .thenThrow(new ReviewException("Exception"));
+        // 3. Action
+        reviewService.getReviewsForBook(ISBN);
+        reviewService.getReviewsForBook(ISBN);
+        failCalls(2);
+        // 4. Assertion
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertThrows(CircuitOpenException.class, () -> reviewService.getReviewsForBook(ISBN));
+        verify(mockReviewService, times(4)).getReviewsForBook(ISBN);
+        assertEquals(1, circuitBreaker.getRejectedCount());
+        assertEquals(1, circuitBreaker.getOpenedCount());
+    }
+
+    @Test
+    public void givenOpenDurationElapsed_whenProbesSucceed_thenClose() {
+        // 2. Stubbing
+        when(mockReviewService.getReviewsForBook(ISBN))
+                .thenThrow(new ReviewException("Exception"))
+                .thenThrow(new ReviewException("Exception"))
+                .thenThrow(new ReviewException("Exception"))
+                .thenThrow(new ReviewException("Exception"))
+                .thenReturn(Collections.singletonList("Some review"));
+        failCalls(4);
+        // 3. Action
+        now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        reviewService.getReviewsForBook(ISBN);
+        reviewService.getReviewsForBook(ISBN);
+        // 4. Assertion
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(0.0, circuitBreaker.getFailureRate());
+    }
+
+    @Test
+    public void givenHalfOpen_whenProbeFails_thenOpenAgain() {
+        // 2. Stubbing
+        when(mockReviewService.getReviewsForBook(ISBN)).thenThrow(new ReviewException("Exception"));
+        failCalls(4);
+        // 3. Action
+        now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        failCalls(1);
+        // 4. Assertion
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(2, circuitBreaker.getOpenedCount());
+    }
+
+    @Test
+    public void givenHalfOpen_whenProbeThrowsError_thenOpenAgain() {
+        // 2. Stubbing
+        when(mockReviewService.getReviewsForBook(ISBN))
+                .thenThrow(new ReviewException("Exception"))
+                .thenThrow(new ReviewException("Exception"))
+                .thenThrow(new ReviewException("Exception"))
+                .thenThrow(new ReviewException("Exception"))
+                .thenThrow(new StackOverflowError());
+        failCalls(4);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        // 3. Action
+        assertThrows(StackOverflowError.class, () -> reviewService.getReviewsForBook(ISBN));
+        // 4. Assertion
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(2, circuitBreaker.getOpenedCount());
+    }
+
+    @Test
+    public void givenCallAdmittedBeforeOpening_whenItFailsWhileHalfOpen_thenIgnoreIt() {
+        // 1. Arrange
+        long stale = circuitBreaker.acquirePermission();
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onFailure(circuitBreaker.acquirePermission());
+        }
+        now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        long probe = circuitBreaker.acquirePermission();
+        // 3. Action
+        circuitBreaker.onFailure(stale);
+        // 4. Assertion
+        assertNotEquals(CircuitBreaker.NO_PERMISSION, probe);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertEquals(1, circuitBreaker.getOpenedCount());
+        circuitBreaker.onSuccess(probe);
+        circuitBreaker.onSuccess(circuitBreaker.acquirePermission());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void givenHalfOpen_whenMoreCallsThanProbes_thenRejectTheRest() {
+        // 2. Stubbing
+        when(mockReviewService.getReviewsForBook(ISBN)).thenThrow(new ReviewException("Exception"));
+        failCalls(4);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        // 3. Action
+        boolean first = circuitBreaker.tryAcquirePermission();
+        boolean second = circuitBreaker.tryAcquirePermission();
+        boolean third = circuitBreaker.tryAcquirePermission();
+        // 4. Assertion
+        assertTrue(first);
+        assertTrue(second);
+        assertFalse(third);
+    }
+}
@@ -0,0 +1,149 @@
+package ac.il.bgu.qa.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ResultCode;
+import ac.il.bgu.qa.User;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestDatabaseSnapshot {
+
+    @Mock
+    NotificationService mockNotificationService;
+
+    @TempDir
+    Path directory;
+
+    private final String ISBN = "978-0-545-01022-1";
+    private final String userID = "123456789123";
+
+    private Path file;
+    private InMemoryDatabaseService databaseService;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        file = directory.resolve("library.snapshot");
+        databaseService = new InMemoryDatabaseService();
+    }
+
+    @Test
+    public void givenSnapshot_whenLoad_thenBooksUsersAndLoansAreRestored() throws IOException {
+        // 1. Arrange
+        Book book = new Book(ISBN, "Harry Potter", "J. K. Rowling");
+        book.borrow();
+        databaseService.addBook(ISBN, book);
+        databaseService.addBook("978-0-306-40615-7", new Book("978-0-306-40615-7", "Title", null));
+        databaseService.registerUser(userID, new User("Name", userID, mockNotificationService));
+        databaseService.borrowBook(ISBN, userID);
+        DatabaseSnapshot.write(databaseService, file);
+        // 3. Action
+        InMemoryDatabaseService loaded = DatabaseSnapshot.load(file, id -> mockNotificationService);
+        // 4. Assertion
+        assertEquals(2, loaded.bookCount());
+        assertEquals(1, loaded.userCount());
+        Book restored = loaded.getBookByISBN("9780545010221");
+        assertEquals(ISBN, restored.getISBN());
+        assertEquals("Harry Potter", restored.getTitle());
+        assertTrue(restored.isBorrowed());
+        assertNull(loaded.getBookByISBN("978-0-306-40615-7").getAuthor());
+        assertFalse(loaded.getBookByISBN("978-0-306-40615-7").isBorrowed());
+        assertEquals(userID, loaded.getBorrowerId(ISBN));
+        assertSame(mockNotificationService, loaded.getUserById(userID).getNotificationService());
+    }
+
+    @Test
+    public void givenBorrowsAndReturnsInFlight_whenWrite_thenEveryRestoredFlagMatchesItsLoan() throws Exception {
+        // 1. Arrange
+        int books = 16;
+        for (int i = 0; i < books; i++) {
+            String isbn = isbn13(978_000_000_000L + i);
+            databaseService.addBook(isbn, new Book(isbn, "Title " + i, "Author"));
+        }
+        databaseService.registerUser(userID, new User("Name", userID, mockNotificationService));
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            int offset = w;
+            workers.add(executor.submit(() -> {
+                for (int i = offset; running.get(); i += 2) {
+                    String isbn = isbn13(978_000_000_000L + i % books);
+                    if (databaseService.tryBorrow(isbn, userID) != ResultCode.SUCCESS) {
+                        databaseService.tryReturn(isbn);
+                    }
+                }
+            }));
+        }
+        try {
+            for (int round = 0; round < 20; round++) {
+                // 3. Action
+                DatabaseSnapshot.write(databaseService, file);
+                InMemoryDatabaseService loaded = DatabaseSnapshot.load(file, id -> mockNotificationService);
+                // 4. Assertion
+                for (int i = 0; i < books; i++) {
+                    String isbn = isbn13(978_000_000_000L + i);
+                    assertEquals(loaded.getBookByISBN(isbn).isBorrowed(), loaded.getBorrowerId(isbn) != null);
+                }
+            }
+        } finally {
+            running.set(false);
+            for (Future<?> worker : workers) {
+                worker.get(10, TimeUnit.SECONDS);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenEmptyDatabase_whenWriteAsync_thenEmptySnapshotLoads() throws Exception {
+        // 1. Arrange
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // 3. Action
+            DatabaseSnapshot.writeAsync(databaseService, file, executor).get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        // 4. Assertion
+        InMemoryDatabaseService loaded = DatabaseSnapshot.load(file, id -> mockNotificationService);
+        assertEquals(0, loaded.bookCount());
+        assertFalse(Files.exists(directory.resolve("library.snapshot.tmp")));
+    }
+
+    @Test
+    public void givenTruncatedSnapshot_whenLoad_thenThrowIOException() throws IOException {
+        // 1. Arrange
+        databaseService.addBook(ISBN, new Book(ISBN, "Title", "Author"));
+        DatabaseSnapshot.write(databaseService, file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 2));
+        // 3. Action & 4. Assertion
+        assertThrows(IOException.class, () -> DatabaseSnapshot.load(file, id -> mockNotificationService));
+    }
+
+    // Appends the ISBN-13 check digit to a 12-digit prefix.
+    private static String isbn13(long prefix) {
+        String digits = Long.toString(prefix);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,216 @@
+package ac.il.bgu.qa.services;
+
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ResultCode;
+import ac.il.bgu.qa.User;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class TestInMemoryDatabaseService {
+
+    private final String ISBN = "978-0-545-01022-1";
+    private final String userID = "123456789123";
+
+    private InMemoryDatabaseService databaseService;
+
+    @BeforeEach
+    public void setUp() {
+        databaseService = new InMemoryDatabaseService(4, 4);
+    }
+
+    @Test
+    public void givenAddedBook_whenGetBookByISBN_thenReturnBook() {
+        // 1. Arrange
+        Book book = new Book(ISBN, "Harry Potter", "J. K. Rowling");
+        // 3. Action
+        databaseService.addBook(ISBN, book);
+        // 4. Assertion
+        assertSame(book, databaseService.getBookByISBN(ISBN));
+        assertEquals(1, databaseService.bookCount());
+    }
+
+    @Test
+    public void givenHyphenatedISBN_whenGetBookByPlainISBN_thenReturnSameBook() {
+        // 1. Arrange
+        Book book = new Book(ISBN, "Harry Potter", "J. K. Rowling");
+        // 3. Action
+        databaseService.addBook(ISBN, book);
+        // 4. Assertion
+        assertSame(book, databaseService.getBookByISBN("9780545010221"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"11-12", "11-1A2", "97805450102211", ""})
+    public void givenMalformedISBN_whenGetBookByISBN_thenReturnNull(String malformedISBN) {
+        // 3. Action + 4. Assertion
+        assertNull(databaseService.getBookByISBN(malformedISBN));
+    }
+
+    @Test
+    public void givenMalformedISBN_whenAddBook_thenThrowException() {
+        // 3. Action
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> databaseService.addBook("11-1A2", new Book("11-1A2", "Title", "Author")));
+        // 4. Assertion
+        assertEquals("Invalid ISBN.", exception.getMessage());
+    }
+
+    @Test
+    public void givenRegisteredUser_whenGetUserById_thenReturnUser() {
+        // 1. Arrange
+        User user = new User("someName", userID, mock(NotificationService.class));
+        // 3. Action
+        databaseService.registerUser(userID, user);
+        // 4. Assertion
+        assertSame(user, databaseService.getUserById(userID));
+        assertNull(databaseService.getUserById("123456789124"));
+        assertNull(databaseService.getUserById("I_LOVE_PANCAKES"));
+    }
+
+    @Test
+    public void givenBorrowedBook_whenReturnBook_thenBorrowerIsCleared() {
+        // 3. Action
+        databaseService.borrowBook(ISBN, userID);
+        // 4. Assertion
+        assertEquals(userID, databaseService.getBorrowerId("9780545010221"));
+        databaseService.returnBook(ISBN);
+        assertNull(databaseService.getBorrowerId(ISBN));
+    }
+
+    @Test
+    public void givenManyBooks_whenAddedAndRemoved_thenAllRemainReachable() {
+        // 1. Arrange
+        List<String> isbns = new ArrayList<>();
+        for (long i = 0; i < 20_000; i++) {
+            isbns.add(String.format("%013d", 9780000000000L + i * 7));
+        }
+        // 3. Action
+        for (String isbn : isbns) {
+            databaseService.addBook(isbn, new Book(isbn, "Title", "Author"));
+            databaseService.borrowBook(isbn, userID);
+        }
+        for (int i = 0; i < isbns.size(); i += 2) {
+            databaseService.returnBook(isbns.get(i));
+        }
+        // 4. Assertion
+        assertEquals(isbns.size(), databaseService.bookCount());
+        for (int i = 0; i < isbns.size(); i++) {
+            assertEquals(isbns.get(i), databaseService.getBookByISBN(isbns.get(i)).getISBN());
+            assertEquals(i % 2 == 0 ? null : userID, databaseService.getBorrowerId(isbns.get(i)));
+        }
+    }
+
+    @Test
+    public void givenConcurrentWriters_whenAddBook_thenNoBookIsLost() throws Exception {
+        // 1. Arrange
+        int threads = 8;
+        int perThread = 5_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        // 3. Action
+        for (int t = 0; t < threads; t++) {
+            long base = 9780000000000L + t * perThread;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    String isbn = Long.toString(base + i);
+                    databaseService.addBook(isbn, new Book(isbn, "Title", "Author"));
+                    assertNotNull(databaseService.getBookByISBN(isbn));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        // 4. Assertion
+        assertEquals(threads * perThread, databaseService.bookCount());
+    }
+
+    @Test
+    public void givenTakenISBNAndId_whenAddIfAbsent_thenKeepFirstAndReturnFalse() {
+        // 1. Arrange
+        Book first = new Book(ISBN, "Harry Potter", "J. K. Rowling");
+        User user = new User("Name", userID, mock(NotificationService.class));
+        // 3. Action & 4. Assertion
+        assertTrue(databaseService.addBookIfAbsent(ISBN, first));
+        assertFalse(databaseService.addBookIfAbsent("9780545010221", new Book(ISBN, "Other", "Author")));
+        assertSame(first, databaseService.getBookByISBN(ISBN));
+        assertTrue(databaseService.registerUserIfAbsent(userID, user));
+        assertFalse(databaseService.registerUserIfAbsent(userID, new User("Other", userID, mock(NotificationService.class))));
+        assertSame(user, databaseService.getUserById(userID));
+    }
+
+    @Test
+    public void givenRegisteredUser_whenUnregisterUser_thenRemoveOnlyThatUser() {
+        // 1. Arrange
+        User user = new User("Name", userID, mock(NotificationService.class));
+        databaseService.registerUser(userID, user);
+        // 3. Action & 4. Assertion
+        assertFalse(databaseService.unregisterUser(userID, new User("Other", userID, mock(NotificationService.class))));
+        assertSame(user, databaseService.getUserById(userID));
+        assertTrue(databaseService.unregisterUser(userID, user));
+        assertNull(databaseService.getUserById(userID));
+        assertFalse(databaseService.unregisterUser(userID, user));
+        assertFalse(databaseService.unregisterUser("123", user));
+    }
+
+    @Test
+    public void givenBookAndUser_whenTryBorrowAndTryReturn_thenUpdateBookAndLoan() {
+        // 1. Arrange
+        Book book = new Book(ISBN, "Harry Potter", "J. K. Rowling");
+        databaseService.addBook(ISBN, book);
+        // 3. Action & 4. Assertion
+        assertEquals(ResultCode.USER_NOT_REGISTERED, databaseService.tryBorrow(ISBN, userID));
+        databaseService.registerUser(userID, new User("Name", userID, mock(NotificationService.class)));
+        assertEquals(ResultCode.BOOK_NOT_FOUND, databaseService.tryBorrow("978-0-306-40615-7", userID));
+        assertEquals(ResultCode.SUCCESS, databaseService.tryBorrow(ISBN, userID));
+        assertTrue(book.isBorrowed());
+        assertEquals(userID, databaseService.getBorrowerId(ISBN));
+        assertEquals(ResultCode.BOOK_ALREADY_BORROWED, databaseService.tryBorrow(ISBN, userID));
+        assertEquals(ResultCode.SUCCESS, databaseService.tryReturn(ISBN));
+        assertFalse(book.isBorrowed());
+        assertNull(databaseService.getBorrowerId(ISBN));
+        assertEquals(ResultCode.BOOK_NOT_BORROWED, databaseService.tryReturn(ISBN));
+    }
+
+    @Test
+    public void givenConcurrentBorrowers_whenTryBorrow_thenExactlyOneSucceeds() throws Exception {
+        // 1. Arrange
+        databaseService.addBook(ISBN, new Book(ISBN, "Harry Potter", "J. K. Rowling"));
+        int threads = 8;
+        for (int t = 0; t < threads; t++) {
+            String id = Long.toString(100000000000L + t);
+            databaseService.registerUser(id, new User("Name", id, mock(NotificationService.class)));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<ResultCode>> futures = new ArrayList<>();
+        // 3. Action
+        for (int t = 0; t < threads; t++) {
+            String id = Long.toString(100000000000L + t);
+            futures.add(executor.submit(() -> {
+                start.await();
+                return databaseService.tryBorrow(ISBN, id);
+            }));
+        }
+        start.countDown();
+        int successes = 0;
+        for (Future<ResultCode> future : futures) {
+            if (future.get(30, TimeUnit.SECONDS) == ResultCode.SUCCESS) {
+                successes++;
+            }
+        }
+        executor.shutdown();
+        // 4. Assertion
+        assertEquals(1, successes);
+        assertNotNull(databaseService.getBorrowerId(ISBN));
+    }
+}
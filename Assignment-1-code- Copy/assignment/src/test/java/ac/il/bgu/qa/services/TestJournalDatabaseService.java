@@ -0,0 +1,400 @@
+package ac.il.bgu.qa.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ResultCode;
+import ac.il.bgu.qa.User;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class TestJournalDatabaseService {
+
+    @Mock
+    NotificationService mockNotificationService;
+
+    @TempDir
+    Path directory;
+
+    private final String ISBN = "978-0-545-01022-1";
+    private final String userID = "123456789123";
+
+    private Path journal;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        journal = directory.resolve("library.journal");
+    }
+
+    private JournalDatabaseService open() throws IOException {
+        return new JournalDatabaseService(journal, id -> mockNotificationService);
+    }
+
+    @Test
+    public void givenWrittenJournal_whenReopened_thenStateIsRestored() throws IOException {
+        // 1. Arrange
+        try (JournalDatabaseService databaseService = open()) {
+            databaseService.addBook(ISBN, new Book(ISBN, "Title", "Author"));
+            databaseService.registerUser(userID, new User("Name", userID, mockNotificationService));
+            databaseService.getBookByISBN(ISBN).borrow();
+            databaseService.borrowBook(ISBN, userID);
+        }
+        // 3. Action
+        try (JournalDatabaseService databaseService = open()) {
+            // 4. Assertion
+            Book book = databaseService.getBookByISBN(ISBN);
+            assertEquals("Title", book.getTitle());
+            assertEquals("Author", book.getAuthor());
+            assertTrue(book.isBorrowed());
+            assertEquals(userID, databaseService.getBorrowerId(ISBN));
+            assertEquals(Collections.singletonList("9780545010221"), databaseService.getBorrowedISBNs(userID));
+            User user = databaseService.getUserById(userID);
+            assertEquals("Name", user.getName());
+            assertSame(mockNotificationService, user.getNotificationService());
+        }
+    }
+
+    @Test
+    public void givenReturnedBook_whenReopened_thenBookIsAvailable() throws IOException {
+        // 1. Arrange
+        try (JournalDatabaseService databaseService = open()) {
+            databaseService.addBook(ISBN, new Book(ISBN, "Title", "Author"));
+            databaseService.borrowBook(ISBN, userID);
+            databaseService.returnBook(ISBN);
+        }
+        // 3. Action
+        try (JournalDatabaseService databaseService = open()) {
+            // 4. Assertion
+            assertFalse(databaseService.getBookByISBN(ISBN).isBorrowed());
+            assertNull(databaseService.getBorrowerId(ISBN));
+        }
+    }
+
+    @Test
+    public void givenUnregisteredUser_whenReopened_thenUserIsGone() throws IOException {
+        // 1. Arrange
+        try (JournalDatabaseService databaseService = open()) {
+            User user = new User("Name", userID, mockNotificationService);
+            databaseService.registerUser(userID, user);
+            assertFalse(databaseService.unregisterUser(userID, new User("Other", userID, mockNotificationService)));
+            assertTrue(databaseService.unregisterUser(userID, user));
+            assertNull(databaseService.getUserById(userID));
+        }
+        // 3. Action
+        try (JournalDatabaseService databaseService = open()) {
+            // 4. Assertion
+            assertNull(databaseService.getUserById(userID));
+            assertTrue(databaseService.registerUserIfAbsent(userID, new User("Name", userID, mockNotificationService)));
+        }
+    }
+
+    @Test
+    public void givenTornLastRecord_whenReopened_thenRecordIsDiscardedAndJournalStaysWritable() throws IOException {
+        // 1. Arrange
+        try (JournalDatabaseService databaseService = open()) {
+            databaseService.addBook(ISBN, new Book(ISBN, "Title", "Author"));
+            databaseService.registerUser(userID, new User("Name", userID, mockNotificationService));
+        }
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        // 3. Action
+        try (JournalDatabaseService databaseService = open()) {
+            assertNotNull(databaseService.getBookByISBN(ISBN));
+            assertNull(databaseService.getUserById(userID));
+            databaseService.registerUser(userID, new User("Name", userID, mockNotificationService));
+        }
+        // 4. Assertion
+        try (JournalDatabaseService databaseService = open()) {
+            assertNotNull(databaseService.getUserById(userID));
+        }
+    }
+
+    @Test
+    public void givenCorruptedRecord_whenReopened_thenReplayStopsBeforeIt() throws IOException {
+        // 1. Arrange
+        try (JournalDatabaseService databaseService = open()) {
+            databaseService.addBook(ISBN, new Book(ISBN, "Title", "Author"));
+        }
+        long firstRecordEnd = Files.size(journal);
+        try (JournalDatabaseService databaseService = open()) {
+            databaseService.registerUser(userID, new User("Name", userID, mockNotificationService));
+        }
+        byte[] bytes = Files.readAllBytes(journal);
+        bytes[bytes.length - 1] ^= 0x7F;
+        Files.write(journal, bytes);
+        // 3. Action
+        try (JournalDatabaseService databaseService = open()) {
+            // 4. Assertion
+            assertNotNull(databaseService.getBookByISBN(ISBN));
+            assertNull(databaseService.getUserById(userID));
+        }
+        assertEquals(firstRecordEnd, Files.size(journal));
+    }
+
+    @Test
+    public void givenCorruptedRecordBeforeTheEnd_whenReopened_thenThrowAndKeepTheJournal() throws IOException {
+        // 1. Arrange
+        long firstRecordEnd;
+        try (JournalDatabaseService databaseService = open()) {
+            databaseService.addBook(ISBN, new Book(ISBN, "Title", "Author"));
+            firstRecordEnd = Files.size(journal);
+            databaseService.registerUser(userID, new User("Name", userID, mockNotificationService));
+        }
+        byte[] bytes = Files.readAllBytes(journal);
+        bytes[(int) firstRecordEnd - 1] ^= 0x7F;
+        Files.write(journal, bytes);
+        // 3. Action
+        IOException exception = assertThrows(IOException.class, this::open);
+        // 4. Assertion
+        assertTrue(exception.getMessage().startsWith("Corrupt journal record at offset 0"));
+        assertArrayEquals(bytes, Files.readAllBytes(journal));
+    }
+
+    @Test
+    public void givenZeroedTail_whenReopened_thenTailIsDiscarded() throws IOException {
+        // 1. Arrange
+        try (JournalDatabaseService databaseService = open()) {
+            databaseService.addBook(ISBN, new Book(ISBN, "Title", "Author"));
+        }
+        long end = Files.size(journal);
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(64), end);
+        }
+        // 3. Action
+        try (JournalDatabaseService databaseService = open()) {
+            // 4. Assertion
+            assertNotNull(databaseService.getBookByISBN(ISBN));
+        }
+        assertEquals(end, Files.size(journal));
+    }
+
+    @Test
+    public void givenConcurrentWriters_whenReopened_thenEveryAcknowledgedWriteIsRestored() throws Exception {
+        // 1. Arrange
+        int writers = 8;
+        int booksPerWriter = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        List<Future<?>> futures = new ArrayList<>();
+        // 3. Action
+        try (JournalDatabaseService databaseService = open()) {
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < booksPerWriter; i++) {
+                        String isbn = isbn13(978_000_000_000L + writer * 1_000L + i);
+                        databaseService.addBook(isbn, new Book(isbn, "Title", "Author"));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // 4. Assertion
+        try (JournalDatabaseService databaseService = open()) {
+            for (int w = 0; w < writers; w++) {
+                for (int i = 0; i < booksPerWriter; i++) {
+                    assertNotNull(databaseService.getBookByISBN(isbn13(978_000_000_000L + w * 1_000L + i)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void givenWritersInFlight_whenClose_thenQueuedWritesAreForcedBeforeTheJournalCloses() throws Exception {
+        // 1. Arrange
+        int writers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        List<String> acknowledged = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch written = new CountDownLatch(writers * 10);
+        List<Future<?>> futures = new ArrayList<>();
+        JournalDatabaseService databaseService = open();
+        try {
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; ; i++) {
+                        String isbn = isbn13(978_000_000_000L + writer * 100_000L + i);
+                        try {
+                            databaseService.addBook(isbn, new Book(isbn, "Title", "Author"));
+                        } catch (IllegalStateException e) {
+                            // Closed: the only way a write may fail here.
+                            return;
+                        }
+                        acknowledged.add(isbn);
+                        written.countDown();
+                    }
+                }));
+            }
+            assertTrue(written.await(30, TimeUnit.SECONDS));
+            // 3. Action
+            databaseService.close();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // 4. Assertion
+        try (JournalDatabaseService reopened = open()) {
+            for (String isbn : acknowledged) {
+                assertNotNull(reopened.getBookByISBN(isbn));
+            }
+        }
+    }
+
+    @Test
+    public void givenInvalidISBN_whenAddBook_thenNothingIsJournaled() throws IOException {
+        // 1. Arrange
+        try (JournalDatabaseService databaseService = open()) {
+            // 3. Action
+            assertThrows(IllegalArgumentException.class, () -> databaseService.addBook("123", new Book("123", "Title", "Author")));
+        }
+        // 4. Assertion
+        assertEquals(0, Files.size(journal));
+    }
+
+    @Test
+    public void givenConcurrentBorrowers_whenTryBorrow_thenExactlyOneSucceedsAndIsRestored() throws Exception {
+        // 1. Arrange
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        String winner = null;
+        try (JournalDatabaseService databaseService = open()) {
+            databaseService.addBook(ISBN, new Book(ISBN, "Title", "Author"));
+            for (int t = 0; t < threads; t++) {
+                String id = Long.toString(100000000000L + t);
+                databaseService.registerUser(id, new User("Name", id, mockNotificationService));
+            }
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<ResultCode>> futures = new ArrayList<>();
+            // 3. Action
+            for (int t = 0; t < threads; t++) {
+                String id = Long.toString(100000000000L + t);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return databaseService.tryBorrow(ISBN, id);
+                }));
+            }
+            start.countDown();
+            for (int t = 0; t < threads; t++) {
+                ResultCode result = futures.get(t).get(30, TimeUnit.SECONDS);
+                if (result == ResultCode.SUCCESS) {
+                    assertNull(winner);
+                    winner = Long.toString(100000000000L + t);
+                } else {
+                    assertEquals(ResultCode.BOOK_ALREADY_BORROWED, result);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // 4. Assertion
+        assertNotNull(winner);
+        try (JournalDatabaseService databaseService = open()) {
+            assertEquals(winner, databaseService.getBorrowerId(ISBN));
+            assertTrue(databaseService.getBookByISBN(ISBN).isBorrowed());
+            assertEquals(ResultCode.SUCCESS, databaseService.tryReturn(ISBN));
+            assertEquals(ResultCode.BOOK_NOT_BORROWED, databaseService.tryReturn(ISBN));
+        }
+    }
+
+    @Test
+    public void givenStoredBook_whenAddBooksIfAbsent_thenOnlyNewBooksAreJournaled() throws IOException {
+        // 1. Arrange
+        String other = "9780306406157";
+        Book stored = new Book(ISBN, "Title", "Author");
+        Map<String, Book> batch = new LinkedHashMap<>();
+        batch.put(ISBN, new Book(ISBN, "Other", "Author"));
+        batch.put(other, new Book(other, "New", "Author"));
+        try (JournalDatabaseService databaseService = open()) {
+            databaseService.addBook(ISBN, stored);
+            // 3. Action
+            Set<String> added = databaseService.addBooksIfAbsent(batch);
+            // 4. Assertion
+            assertEquals(Collections.singleton(other), added);
+            assertSame(stored, databaseService.getBookByISBN(ISBN));
+        }
+        try (JournalDatabaseService databaseService = open()) {
+            assertEquals("Title", databaseService.getBookByISBN(ISBN).getTitle());
+            assertEquals("New", databaseService.getBookByISBN(other).getTitle());
+        }
+    }
+
+    @Test
+    public void givenConcurrentAdders_whenAddBookIfAbsent_thenExactlyOneIsJournaled() throws Exception {
+        // 1. Arrange
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        String kept = null;
+        try (JournalDatabaseService databaseService = open()) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> futures = new ArrayList<>();
+            // 3. Action
+            for (int t = 0; t < threads; t++) {
+                String title = "Title " + t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return databaseService.addBookIfAbsent(ISBN, new Book(ISBN, title, "Author"));
+                }));
+            }
+            start.countDown();
+            for (int t = 0; t < threads; t++) {
+                if (futures.get(t).get(30, TimeUnit.SECONDS)) {
+                    assertNull(kept);
+                    kept = "Title " + t;
+                }
+            }
+            assertEquals(kept, databaseService.getBookByISBN(ISBN).getTitle());
+        } finally {
+            executor.shutdownNow();
+        }
+        // 4. Assertion
+        assertNotNull(kept);
+        try (JournalDatabaseService databaseService = open()) {
+            assertEquals(kept, databaseService.getBookByISBN(ISBN).getTitle());
+        }
+    }
+
+    @Test
+    public void givenClosedJournal_whenWrite_thenThrowIllegalStateException() throws IOException {
+        // 1. Arrange
+        JournalDatabaseService databaseService = open();
+        databaseService.close();
+        // 3. Action & 4. Assertion
+        assertThrows(IllegalStateException.class, () -> databaseService.returnBook(ISBN));
+    }
+
+    // Appends the ISBN-13 check digit to a 12-digit prefix.
+    private static String isbn13(long prefix) {
+        String digits = Long.toString(prefix);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+}
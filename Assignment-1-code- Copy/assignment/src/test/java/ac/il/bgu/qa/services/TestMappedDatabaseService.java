@@ -0,0 +1,273 @@
+package ac.il.bgu.qa.services;
+
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ResultCode;
+import ac.il.bgu.qa.User;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class TestMappedDatabaseService {
+
+    @Mock
+    User mockUser;
+
+    @TempDir
+    Path directory;
+
+    private final String ISBN = "978-0-545-01022-1";
+    private final String userID = "123456789123";
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    public void givenAddedBook_whenGetBookByISBN_thenViewReadsRecord() throws IOException {
+        // 1. Arrange
+        try (MappedDatabaseService databaseService = new MappedDatabaseService(directory, 16)) {
+            databaseService.addBook(ISBN, new Book(ISBN, "Harry Potter", "J. K. Rowling"));
+            // 3. Action
+            Book book = databaseService.getBookByISBN("9780545010221");
+            // 4. Assertion
+            assertEquals("9780545010221", book.getISBN());
+            assertEquals("Harry Potter", book.getTitle());
+            assertEquals("J. K. Rowling", book.getAuthor());
+            assertFalse(book.isBorrowed());
+            assertNull(databaseService.getBookByISBN("978-0-306-40615-7"));
+        }
+    }
+
+    @Test
+    public void givenLongTitle_whenReadRepeatedly_thenDecodeOnceUntilRecordIsReplaced() throws IOException {
+        // 1. Arrange
+        StringBuilder longTitle = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longTitle.append("Chapter ").append(i).append(' ');
+        }
+        try (MappedDatabaseService databaseService = new MappedDatabaseService(directory, 16)) {
+            databaseService.addBook(ISBN, new Book(ISBN, longTitle.toString(), "Author"));
+            Book book = databaseService.getBookByISBN(ISBN);
+            // 3. Action
+            String first = book.getTitle();
+            String second = book.getTitle();
+            // 4. Assertion
+            assertEquals(longTitle.toString(), first);
+            assertSame(first, second);
+            assertEquals("Author", book.getAuthor());
+            databaseService.addBook(ISBN, new Book(ISBN, "Title", "Author"));
+            assertEquals("Title", book.getTitle());
+            assertEquals("Author", databaseService.getBookByISBN(ISBN).getAuthor());
+        }
+    }
+
+    @Test
+    public void givenTwoViewsOfBook_whenBorrow_thenOnlyFirstSucceedsAndBothSeeIt() throws IOException {
+        // 1. Arrange
+        try (MappedDatabaseService databaseService = new MappedDatabaseService(directory, 16)) {
+            databaseService.addBook(ISBN, new Book(ISBN, "Title", "Author"));
+            Book first = databaseService.getBookByISBN(ISBN);
+            Book second = databaseService.getBookByISBN(ISBN);
+            // 3. Action
+            boolean firstBorrowed = first.tryBorrow();
+            boolean secondBorrowed = second.tryBorrow();
+            // 4. Assertion
+            assertTrue(firstBorrowed);
+            assertFalse(secondBorrowed);
+            assertTrue(second.isBorrowed());
+            assertThrows(IllegalStateException.class, second::borrow);
+            second.returnBook();
+            assertFalse(first.isBorrowed());
+        }
+    }
+
+    @Test
+    public void givenBorrowedBook_whenReopened_thenCatalogAndLoanAreRestored() throws IOException {
+        // 1. Arrange
+        try (MappedDatabaseService databaseService = new MappedDatabaseService(directory, 16)) {
+            databaseService.addBook(ISBN, new Book(ISBN, "Title", null));
+            databaseService.getBookByISBN(ISBN).borrow();
+            databaseService.borrowBook(ISBN, userID);
+        }
+        // 3. Action
+        try (MappedDatabaseService databaseService = new MappedDatabaseService(directory, 16)) {
+            // 4. Assertion
+            Book book = databaseService.getBookByISBN(ISBN);
+            assertEquals("Title", book.getTitle());
+            assertNull(book.getAuthor());
+            assertTrue(book.isBorrowed());
+            assertEquals(userID, databaseService.getBorrowerId(ISBN));
+            assertEquals(1, databaseService.bookCount());
+            assertEquals(Collections.singletonList("9780545010221"), databaseService.getBorrowedISBNs(userID));
+            databaseService.returnBook(ISBN);
+            assertNull(databaseService.getBorrowerId(ISBN));
+            assertTrue(databaseService.getBorrowedISBNs(userID).isEmpty());
+        }
+    }
+
+    @Test
+    public void givenBorrowedBook_whenAddBookAgain_thenLoanIsKept() throws IOException {
+        // 1. Arrange
+        try (MappedDatabaseService databaseService = new MappedDatabaseService(directory, 16)) {
+            databaseService.addBook(ISBN, new Book(ISBN, "Title", "Author"));
+            databaseService.registerUser(userID, mockUser);
+            assertEquals(ResultCode.SUCCESS, databaseService.tryBorrow(ISBN, userID));
+            // 3. Action
+            databaseService.addBook(ISBN, new Book(ISBN, "New Title", "Author"));
+            // 4. Assertion
+            Book book = databaseService.getBookByISBN(ISBN);
+            assertEquals("New Title", book.getTitle());
+            assertTrue(book.isBorrowed());
+            assertEquals(userID, databaseService.getBorrowerId(ISBN));
+            assertEquals(Collections.singletonList("9780545010221"), databaseService.getBorrowedISBNs(userID));
+            assertEquals(1, databaseService.bookCount());
+        }
+    }
+
+    @Test
+    public void givenSlotFileWithoutFreeSlot_whenGetBookByISBN_thenThrowIllegalStateException() throws IOException {
+        // 1. Arrange
+        new MappedDatabaseService(directory, 12).close();
+        try (FileChannel channel = FileChannel.open(directory.resolve("books.slots"), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            channel.read(header, 0);
+            int capacity = header.getInt(4);
+            // Fill every slot with some other key, as a damaged file might.
+            for (int slot = 0; slot < capacity; slot++) {
+                ByteBuffer key = ByteBuffer.allocate(8);
+                key.putLong(0, slot + 1);
+                channel.write(key, 16 + slot * 40L);
+            }
+            ByteBuffer count = ByteBuffer.allocate(4);
+            count.putInt(0, capacity);
+            channel.write(count, 8);
+        }
+        try (MappedDatabaseService databaseService = new MappedDatabaseService(directory, 12)) {
+            // 3. Action & 4. Assertion
+            assertThrows(IllegalStateException.class, () -> databaseService.getBookByISBN(ISBN));
+        }
+    }
+
+    @Test
+    public void givenFullCatalog_whenAddBook_thenThrowIllegalStateException() throws IOException {
+        // 1. Arrange
+        try (MappedDatabaseService databaseService = new MappedDatabaseService(directory, 12)) {
+            for (int i = 0; i < 12; i++) {
+                String isbn = "97800000000" + String.format("%02d", i);
+                databaseService.addBook(isbn, new Book(isbn, "Title", "Author"));
+            }
+            // 3. Action & 4. Assertion
+            assertThrows(IllegalStateException.class, () -> databaseService.addBook(ISBN, new Book(ISBN, "Title", "Author")));
+            assertEquals(12, databaseService.bookCount());
+        }
+    }
+
+    @Test
+    public void givenRegisteredUser_whenGetUserById_thenReturnUser() throws IOException {
+        // 1. Arrange
+        try (MappedDatabaseService databaseService = new MappedDatabaseService(directory, 16)) {
+            databaseService.registerUser(userID, mockUser);
+            // 3. Action & 4. Assertion
+            assertSame(mockUser, databaseService.getUserById(userID));
+            assertThrows(IllegalArgumentException.class, () -> databaseService.borrowBook(ISBN, userID));
+        }
+    }
+
+    @Test
+    public void givenConcurrentBorrowers_whenTryBorrow_thenExactlyOneSucceeds() throws Exception {
+        // 1. Arrange
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (MappedDatabaseService databaseService = new MappedDatabaseService(directory, 16)) {
+            databaseService.addBook(ISBN, new Book(ISBN, "Title", "Author"));
+            for (int t = 0; t < threads; t++) {
+                String id = Long.toString(100000000000L + t);
+                databaseService.registerUser(id, new User("Name", id, mock(NotificationService.class)));
+            }
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<ResultCode>> futures = new ArrayList<>();
+            // 3. Action
+            for (int t = 0; t < threads; t++) {
+                String id = Long.toString(100000000000L + t);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return databaseService.tryBorrow(ISBN, id);
+                }));
+            }
+            start.countDown();
+            String winner = null;
+            for (int t = 0; t < threads; t++) {
+                ResultCode result = futures.get(t).get(30, TimeUnit.SECONDS);
+                if (result == ResultCode.SUCCESS) {
+                    assertNull(winner);
+                    winner = Long.toString(100000000000L + t);
+                } else {
+                    assertEquals(ResultCode.BOOK_ALREADY_BORROWED, result);
+                }
+            }
+            // 4. Assertion
+            assertNotNull(winner);
+            assertEquals(winner, databaseService.getBorrowerId(ISBN));
+            assertTrue(databaseService.getBookByISBN(ISBN).isBorrowed());
+            assertEquals(ResultCode.SUCCESS, databaseService.tryReturn(ISBN));
+            assertNull(databaseService.getBorrowerId(ISBN));
+            assertEquals(ResultCode.BOOK_NOT_BORROWED, databaseService.tryReturn(ISBN));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenConcurrentAdders_whenAddBookIfAbsent_thenExactlyOneAddsAndLoanIsKept() throws Exception {
+        // 1. Arrange
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (MappedDatabaseService databaseService = new MappedDatabaseService(directory, 16)) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> futures = new ArrayList<>();
+            // 3. Action
+            for (int t = 0; t < threads; t++) {
+                String title = "Title " + t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return databaseService.addBookIfAbsent(ISBN, new Book(ISBN, title, "Author"));
+                }));
+            }
+            start.countDown();
+            int added = 0;
+            for (Future<Boolean> future : futures) {
+                if (future.get(30, TimeUnit.SECONDS)) {
+                    added++;
+                }
+            }
+            // 4. Assertion
+            assertEquals(1, added);
+            assertEquals(1, databaseService.bookCount());
+            databaseService.registerUser(userID, mockUser);
+            assertEquals(ResultCode.SUCCESS, databaseService.tryBorrow(ISBN, userID));
+            assertFalse(databaseService.addBookIfAbsent(ISBN, new Book(ISBN, "Other", "Author")));
+            assertEquals(userID, databaseService.getBorrowerId(ISBN));
+            assertTrue(databaseService.getBookByISBN(ISBN).isBorrowed());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
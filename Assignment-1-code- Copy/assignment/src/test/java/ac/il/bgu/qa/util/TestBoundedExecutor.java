@@ -0,0 +1,119 @@
+package ac.il.bgu.qa.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.*;
+
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class TestBoundedExecutor {
+
+    private ExecutorService threads;
+
+    @BeforeEach
+    public void setUp() {
+        threads = Executors.newFixedThreadPool(16);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        threads.shutdownNow();
+    }
+
+    /**
+     * Wraps the thread pool so that a latch is counted down once a wrapped task, permit release included, has returned.
+     */
+    private Executor finishingOn(CountDownLatch finished) {
+        return task -> threads.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                finished.countDown();
+            }
+        });
+    }
+
+    @Test
+    public void givenMoreTasksThanPermits_whenExecute_thenConcurrencyIsBounded() throws Exception {
+        // 1. Arrange
+        CountDownLatch finished = new CountDownLatch(4);
+        BoundedExecutor executor = new BoundedExecutor(finishingOn(finished), 3);
+        CountDownLatch started = new CountDownLatch(3);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch lastRan = new CountDownLatch(1);
+        // 3. Action
+        for (int i = 0; i < 3; i++) {
+            executor.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        executor.execute(lastRan::countDown);
+        // 4. Assertion
+        assertEquals(3, executor.getActiveCount());
+        assertFalse(lastRan.await(100, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(lastRan.await(10, TimeUnit.SECONDS));
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertEquals(0, executor.getActiveCount());
+        assertEquals(3, executor.getMaxConcurrency());
+    }
+
+    @Test
+    public void givenFailingTask_whenExecute_thenPermitIsReleased() throws Exception {
+        // 1. Arrange
+        CountDownLatch finished = new CountDownLatch(1);
+        BoundedExecutor executor = new BoundedExecutor(finishingOn(finished), 1);
+        // 3. Action
+        CompletableFuture<Void> failed = CompletableFuture.runAsync(() -> {
+            throw new IllegalStateException("Boom");
+        }, executor);
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Void> next = CompletableFuture.runAsync(() -> { }, executor);
+        // 4. Assertion
+        assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+        assertDoesNotThrow(() -> next.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void givenInvalidArguments_whenConstruct_thenThrowException() {
+        // 3. Action & 4. Assertion
+        assertThrows(IllegalArgumentException.class, () -> new BoundedExecutor(null, 1));
+        assertThrows(IllegalArgumentException.class, () -> new BoundedExecutor(threads, 0));
+    }
+
+    @Test
+    public void givenJava21_whenNewVirtualExecutor_thenTasksRunOnVirtualThreads() throws Exception {
+        assumeTrue(VirtualThreads.isSupported());
+        // 1. Arrange
+        ExecutorService virtual = VirtualThreads.newExecutor();
+        try {
+            // 3. Action
+            String name = CompletableFuture.supplyAsync(() -> Thread.currentThread().toString(),
+                    new BoundedExecutor(virtual, 1)).get(10, TimeUnit.SECONDS);
+            // 4. Assertion
+            assertTrue(name.startsWith("VirtualThread"));
+        } finally {
+            virtual.shutdown();
+        }
+    }
+
+    @Test
+    public void givenOlderJava_whenNewVirtualExecutor_thenThrowUnsupportedOperationException() {
+        assumeFalse(VirtualThreads.isSupported());
+        // 3. Action & 4. Assertion
+        assertThrows(UnsupportedOperationException.class, VirtualThreads::newExecutor);
+    }
+}
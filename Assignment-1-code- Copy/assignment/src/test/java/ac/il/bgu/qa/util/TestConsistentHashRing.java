@@ -0,0 +1,82 @@
+package ac.il.bgu.qa.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+public class TestConsistentHashRing {
+
+    private static final int KEYS = 20_000;
+
+    private static ConsistentHashRing ringOf(int nodes) {
+        ConsistentHashRing ring = new ConsistentHashRing(128);
+        for (int node = 0; node < nodes; node++) {
+            ring.add(node);
+        }
+        return ring;
+    }
+
+    @Test
+    public void givenSameNodes_whenNodeFor_thenSameOwner() {
+        // 1. Arrange
+        ConsistentHashRing first = ringOf(4);
+        ConsistentHashRing second = new ConsistentHashRing(128);
+        for (int node = 3; node >= 0; node--) {
+            second.add(node);
+        }
+        // 3. Action & 4. Assertion
+        assertEquals(4, first.size());
+        for (long key = 0; key < KEYS; key++) {
+            assertEquals(first.nodeFor(key), second.nodeFor(key));
+        }
+    }
+
+    @Test
+    public void givenFourNodes_whenNodeFor_thenKeysAreSpreadEvenly() {
+        // 1. Arrange
+        ConsistentHashRing ring = ringOf(4);
+        int[] owned = new int[4];
+        // 3. Action
+        for (long key = 0; key < KEYS; key++) {
+            owned[ring.nodeFor(9_780_000_000_000L + key)]++;
+        }
+        // 4. Assertion
+        for (int count : owned) {
+            assertTrue(count > KEYS / 4 * 0.75 && count < KEYS / 4 * 1.25, "Unbalanced ring: " + count);
+        }
+    }
+
+    @Test
+    public void givenNewNode_whenAdded_thenOnlyItsShareOfKeysMoveToIt() {
+        // 1. Arrange
+        ConsistentHashRing ring = ringOf(4);
+        int[] before = new int[KEYS];
+        for (int key = 0; key < KEYS; key++) {
+            before[key] = ring.nodeFor(key);
+        }
+        // 3. Action
+        ring.add(4);
+        // 4. Assertion
+        int moved = 0;
+        for (int key = 0; key < KEYS; key++) {
+            int owner = ring.nodeFor(key);
+            if (owner != before[key]) {
+                assertEquals(4, owner);
+                moved++;
+            }
+        }
+        assertTrue(moved > KEYS / 5 * 0.75 && moved < KEYS / 5 * 1.25, "Moved keys: " + moved);
+    }
+
+    @Test
+    public void givenInvalidArguments_whenCalled_thenThrowException() {
+        // 1. Arrange
+        ConsistentHashRing ring = new ConsistentHashRing(16);
+        // 3. Action & 4. Assertion
+        assertThrows(IllegalStateException.class, () -> ring.nodeFor(1));
+        ring.add(0);
+        assertThrows(IllegalArgumentException.class, () -> ring.add(0));
+        assertThrows(IllegalArgumentException.class, () -> ring.add(-1));
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(0));
+    }
+}
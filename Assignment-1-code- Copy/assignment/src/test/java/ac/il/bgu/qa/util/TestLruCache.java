@@ -0,0 +1,61 @@
+package ac.il.bgu.qa.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class TestLruCache {
+
+    @Test
+    public void givenSmallCache_whenFull_thenLeastRecentlyUsedIsEvicted() {
+        // 1. Arrange
+        LruCache<String> cache = new LruCache<>(2);
+        cache.put(1, "first");
+        cache.put(2, "second");
+        // 3. Action
+        cache.get(1);
+        cache.put(3, "third");
+        // 4. Assertion
+        assertEquals("first", cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals("third", cache.get(3));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    public void givenLargeCache_whenManyKeysAreWrittenAndRemoved_thenBoundHoldsAndNoEntryIsLost() {
+        // 1. Arrange
+        int maxEntries = 4096;
+        LruCache<Long> cache = new LruCache<>(maxEntries);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        // 3. Action
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(2 * maxEntries);
+            if (random.nextInt(4) == 0) {
+                cache.remove(key);
+                expected.remove(key);
+            } else {
+                cache.put(key, key * 7);
+                expected.put(key, key * 7);
+            }
+            // 4. Assertion
+            assertTrue(cache.size() <= maxEntries);
+        }
+        // Cached keys carry their last value, and removed keys stay gone.
+        int found = 0;
+        for (long key = 0; key < 2 * maxEntries; key++) {
+            Long value = cache.get(key);
+            if (value != null) {
+                assertEquals(expected.get(key), value);
+                found++;
+            }
+        }
+        assertEquals(cache.size(), found);
+    }
+}